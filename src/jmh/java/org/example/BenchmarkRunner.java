@@ -0,0 +1,95 @@
+package org.example;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * BenchmarkRunner class is responsible for running the JMH benchmarks with the usual JMH command line options.
+ * Unless a result file is given with -rff, the results are written as JSON to target/jmh, in a file named after
+ * the current commit and time, so the runs of two commits can be compared.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args JMH command line options
+     * @throws Exception if the options are invalid or a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if (!options.getResult().hasValue()) {
+            String name = commitName() + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            Path result = Paths.get("target", "jmh", name + ".json");
+            Files.createDirectories(result.getParent());
+            builder.result(result.toString());
+            if (!options.getResultFormat().hasValue()) {
+                builder.resultFormat(ResultFormatType.JSON);
+            }
+            System.out.println("Results will be written to " + result);
+        }
+        new Runner(builder.build()).run();
+    }
+
+    /**
+     * Gets the short hash of the current commit, marked when the working tree has changes.
+     *
+     * @return the commit name, or "unknown" if git is not available
+     */
+    private static String commitName() {
+        String commit = git("rev-parse", "--short", "HEAD");
+        if (commit == null || commit.isEmpty()) {
+            return "unknown";
+        }
+        String changes = git("status", "--porcelain", "--untracked-files=no");
+        return changes != null && !changes.isEmpty() ? commit + "-dirty" : commit;
+    }
+
+    /**
+     * Runs a git command in the working directory.
+     *
+     * @param args arguments of the command
+     * @return the output of the command, or null if it failed
+     */
+    private static String git(String... args) {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append('\n');
+                }
+            }
+            return process.waitFor() == 0 ? output.toString().trim() : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
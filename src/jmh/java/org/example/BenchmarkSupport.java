@@ -0,0 +1,64 @@
+package org.example;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * BenchmarkSupport class is responsible for the setup shared by the benchmarks: loading OpenCV in the forked
+ * benchmark JVM and reading the bundled images at the resolution under test.
+ */
+public class BenchmarkSupport {
+    private static boolean loaded = false; // True once the native library is loaded in this JVM
+
+    /**
+     * Loads the OpenCV native library, from the library path like Main or else from the bundled OpenCV jar.
+     */
+    public static synchronized void loadOpenCv() {
+        if (loaded) {
+            return;
+        }
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            nu.pattern.OpenCV.loadLocally();
+        }
+        loaded = true;
+    }
+
+    /**
+     * Reads an image and scales it to a width, keeping its aspect ratio.
+     *
+     * @param path  path of the image
+     * @param width width of the image, or 0 to keep the original size
+     * @return the tracked image, to be released with NativeMemory.release
+     */
+    public static Mat readImage(String path, int width) {
+        Mat image = NativeMemory.track(Imgcodecs.imread(path));
+        if (image.empty()) {
+            NativeMemory.release(image);
+            throw new IllegalArgumentException("Could not read image: " + path);
+        }
+        return scale(image, width);
+    }
+
+    /**
+     * Scales an image to a width, keeping its aspect ratio. The given image is released if it is replaced.
+     *
+     * @param image the tracked image
+     * @param width width of the image, or 0 to keep the original size
+     * @return the tracked scaled image
+     */
+    public static Mat scale(Mat image, int width) {
+        if (width <= 0 || width == image.cols()) {
+            return image;
+        }
+        Mat scaled = NativeMemory.newMat();
+        Imgproc.resize(image, scaled, new Size(width, Math.round((double) image.rows() * width / image.cols())), 0, 0,
+                width < image.cols() ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR);
+        NativeMemory.release(image);
+        return scaled;
+    }
+}
@@ -0,0 +1,55 @@
+package org.example;
+
+import org.opencv.objdetect.CascadeClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CascadeLoadBenchmark class is responsible for measuring the loading of the cascade XML files, which every
+ * detector worker does once when it is created.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class CascadeLoadBenchmark {
+    @Param({"cascades/haarcascade_traffic_signs.xml", "cascades/cascade_stop_sign.xml", "cascades/sixty.xml",
+            "cascades/all.xml"})
+    public String cascade; // Cascade XML file
+
+    /**
+     * Loads OpenCV.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.loadOpenCv();
+    }
+
+    /**
+     * Loads the cascade classifier from its XML file.
+     *
+     * @return true if the cascade was loaded
+     */
+    @Benchmark
+    public boolean loadCascade() {
+        return !new CascadeClassifier(cascade).empty();
+    }
+
+    /**
+     * Creates a cascade detector, as a detector worker does.
+     *
+     * @return the detector
+     */
+    @Benchmark
+    public FrameDetector createCascadeDetector() {
+        return new CascadeDetector(cascade, TrafficSignDetector.getDetectionConfig());
+    }
+}
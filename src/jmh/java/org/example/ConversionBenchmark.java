@@ -0,0 +1,95 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConversionBenchmark class is responsible for measuring the conversion of frames to images for display,
+ * by ImageProcessor and by the pooled BufferedImageConverter. Run it with "-prof gc" to compare the memory
+ * allocated per conversion: the pooled conversions should allocate nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ConversionBenchmark {
+    @Param({"images/image4.jpg"})
+    public String image; // Bundled image
+
+    @Param({"3840", "1920", "1280", "640"})
+    public int width; // Width of the frame
+
+    private Mat frame; // Frame at the resolution under test
+    private BufferedImageConverter converter;
+
+    /**
+     * Loads OpenCV and reads the frame at the resolution under test.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("java.awt.headless", "true");
+        BenchmarkSupport.loadOpenCv();
+        frame = BenchmarkSupport.readImage(image, width);
+        converter = new BufferedImageConverter();
+    }
+
+    /**
+     * Converts the frame to a new image of the same size.
+     *
+     * @return the image
+     */
+    @Benchmark
+    public BufferedImage matToBufferedImage() {
+        return ImageProcessor.matToBufferedImage(frame);
+    }
+
+    /**
+     * Converts the frame to a new image of the display size.
+     *
+     * @return the image
+     */
+    @Benchmark
+    public BufferedImage matToResizedBufferedImage() {
+        return ImageProcessor.matToResizedBufferedImage(frame);
+    }
+
+    /**
+     * Converts the frame to a pooled image of the same size.
+     *
+     * @return the image
+     */
+    @Benchmark
+    public BufferedImage pooledConvert() {
+        return converter.convert(frame);
+    }
+
+    /**
+     * Converts the frame to a pooled image of the display size.
+     *
+     * @return the image
+     */
+    @Benchmark
+    public BufferedImage pooledConvertResized() {
+        return converter.convertResized(frame, ImageProcessor.DISPLAY_WIDTH, ImageProcessor.DISPLAY_HEIGHT);
+    }
+
+    /**
+     * Releases the frame and the pooled Mats.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        converter.release();
+        NativeMemory.release(frame);
+    }
+}
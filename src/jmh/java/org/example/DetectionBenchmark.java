@@ -0,0 +1,98 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.objdetect.CascadeClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DetectionBenchmark class is responsible for measuring the detection of traffic signs in the bundled images,
+ * with the single-cascade highlightTrafficSigns and with the detector chain used for videos (detection
+ * parameters and downscaling), for every cascade and resolution.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class DetectionBenchmark {
+    @Param({"cascades/haarcascade_traffic_signs.xml", "cascades/cascade_stop_sign.xml", "cascades/sixty.xml"})
+    public String cascade; // Cascade XML file
+
+    @Param({"images/image1.png", "images/image4.jpg", "images/image7.jpg"})
+    public String image; // Bundled image
+
+    @Param({"0", "1920", "1280", "640"})
+    public int width; // Width of the image, 0 for the original size
+
+    private Mat source; // Image at the resolution under test
+    private Mat work; // Copy drawn on by each invocation
+    private CascadeClassifier classifier;
+    private FrameDetector detector;
+
+    /**
+     * Loads OpenCV, the image at the resolution under test and the cascade.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.loadOpenCv();
+        source = BenchmarkSupport.readImage(image, width);
+        work = NativeMemory.newMat();
+        classifier = new CascadeClassifier(cascade);
+        if (classifier.empty()) {
+            throw new IllegalArgumentException("Could not load cascade: " + cascade);
+        }
+        // Same chain as TrafficSignDetector.createDetector, with the cascade under test
+        DetectionConfig config = TrafficSignDetector.getDetectionConfig();
+        detector = new CascadeDetector(cascade, config);
+        if (config.getDetectionWidth() > 0) {
+            detector = new ScaledDetector(detector, config.getDetectionWidth());
+        }
+    }
+
+    /**
+     * Restores the original image, since highlightTrafficSigns draws on it.
+     */
+    @Setup(Level.Invocation)
+    public void copyImage() {
+        source.copyTo(work);
+    }
+
+    /**
+     * Detects and highlights the traffic signs with the cascade classifier.
+     *
+     * @return the number of traffic signs
+     */
+    @Benchmark
+    public int highlightTrafficSigns() {
+        return TrafficSignDetector.highlightTrafficSigns(work, classifier, TrafficSignDetector.getColor());
+    }
+
+    /**
+     * Detects the traffic signs with the detector chain used for videos.
+     *
+     * @return the traffic signs
+     */
+    @Benchmark
+    public List<Detection> detectorChain() {
+        return detector.detect(work);
+    }
+
+    /**
+     * Releases the images.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        NativeMemory.release(source);
+        NativeMemory.release(work);
+    }
+}
@@ -0,0 +1,143 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VideoBenchmark class is responsible for measuring whole video runs of detectTrafficSignsInVideo, from decoding
+ * to the written result, on a short clip cut from a phone video at the resolution under test.
+ * The result cache is disabled, so every run processes the clip.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VideoBenchmark {
+    @Param({"cascades/haarcascade_traffic_signs.xml", "cascades/cascade_stop_sign.xml"})
+    public String cascade; // Cascade XML file
+
+    @Param({"phone videos/night/night_16.MOV"})
+    public String video; // Bundled phone video the clip is cut from
+
+    @Param({"90"})
+    public int frames; // Length of the clip in frames
+
+    @Param({"0", "1280", "640"})
+    public int width; // Width of the clip, 0 for the original size
+
+    private Path directory; // Temporary folder of the clip and the result
+    private String clipPath;
+    private String resultPath;
+
+    /**
+     * Loads OpenCV, selects the cascade and cuts the clip.
+     *
+     * @throws IOException if the temporary folder cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkSupport.loadOpenCv();
+        // Default parameters with the cascade under test, also replacing the detectors of an earlier trial
+        TrafficSignDetector.setDetectionConfig(new DetectionConfig().setCascade(cascade));
+        System.setProperty("cache.maxMB", "0");
+        System.setProperty("metrics.logSeconds", "0");
+
+        directory = Files.createTempDirectory("video-benchmark");
+        String extension = video.substring(video.lastIndexOf('.'));
+        clipPath = directory.resolve("clip" + extension).toString();
+        resultPath = directory.resolve("clip_result" + extension).toString();
+        cutClip();
+    }
+
+    /**
+     * Writes the first frames of the video, scaled to the width under test, to the clip.
+     */
+    private void cutClip() {
+        VideoCapture videoCapture = new VideoCapture(video);
+        if (!videoCapture.isOpened()) {
+            throw new IllegalArgumentException("Could not open video: " + video);
+        }
+        double frameRate = videoCapture.get(Videoio.CAP_PROP_FPS);
+        Mat frameMat = NativeMemory.newMat();
+        Mat scaledMat = NativeMemory.newMat();
+        VideoWriter videoWriter = null;
+        try {
+            for (int i = 0; i < frames && videoCapture.read(frameMat); i++) {
+                Mat output = frameMat;
+                if (width > 0 && width != frameMat.cols()) {
+                    Imgproc.resize(frameMat, scaledMat, new Size(width, Math.round((double) frameMat.rows() * width / frameMat.cols())),
+                            0, 0, Imgproc.INTER_AREA);
+                    output = scaledMat;
+                }
+                if (videoWriter == null) {
+                    videoWriter = new VideoWriter(clipPath, VideoWriter.fourcc('X', '2', '6', '4'), frameRate,
+                            new Size(output.cols(), output.rows()), true);
+                    if (!videoWriter.isOpened()) {
+                        throw new IllegalStateException("Could not create clip: " + clipPath);
+                    }
+                }
+                videoWriter.write(output);
+            }
+        } finally {
+            NativeMemory.release(frameMat);
+            NativeMemory.release(scaledMat);
+            videoCapture.release();
+            if (videoWriter != null) {
+                videoWriter.release();
+            }
+        }
+    }
+
+    /**
+     * Detects the traffic signs of the clip and writes the result video.
+     *
+     * @return the path of the result video
+     */
+    @Benchmark
+    public String detectTrafficSignsInVideo() {
+        String written = TrafficSignDetector.detectTrafficSignsInVideo(clipPath, resultPath, null, new ProcessingListener() { });
+        if (written == null) {
+            throw new IllegalStateException("Could not process clip: " + clipPath);
+        }
+        return written;
+    }
+
+    /**
+     * Deletes the clip and the result.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+}
@@ -0,0 +1,115 @@
+package org.example;
+
+import org.opencv.core.Rect;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AnnotationReader class is responsible for reading the labeled samples of an annotation file.
+ * The file is plain text with one sample per line: the path of an image, or of a video followed by "@" and a
+ * frame index, then the box of every traffic sign as "x,y,width,height" in pixels of the full image. A sample
+ * without boxes shows no sign. Lines starting with "#" are comments, and a "[name]" line starts the samples of
+ * a lighting condition, such as "[night]". Relative paths are resolved against the folder of the file, and
+ * paths may contain spaces:
+ * <pre>
+ * [night]
+ * phone videos/night/night_16.MOV@120 812,240,64,64
+ * images/image9.jpg
+ * </pre>
+ */
+public class AnnotationReader {
+    private static final String DEFAULT_CONDITION = "all"; // Condition of the samples before any section
+    private static final Pattern SECTION = Pattern.compile("\\[([\\w.-]+)]");
+    private static final Pattern BOX = Pattern.compile("(\\d+),(\\d+),(\\d+),(\\d+)");
+    private static final Pattern FRAME = Pattern.compile("(.+)@(\\d+)");
+
+    private final Path path; // Path of the annotation file
+
+    /**
+     * Creates a reader of an annotation file.
+     *
+     * @param path path of the annotation file
+     */
+    public AnnotationReader(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Reads every sample of the file.
+     *
+     * @return the samples, in the order of the file
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a line is not a valid sample
+     */
+    public List<LabeledSample> readAll() throws IOException {
+        Path folder = path.toAbsolutePath().getParent();
+        List<LabeledSample> samples = new ArrayList<>();
+        String condition = DEFAULT_CONDITION;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                Matcher section = SECTION.matcher(line);
+                if (section.matches()) {
+                    condition = section.group(1);
+                    continue;
+                }
+                samples.add(parseSample(line, lineNumber, folder, condition));
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Parses the line of a sample. The boxes are read from the end of the line, so the path may contain spaces.
+     *
+     * @param line       the line, without leading and trailing spaces
+     * @param lineNumber number of the line, for the error messages
+     * @param folder     folder against which relative paths are resolved
+     * @param condition  lighting condition of the sample
+     * @return the sample
+     * @throws IllegalArgumentException if a box is empty or the path is missing
+     */
+    private LabeledSample parseSample(String line, int lineNumber, Path folder, String condition) {
+        List<Rect> signs = new ArrayList<>();
+        String rest = line;
+        while (true) {
+            int space = rest.lastIndexOf(' ');
+            Matcher box = BOX.matcher(rest.substring(space + 1));
+            if (space < 0 || !box.matches()) {
+                break;
+            }
+            Rect sign = new Rect(Integer.parseInt(box.group(1)), Integer.parseInt(box.group(2)),
+                    Integer.parseInt(box.group(3)), Integer.parseInt(box.group(4)));
+            if (sign.width == 0 || sign.height == 0) {
+                throw new IllegalArgumentException(path + ":" + lineNumber + ": empty box " + box.group());
+            }
+            signs.add(0, sign);
+            rest = rest.substring(0, space).stripTrailing();
+        }
+        if (BOX.matcher(rest).matches()) {
+            throw new IllegalArgumentException(path + ":" + lineNumber + ": missing image path");
+        }
+
+        int frameIndex = -1;
+        Matcher frame = FRAME.matcher(rest);
+        if (frame.matches()) {
+            rest = frame.group(1);
+            frameIndex = Integer.parseInt(frame.group(2));
+        }
+        return new LabeledSample(folder.resolve(rest).normalize().toString(), frameIndex, condition, signs);
+    }
+}
@@ -0,0 +1,533 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * BatchProcessor class is responsible for processing directories of images and videos without a display.
+ * Inputs are directories, files or glob patterns. Files are processed on a bounded worker pool and a
+ * throughput summary is printed at the end. It does not use any AWT or Swing class.
+ */
+public class BatchProcessor {
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "jpg", "jpeg", "webp", "bmp", "tif", "tiff");
+    private static final Set<String> VIDEO_EXTENSIONS = Set.of("mp4", "mov", "avi", "mkv", "m4v", "wmv");
+
+    private final AtomicInteger processedImages = new AtomicInteger(); // Images written
+    private final AtomicInteger processedVideos = new AtomicInteger(); // Videos written
+    private final AtomicInteger failedFiles = new AtomicInteger(); // Files that could not be processed
+    private final LatencyHistogram frameLatencies = new LatencyHistogram(); // Latency of every image and video frame
+
+    /**
+     * Runs the batch mode with command line arguments.
+     *
+     * @param args command line arguments
+     * @return the exit code
+     */
+    public static int run(String[] args) {
+        List<String> inputs = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        String outputDir = ".";
+        String queueDir = null;
+        int segments = DetectorPool.defaultSize();
+        String exportContainer = null;
+        int fromFrame = 0;
+        int toFrame = Integer.MAX_VALUE;
+        String streamSource = null;
+        int streamWidth = 0;
+        int streamHeight = 0;
+        int streamWorkers = 1;
+        int servePort = -1;
+        String annotations = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--output" -> outputDir = args[++i];
+                    case "--queue" -> queueDir = args[++i];
+                    case "--segments" -> segments = Integer.parseInt(args[++i]);
+                    case "--export" -> exportContainer = args[++i];
+                    case "--frames" -> {
+                        String[] range = args[++i].split("-", 2);
+                        fromFrame = Integer.parseInt(range[0]);
+                        toFrame = range.length > 1 ? Integer.parseInt(range[1]) : fromFrame;
+                    }
+                    case "--stream" -> streamSource = args[++i];
+                    case "--size" -> {
+                        String[] size = args[++i].toLowerCase(Locale.ROOT).split("x", 2);
+                        streamWidth = Integer.parseInt(size[0]);
+                        streamHeight = Integer.parseInt(size[1]);
+                    }
+                    case "--workers" -> streamWorkers = Integer.parseInt(args[++i]);
+                    case "--serve" -> servePort = Integer.parseInt(args[++i]);
+                    case "--tune" -> annotations = args[++i];
+                    case "--help" -> {
+                        printUsage();
+                        return 0;
+                    }
+                    default -> inputs.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            printUsage();
+            return 2;
+        }
+        if (annotations != null) {
+            return ParameterTuner.run(Paths.get(annotations));
+        }
+        if (servePort >= 0) {
+            return serve(servePort);
+        }
+        if (streamSource != null) {
+            return stream(streamSource, streamWidth, streamHeight, streamWorkers);
+        }
+        if (exportContainer != null) {
+            return export(Paths.get(exportContainer), Paths.get(outputDir), fromFrame, toFrame);
+        }
+        if ((inputs.isEmpty() && queueDir == null) || threads < 1 || segments < 1) {
+            printUsage();
+            return 2;
+        }
+
+        List<Path> files;
+        try {
+            files = resolveInputs(inputs);
+            Files.createDirectories(Paths.get(outputDir));
+        } catch (IOException e) {
+            System.out.println("Could not read inputs: " + e.getMessage());
+            return 1;
+        }
+
+        BatchProcessor processor = new BatchProcessor();
+        try {
+            if (queueDir != null) {
+                return processor.processQueue(files, Paths.get(queueDir), Paths.get(outputDir), segments, threads);
+            }
+            return processor.process(files, Paths.get(outputDir), threads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Batch processing interrupted");
+            return 1;
+        }
+    }
+
+    /**
+     * Prints the usage of the batch mode.
+     */
+    private static void printUsage() {
+        System.out.println("Usage: SignDetector [options] <directory|file|glob>...");
+        System.out.println("  --threads <n>   number of files processed at the same time (default: number of processors)");
+        System.out.println("  --output <dir>  directory of the _result files (default: current directory)");
+        System.out.println("  --queue <dir>   add the videos to a shared segment queue and process it");
+        System.out.println("  --segments <n>  number of segments per video in queue mode");
+        System.out.println("  --export <file> extract the images of a snapshot container into the output directory");
+        System.out.println("  --frames <a-b>  range of frames to extract with --export (default: all)");
+        System.out.println("  --stream <src>  detect in a live feed: - for raw BGR frames on stdin, a camera index,");
+        System.out.println("                  a named pipe of raw BGR frames (with --size) or a video URL");
+        System.out.println("  --size <WxH>    size of the raw BGR frames of --stream");
+        System.out.println("  --workers <n>   detector workers of --stream (default: 1)");
+        System.out.println("  --serve <port>  answer detection requests over HTTP on the local host (POST /detect)");
+        System.out.println("  --tune <file>   sweep the detection parameters on an annotation file and write the");
+        System.out.println("                  Pareto-optimal profiles of every lighting condition (-Ddetection.profile)");
+    }
+
+    /**
+     * Detects traffic signs in a live feed, printing the detections of every frame as JSON lines.
+     *
+     * @param source  the source, as accepted by FrameSource.open
+     * @param width   width of the raw frames, or 0
+     * @param height  height of the raw frames, or 0
+     * @param workers number of detector workers
+     * @return the exit code
+     */
+    private static int stream(String source, int width, int height, int workers) {
+        if (workers < 1) {
+            printUsage();
+            return 2;
+        }
+        // Cameras are matched by the region masks as camera:<index>
+        RegionMask.select(source.matches("\\d+") ? "camera:" + source : source);
+        try (FrameSource frameSource = FrameSource.open(source, width, height)) {
+            new StreamProcessor(frameSource, workers, System.out).run();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Could not open stream: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Stream processing interrupted");
+            return 1;
+        }
+    }
+
+    /**
+     * Runs the HTTP detection service until the program is stopped.
+     *
+     * @param port TCP port to listen on
+     * @return the exit code
+     */
+    private static int serve(int port) {
+        DetectionService service;
+        try {
+            service = new DetectionService(port);
+        } catch (IOException e) {
+            System.out.println("Could not start detection service: " + e.getMessage());
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(service::close, "service-shutdown"));
+        service.start();
+        try {
+            // The service is stopped with Ctrl+C
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        service.close();
+        return 0;
+    }
+
+    /**
+     * Extracts the images of a range of frames from a snapshot container.
+     *
+     * @param container path of the snapshot container
+     * @param outputDir directory where the images are written
+     * @param fromFrame first frame index, inclusive
+     * @param toFrame   last frame index, inclusive
+     * @return the exit code
+     */
+    private static int export(Path container, Path outputDir, int fromFrame, int toFrame) {
+        try (SnapshotReader reader = new SnapshotReader(container)) {
+            int exported = reader.export(outputDir, fromFrame, toFrame);
+            System.out.println("Exported " + exported + " of " + reader.getEntries().size() + " snapshots to " + outputDir);
+            return 0;
+        } catch (IOException e) {
+            System.out.println("Could not export snapshots: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Resolves directories, files and glob patterns into the list of images and videos to process.
+     * Directories are searched recursively and result files are skipped.
+     *
+     * @param inputs the directories, files or glob patterns
+     * @return the files to process, in a stable order
+     * @throws IOException if a directory cannot be read
+     */
+    public static List<Path> resolveInputs(List<String> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = pathOf(input);
+            if (path != null && (Files.isDirectory(path) || Files.isRegularFile(path))) {
+                addMediaFiles(files, path, file -> true);
+            } else if (isGlob(input)) {
+                // Search from the deepest directory before the first wildcard
+                String base = input.substring(0, firstWildcard(input));
+                int separator = Math.max(base.lastIndexOf('/'), base.lastIndexOf(File.separatorChar));
+                Path baseDir = Paths.get(separator >= 0 ? base.substring(0, separator + 1) : ".");
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input.substring(separator + 1));
+                if (Files.isDirectory(baseDir)) {
+                    addMediaFiles(files, baseDir, file -> matcher.matches(baseDir.relativize(file)));
+                }
+            } else {
+                System.out.println("Input not found: " + input);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Converts an input to a path.
+     *
+     * @param input the input
+     * @return the path, or null if the input is not a valid path, like a glob pattern on Windows
+     */
+    private static Path pathOf(String input) {
+        try {
+            return Paths.get(input);
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the images and videos under a path that match a filter.
+     *
+     * @param files  the list to add the files to
+     * @param root   a file or a directory searched recursively
+     * @param filter the filter of the files
+     * @throws IOException if a directory cannot be read
+     */
+    private static void addMediaFiles(List<Path> files, Path root, PathMatcher filter) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.filter(Files::isRegularFile)
+                    .filter(file -> isImage(file) || isVideo(file))
+                    .filter(file -> !file.getFileName().toString().contains("_result."))
+                    .filter(filter::matches)
+                    .sorted()
+                    .forEach(files::add);
+        }
+    }
+
+    /**
+     * Checks if an input contains glob wildcards.
+     *
+     * @param input the input
+     * @return true if the input is a glob pattern
+     */
+    private static boolean isGlob(String input) {
+        return firstWildcard(input) < input.length();
+    }
+
+    /**
+     * Gets the position of the first glob wildcard of an input.
+     *
+     * @param input the input
+     * @return the position of the first wildcard, or the length of the input if there is none
+     */
+    private static int firstWildcard(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if ("*?[{".indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return input.length();
+    }
+
+    /**
+     * Gets the lower case extension of a file.
+     *
+     * @param file the file
+     * @return the extension, or an empty string
+     */
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int i = name.lastIndexOf('.');
+        return i > 0 ? name.substring(i + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * Checks if a file is an image.
+     *
+     * @param file the file
+     * @return true if the file has an image extension
+     */
+    static boolean isImage(Path file) {
+        return IMAGE_EXTENSIONS.contains(extensionOf(file));
+    }
+
+    /**
+     * Checks if a file is a video.
+     *
+     * @param file the file
+     * @return true if the file has a video extension
+     */
+    static boolean isVideo(Path file) {
+        return VIDEO_EXTENSIONS.contains(extensionOf(file));
+    }
+
+    /**
+     * Processes the files on a bounded worker pool and prints the throughput summary.
+     * Each worker thread owns its own image detector; video frames are detected by the shared detector pool.
+     * The result files keep the folders of the inputs below their common folder, so inputs of the same name
+     * in different folders do not overwrite each other.
+     *
+     * @param files     the images and videos to process
+     * @param outputDir the directory of the result files
+     * @param threads   the number of files processed at the same time
+     * @return the exit code
+     * @throws InterruptedException if the thread is interrupted while waiting for the files
+     */
+    public int process(List<Path> files, Path outputDir, int threads) throws InterruptedException {
+        ThreadLocal<FrameDetector> imageDetectors = ThreadLocal.withInitial(TrafficSignDetector::createDetector);
+        long start = System.nanoTime();
+
+        // A file given twice, by a folder and a pattern, is processed once
+        List<Path> inputFiles = files.stream().map(file -> file.toAbsolutePath().normalize()).distinct().toList();
+        Path root = commonFolder(inputFiles);
+        Set<String> resultPaths = new HashSet<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (Path file : inputFiles) {
+            Path resultFolder = root != null && file.getParent() != null ? outputDir.resolve(root.relativize(file.getParent())) : outputDir;
+            try {
+                Files.createDirectories(resultFolder);
+            } catch (IOException e) {
+                System.out.println("Could not create " + resultFolder + ": " + e.getMessage());
+                failedFiles.incrementAndGet();
+                continue;
+            }
+            String resultPath = resultFolder.resolve(FileProcessor.maintainFormat(file.getFileName().toString())).toString();
+            if (!resultPaths.add(resultPath)) {
+                // Only when the inputs have no common folder, like files on different drives
+                System.out.println("Could not process " + file + ": result " + resultPath + " is written by another input");
+                failedFiles.incrementAndGet();
+                continue;
+            }
+            executor.submit(() -> processFile(file, resultPath, imageDetectors));
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        printSummary(System.nanoTime() - start);
+        return failedFiles.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Gets the deepest folder containing all the files.
+     *
+     * @param files the absolute, normalized files
+     * @return the common folder, or null if the files have no common folder, like files on different drives
+     */
+    static Path commonFolder(List<Path> files) {
+        Path common = null;
+        for (Path file : files) {
+            Path folder = file.getParent();
+            if (folder == null) {
+                return null;
+            }
+            if (common == null) {
+                common = folder;
+            }
+            while (common != null && !folder.startsWith(common)) {
+                common = common.getParent();
+            }
+            if (common == null) {
+                return null;
+            }
+        }
+        return common;
+    }
+
+    /**
+     * Processes one image or video.
+     *
+     * @param file           the file to process
+     * @param resultPath     the path of the result file
+     * @param imageDetectors the detectors of the worker threads
+     */
+    private void processFile(Path file, String resultPath, ThreadLocal<FrameDetector> imageDetectors) {
+        try {
+            if (isImage(file)) {
+                long start = System.nanoTime();
+                Mat resultImage = TrafficSignDetector.detectTrafficSigns(file.toString(), resultPath, imageDetectors.get());
+                if (resultImage == null) {
+                    failedFiles.incrementAndGet();
+                    return;
+                }
+                NativeMemory.release(resultImage);
+                frameLatencies.record(System.nanoTime() - start);
+                processedImages.incrementAndGet();
+            } else {
+                String written = TrafficSignDetector.detectTrafficSignsInVideo(file.toString(), resultPath, null, new ProcessingListener() {
+                    @Override
+                    public void frameProcessed(VideoFrame frame, long latencyNanos) {
+                        frameLatencies.record(latencyNanos);
+                    }
+                });
+                if (written == null) {
+                    failedFiles.incrementAndGet();
+                    return;
+                }
+                processedVideos.incrementAndGet();
+                if (!written.equals(resultPath)) {
+                    // The clip manifest or the detection log when the VideoOutput mode writes no result video
+                    System.out.println(written.equals(file.toString()) ? "No video written for " + file : "Result saved at " + written);
+                    return;
+                }
+            }
+            System.out.println("Result saved at " + resultPath);
+        } catch (RuntimeException e) {
+            System.out.println("Could not process " + file + ": " + e.getMessage());
+            failedFiles.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds the videos to a shared segment queue, processes the images locally and then works on the queue
+     * with several workers until it is empty.
+     *
+     * @param files     the images and videos to process
+     * @param queueDir  the shared directory of the queue
+     * @param outputDir the directory of the result images
+     * @param segments  the number of segments per video
+     * @param threads   the number of queue workers
+     * @return the exit code
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers
+     */
+    private int processQueue(List<Path> files, Path queueDir, Path outputDir, int segments, int threads) throws InterruptedException {
+        SegmentWorkQueue queue;
+        List<Path> images = new ArrayList<>();
+        try {
+            queue = new SegmentWorkQueue(queueDir);
+            for (Path file : files) {
+                if (isVideo(file)) {
+                    queue.enqueue(file.toString(), segments);
+                } else {
+                    images.add(file);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not use queue " + queueDir + ": " + e.getMessage());
+            return 1;
+        }
+
+        int exitCode = images.isEmpty() ? 0 : process(images, outputDir, threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                try {
+                    queue.runWorker(TrafficSignDetector::createDetector, TrafficSignDetector.getColor());
+                } catch (IOException e) {
+                    System.out.println("Queue worker failed: " + e.getMessage());
+                    failedFiles.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        failedFiles.addAndGet(queue.getFailedSegments());
+        return failedFiles.get() == 0 ? exitCode : 1;
+    }
+
+    /**
+     * Prints the number of files, the throughput and the per-frame latency percentiles.
+     *
+     * @param elapsedNanos the duration of the batch in nanoseconds
+     */
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        int files = processedImages.get() + processedVideos.get();
+        long frames = frameLatencies.count();
+        System.out.printf(Locale.ROOT, "%nProcessed %d files (%d images, %d videos, %d failed) in %.1f s%n",
+                files, processedImages.get(), processedVideos.get(), failedFiles.get(), seconds);
+        System.out.printf(Locale.ROOT, "Throughput: %.2f files/s, %.1f frames/s%n", files / seconds, frames / seconds);
+        System.out.printf(Locale.ROOT, "Per-frame latency: p50 %.1f ms, p99 %.1f ms%n",
+                frameLatencies.percentileMillis(50), frameLatencies.percentileMillis(99));
+        if (ColorPrefilter.isEnabled()) {
+            System.out.println(ColorPrefilter.report());
+        }
+        if (ResultCache.getDefault() != null) {
+            System.out.println(ResultCache.report());
+        }
+        System.out.println(NativeMemory.report());
+    }
+}
@@ -0,0 +1,171 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * BufferedImageConverter class is responsible for converting frames to images for display without
+ * allocating memory for every frame. It keeps a small pool of BufferedImages and resize Mats per size and
+ * type and copies the Mat pixels straight into the raster of a pooled image.
+ * <p>
+ * Each size has a ring of images that are handed out in turn, so an image may be displayed while the next
+ * ones are converted; an image is overwritten after as many conversions as the ring holds. A converter is
+ * not thread-safe and must be released when it is no longer used.
+ */
+public class BufferedImageConverter {
+    private static final int MAX_SIZES = 4; // Sizes kept in the pool; the least recently used is replaced
+
+    private final int ringSize; // Images handed out in turn for each size
+    private final Slot[] slots = new Slot[MAX_SIZES]; // Pooled images and Mats, one slot per size and type
+    private long uses = 0; // Counter used to find the least recently used slot
+
+    /**
+     * Pooled images and resize Mat of one size and type.
+     */
+    private static class Slot {
+        private final int width;
+        private final int height;
+        private final int type; // Mat type of the source frames
+        private final BufferedImage[] images;
+        private final Mat resized = new Mat(); // Destination of the resize
+        private final Mat continuous = new Mat(); // Copy of frames whose rows are not contiguous
+        private final Size size;
+        private int next = 0; // Next image of the ring
+        private long lastUse;
+
+        private Slot(int width, int height, int type, int channels, int ringSize) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.size = new Size(width, height);
+            this.images = new BufferedImage[ringSize];
+            int imageType = channels > 1 ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY;
+            for (int i = 0; i < ringSize; i++) {
+                images[i] = new BufferedImage(width, height, imageType);
+            }
+        }
+
+        private void release() {
+            resized.release();
+            continuous.release();
+        }
+    }
+
+    /**
+     * Creates a converter whose images stay valid for two more conversions of the same size.
+     */
+    public BufferedImageConverter() {
+        this(3);
+    }
+
+    /**
+     * Creates a converter.
+     *
+     * @param ringSize number of images handed out in turn for each size
+     */
+    public BufferedImageConverter(int ringSize) {
+        if (ringSize < 1) {
+            throw new IllegalArgumentException("Ring size must be at least 1");
+        }
+        this.ringSize = ringSize;
+    }
+
+    /**
+     * Converts a frame to a pooled image of the same size.
+     *
+     * @param mat Mat object with 1 or 3 channels of 8-bit pixels
+     * @return BufferedImage object, reused after the next conversions of this size
+     */
+    public BufferedImage convert(Mat mat) {
+        Slot slot = slotOf(mat.cols(), mat.rows(), mat.type(), mat.channels());
+        return copy(mat, slot);
+    }
+
+    /**
+     * Converts a frame to a pooled image that fits in a maximum size, keeping its aspect ratio.
+     *
+     * @param mat       Mat object with 1 or 3 channels of 8-bit pixels
+     * @param maxWidth  maximum width of the image
+     * @param maxHeight maximum height of the image
+     * @return BufferedImage object, reused after the next conversions of this size
+     */
+    public BufferedImage convertResized(Mat mat, int maxWidth, int maxHeight) {
+        double ratio = Math.min((double) maxWidth / mat.cols(), (double) maxHeight / mat.rows());
+        int width = Math.max(1, (int) (mat.cols() * ratio));
+        int height = Math.max(1, (int) (mat.rows() * ratio));
+        Slot slot = slotOf(width, height, mat.type(), mat.channels());
+        Imgproc.resize(mat, slot.resized, slot.size, 0, 0, Imgproc.INTER_AREA);
+        return copy(slot.resized, slot);
+    }
+
+    /**
+     * Copies the pixels of a frame into the next image of a slot.
+     *
+     * @param mat  the frame, of the size of the slot
+     * @param slot the slot
+     * @return the image holding the pixels
+     */
+    private static BufferedImage copy(Mat mat, Slot slot) {
+        Mat source = mat;
+        if (!mat.isContinuous()) {
+            mat.copyTo(slot.continuous);
+            source = slot.continuous;
+        }
+        BufferedImage image = slot.images[slot.next];
+        slot.next = (slot.next + 1) % slot.images.length;
+        byte[] targetPixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        source.get(0, 0, targetPixels);
+        return image;
+    }
+
+    /**
+     * Finds the slot of a size and type, replacing the least recently used slot if it is not pooled.
+     * The slots are searched linearly, so a lookup does not allocate.
+     *
+     * @param width    width of the images
+     * @param height   height of the images
+     * @param type     Mat type of the source frames
+     * @param channels number of channels of the source frames
+     * @return the slot
+     */
+    private Slot slotOf(int width, int height, int type, int channels) {
+        int victim = 0;
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[i];
+            if (slot == null) {
+                victim = i;
+                break;
+            }
+            if (slot.width == width && slot.height == height && slot.type == type) {
+                slot.lastUse = ++uses;
+                return slot;
+            }
+            if (slot.lastUse < slots[victim].lastUse) {
+                victim = i;
+            }
+        }
+        if (slots[victim] != null) {
+            slots[victim].release();
+        }
+        Slot slot = new Slot(width, height, type, channels, ringSize);
+        slot.lastUse = ++uses;
+        slots[victim] = slot;
+        return slot;
+    }
+
+    /**
+     * Releases the pooled Mats. The converter must not be used afterwards.
+     */
+    public void release() {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                slots[i].release();
+                slots[i] = null;
+            }
+        }
+    }
+}
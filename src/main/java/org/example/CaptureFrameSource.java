@@ -0,0 +1,74 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.IOException;
+
+/**
+ * CaptureFrameSource class is responsible for reading live frames with a VideoCapture, from a camera device or a
+ * stream URL. The capture buffer is kept as small as the backend allows, so the frames read are the latest ones.
+ */
+public class CaptureFrameSource implements FrameSource {
+    private final VideoCapture videoCapture;
+
+    /**
+     * Creates a source from an opened capture.
+     *
+     * @param videoCapture the opened capture
+     */
+    private CaptureFrameSource(VideoCapture videoCapture) {
+        this.videoCapture = videoCapture;
+        // Not every backend supports it; the others keep their own buffer
+        videoCapture.set(Videoio.CAP_PROP_BUFFERSIZE, 1);
+    }
+
+    /**
+     * Opens a camera device.
+     *
+     * @param index index of the device
+     * @return the source
+     * @throws IOException if the device cannot be opened
+     */
+    public static CaptureFrameSource ofDevice(int index) throws IOException {
+        return of(new VideoCapture(index), "camera " + index);
+    }
+
+    /**
+     * Opens a video file or stream URL.
+     *
+     * @param path the file or URL
+     * @return the source
+     * @throws IOException if it cannot be opened
+     */
+    public static CaptureFrameSource ofPath(String path) throws IOException {
+        return of(new VideoCapture(path), path);
+    }
+
+    /**
+     * Checks that a capture is opened.
+     *
+     * @param videoCapture the capture
+     * @param name         name of the source in the error message
+     * @return the source
+     * @throws IOException if the capture is not opened
+     */
+    private static CaptureFrameSource of(VideoCapture videoCapture, String name) throws IOException {
+        if (!videoCapture.isOpened()) {
+            videoCapture.release();
+            throw new IOException("Could not open " + name);
+        }
+        return new CaptureFrameSource(videoCapture);
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        return videoCapture.read(frame);
+    }
+
+    @Override
+    public void close() {
+        videoCapture.release();
+    }
+}
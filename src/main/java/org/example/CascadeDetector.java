@@ -0,0 +1,82 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CascadeDetector class is responsible for detecting traffic signs with a single cascade classifier.
+ * A CascadeClassifier cannot be shared between threads, so each instance owns its own classifier.
+ * Detection runs on a grayscale copy with the parameters of a DetectionConfig.
+ */
+public class CascadeDetector implements FrameDetector {
+    private final CascadeClassifier cascade; // Cascade classifier owned by this detector
+    private final String label; // Label given to the detections
+    private final DetectionConfig config; // Parameters of detectMultiScale
+    private final Mat gray = new Mat(); // Reused grayscale image
+
+    /**
+     * Creates a detector with the default detection parameters by loading a cascade classifier from a XML file.
+     *
+     * @param cascadePath path to the cascade XML file
+     */
+    public CascadeDetector(String cascadePath) {
+        this(cascadePath, new DetectionConfig());
+    }
+
+    /**
+     * Creates a detector by loading a cascade classifier from a XML file.
+     *
+     * @param cascadePath path to the cascade XML file
+     * @param config      parameters of detectMultiScale
+     */
+    public CascadeDetector(String cascadePath, DetectionConfig config) {
+        this.cascade = new CascadeClassifier(cascadePath);
+        if (cascade.empty()) {
+            throw new IllegalArgumentException("Could not load cascade: " + cascadePath);
+        }
+        this.label = labelOf(cascadePath);
+        this.config = config;
+    }
+
+    /**
+     * Gets the label of a cascade, which is its file name without the extension.
+     *
+     * @param cascadePath path to the cascade XML file
+     * @return the label of the cascade
+     */
+    public static String labelOf(String cascadePath) {
+        String name = new File(cascadePath).getName();
+        int i = name.lastIndexOf('.');
+        return i > 0 ? name.substring(0, i) : name;
+    }
+
+    @Override
+    public List<Detection> detect(Mat image) {
+        Mat source = image;
+        if (image.channels() > 1) {
+            long startNanos = System.nanoTime();
+            Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+            PipelineMetrics.addPreprocessNanos(startNanos);
+            source = gray;
+        }
+
+        MatOfRect trafficSigns = new MatOfRect();
+        cascade.detectMultiScale(source, trafficSigns, config.getScaleFactor(), config.getMinNeighbors(), 0,
+                new Size(config.getMinSize(), config.getMinSize()), new Size(config.getMaxSize(), config.getMaxSize()));
+
+        List<Detection> detections = new ArrayList<>();
+        for (Rect rect : trafficSigns.toArray()) {
+            detections.add(new Detection(label, rect));
+        }
+        trafficSigns.release();
+        return detections;
+    }
+}
@@ -0,0 +1,250 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * ClipWriter class is responsible for encoding only the parts of a video around its detections.
+ * While the video is processed, the detections of the frames with traffic signs are recorded; no frame is kept.
+ * Afterwards every event, from "clips.preRollSeconds" (2 by default) before its first detection to
+ * "clips.postRollSeconds" (2 by default) after its last one, is decoded again from the source video, highlighted
+ * and written to its own file. Events closer than "clips.mergeSeconds" (1 by default) are merged into one clip.
+ * <p>
+ * Decoding a few seconds twice costs much less than encoding the whole video. A JSON manifest next to the clips
+ * lists their files, frame ranges and times, and the labels detected in them.
+ */
+public class ClipWriter {
+    private final String videoPath; // Path of the source video
+    private final String resultVideoPath; // Path of the result video, used to name the clips
+    private final double frameRate; // Frame rate of the source video
+    private final int preRollFrames; // Frames written before the first detection of an event
+    private final int postRollFrames; // Frames written after the last detection of an event
+    private final int mergeGapFrames; // Largest gap between two events written as one clip
+    private final NavigableMap<Integer, List<Detection>> detectedFrames = new TreeMap<>(); // Frames with traffic signs
+
+    /**
+     * An event: a range of frames written as one clip.
+     */
+    private static class Clip {
+        private final int startFrame;
+        private int endFrame; // Inclusive
+
+        private Clip(int startFrame, int endFrame) {
+            this.startFrame = startFrame;
+            this.endFrame = endFrame;
+        }
+    }
+
+    /**
+     * Creates a clip writer with the roll and merge times given by the "clips.*" properties.
+     *
+     * @param videoPath       path of the source video
+     * @param resultVideoPath path of the result video; the clips and the manifest are named after it
+     * @param frameRate       frame rate of the source video
+     */
+    public ClipWriter(String videoPath, String resultVideoPath, double frameRate) {
+        this.videoPath = videoPath;
+        this.resultVideoPath = resultVideoPath;
+        this.frameRate = frameRate > 0 ? frameRate : 30;
+        this.preRollFrames = framesOf("clips.preRollSeconds", "2");
+        this.postRollFrames = framesOf("clips.postRollSeconds", "2");
+        this.mergeGapFrames = framesOf("clips.mergeSeconds", "1");
+    }
+
+    /**
+     * Converts a duration property to a number of frames.
+     *
+     * @param key          the property key
+     * @param defaultValue the duration in seconds used when the property is not set
+     * @return the number of frames
+     */
+    private int framesOf(String key, String defaultValue) {
+        return (int) Math.max(0, Math.round(Double.parseDouble(System.getProperty(key, defaultValue)) * frameRate));
+    }
+
+    /**
+     * Records the detections of a frame. Called by the encoder stage, in frame order.
+     *
+     * @param frameIndex position of the frame in the video
+     * @param detections the traffic signs of the frame
+     */
+    public void record(int frameIndex, List<Detection> detections) {
+        if (!detections.isEmpty()) {
+            detectedFrames.put(frameIndex, detections);
+        }
+    }
+
+    /**
+     * Groups the recorded frames into events, merging the events closer than the merge gap.
+     *
+     * @return the clips, in video order
+     */
+    private List<Clip> plan() {
+        List<Clip> clips = new ArrayList<>();
+        for (int frameIndex : detectedFrames.keySet()) {
+            int start = Math.max(0, frameIndex - preRollFrames);
+            int end = frameIndex + postRollFrames;
+            Clip last = clips.isEmpty() ? null : clips.get(clips.size() - 1);
+            if (last != null && start - last.endFrame <= mergeGapFrames + 1) {
+                last.endFrame = Math.max(last.endFrame, end);
+            } else {
+                clips.add(new Clip(start, end));
+            }
+        }
+        return clips;
+    }
+
+    /**
+     * Writes a clip per event and the manifest.
+     *
+     * @param color Scalar object representing the color of the rectangles
+     * @return the path of the manifest, or null if the source video cannot be read or a clip cannot be written
+     */
+    public String write(Scalar color) {
+        VideoCapture videoCapture = new VideoCapture(videoPath);
+        if (!videoCapture.isOpened()) {
+            System.out.println("\nCould not open video: " + videoPath);
+            return null;
+        }
+        int frameWidth = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH);
+        int frameHeight = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+        Size size = VideoOutput.outputSize(frameWidth, frameHeight);
+        boolean scaled = size.width != frameWidth;
+
+        long startNanos = System.nanoTime();
+        List<Clip> clips = plan();
+        List<String> clipPaths = new ArrayList<>();
+        int writtenFrames = 0;
+        Mat frameMat = new Mat();
+        Mat scaledMat = new Mat();
+        int position = 0; // Index of the next frame read by the capture
+        try {
+            for (int i = 0; i < clips.size(); i++) {
+                Clip clip = clips.get(i);
+                String clipPath = clipPath(i + 1);
+                VideoWriter videoWriter = VideoOutput.openWriter(clipPath, frameRate, size);
+                if (!videoWriter.isOpened()) {
+                    System.out.println("\nCould not create video writer: " + clipPath);
+                    return null;
+                }
+                if (position != clip.startFrame) {
+                    videoCapture.set(Videoio.CAP_PROP_POS_FRAMES, clip.startFrame);
+                    position = clip.startFrame;
+                }
+                while (position <= clip.endFrame && videoCapture.read(frameMat)) {
+                    List<Detection> detections = detectedFrames.get(position);
+                    if (detections != null) {
+                        TrafficSignDetector.drawTrafficSigns(frameMat, detections, color);
+                    }
+                    if (scaled) {
+                        Imgproc.resize(frameMat, scaledMat, size, 0, 0, Imgproc.INTER_AREA);
+                        videoWriter.write(scaledMat);
+                    } else {
+                        videoWriter.write(frameMat);
+                    }
+                    position++;
+                    writtenFrames++;
+                }
+                // The video may end before the post-roll
+                clip.endFrame = Math.min(clip.endFrame, position - 1);
+                videoWriter.release();
+                clipPaths.add(clipPath);
+            }
+        } finally {
+            frameMat.release();
+            scaledMat.release();
+            videoCapture.release();
+        }
+
+        Path manifest = manifestPath();
+        try {
+            Files.writeString(manifest, manifestJson(clips, clipPaths), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.out.println("\nCould not write clip manifest: " + e.getMessage());
+            return null;
+        }
+        System.out.println(String.format(Locale.ROOT, "Clips: %d clips of %.1f s in total written in %.1f s, manifest %s",
+                clips.size(), writtenFrames / frameRate, (System.nanoTime() - startNanos) / 1e9, manifest));
+        return manifest.toString();
+    }
+
+    /**
+     * Gets the path of a clip: the result video path with "_clip" and the clip number before the extension.
+     *
+     * @param number the clip number, from 1
+     * @return the clip path
+     */
+    private String clipPath(int number) {
+        int i = resultVideoPath.lastIndexOf('.');
+        boolean hasExtension = i > Math.max(resultVideoPath.lastIndexOf('/'), resultVideoPath.lastIndexOf('\\'));
+        String base = hasExtension ? resultVideoPath.substring(0, i) : resultVideoPath;
+        return base + "_clip" + number + (hasExtension ? resultVideoPath.substring(i) : ".mp4");
+    }
+
+    /**
+     * Gets the path of the manifest: the result video path with "_clips.json" instead of the extension.
+     *
+     * @return the manifest path
+     */
+    private Path manifestPath() {
+        int i = resultVideoPath.lastIndexOf('.');
+        String base = i > Math.max(resultVideoPath.lastIndexOf('/'), resultVideoPath.lastIndexOf('\\'))
+                ? resultVideoPath.substring(0, i) : resultVideoPath;
+        return Paths.get(base + "_clips.json");
+    }
+
+    /**
+     * Describes the clips as a JSON object.
+     *
+     * @param clips     the written clips
+     * @param clipPaths the paths of the clips
+     * @return the JSON text
+     */
+    private String manifestJson(List<Clip> clips, List<String> clipPaths) {
+        StringBuilder json = new StringBuilder(128 + 192 * clips.size());
+        json.append("{\"video\":\"").append(DetectionLog.escape(videoPath))
+                .append(String.format(Locale.ROOT, "\",\"frameRate\":%.3f", frameRate))
+                .append(",\"clips\":[");
+        for (int i = 0; i < clips.size(); i++) {
+            Clip clip = clips.get(i);
+            Map<Integer, List<Detection>> frames = detectedFrames.subMap(clip.startFrame, true, clip.endFrame, true);
+            Set<String> labels = new TreeSet<>();
+            frames.values().forEach(detections -> detections.forEach(detection -> labels.add(detection.getLabel())));
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\n  {\"file\":\"").append(DetectionLog.escape(Paths.get(clipPaths.get(i)).getFileName().toString()))
+                    .append("\",\"startFrame\":").append(clip.startFrame)
+                    .append(",\"endFrame\":").append(clip.endFrame)
+                    .append(",\"startMillis\":").append(Math.round(clip.startFrame * 1000 / frameRate))
+                    .append(",\"endMillis\":").append(Math.round((clip.endFrame + 1) * 1000 / frameRate))
+                    .append(",\"detectedFrames\":").append(frames.size())
+                    .append(",\"labels\":[");
+            int j = 0;
+            for (String label : labels) {
+                json.append(j++ > 0 ? ",\"" : "\"").append(DetectionLog.escape(label)).append('"');
+            }
+            json.append("]}");
+        }
+        return json.append("\n]}\n").toString();
+    }
+}
@@ -0,0 +1,139 @@
+package org.example;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ColorPrefilter class is responsible for limiting the cascade search to the strongly colored parts of a frame.
+ * Traffic signs are red, blue or yellow, so the frame is thresholded in HSV on a small copy, connected
+ * blobs are found, and the wrapped detector only runs on padded regions around them. Road and sky are
+ * skipped. The share of the frame area that was skipped is counted for all prefilters together.
+ */
+public class ColorPrefilter implements FrameDetector {
+    private static final int MASK_WIDTH = 320; // Width of the copy used to find the colored blobs
+    private static final int MIN_BLOB_AREA = 12; // Smallest blob kept, in mask pixels
+    private static final double PADDING = 0.5; // Padding around a blob, relative to its largest side
+    private static final int MIN_REGION_SIDE = 48; // Smallest region searched, in frame pixels
+
+    // HSV ranges of the sign colors (OpenCV hue goes from 0 to 180)
+    private static final Scalar[][] COLOR_RANGES = {
+            {new Scalar(0, 100, 70), new Scalar(10, 255, 255)}, // Red, low hues
+            {new Scalar(170, 100, 70), new Scalar(180, 255, 255)}, // Red, high hues
+            {new Scalar(100, 120, 60), new Scalar(130, 255, 255)}, // Blue
+            {new Scalar(15, 120, 100), new Scalar(35, 255, 255)} // Yellow
+    };
+
+    private static final LongAdder totalArea = new LongAdder(); // Frame pixels seen by all prefilters
+    private static final LongAdder searchedArea = new LongAdder(); // Frame pixels given to the cascades
+
+    private final FrameDetector detector; // Detector run on the candidate regions
+    private final Mat small = new Mat(); // Reused downscaled frame
+    private final Mat hsv = new Mat(); // Reused HSV frame
+    private final Mat range = new Mat(); // Reused mask of one color range
+    private final Mat mask = new Mat(); // Reused mask of all the colors
+    private final Mat labels = new Mat(); // Reused connected component labels
+    private final Mat stats = new Mat(); // Reused connected component statistics
+    private final Mat centroids = new Mat(); // Reused connected component centroids
+    private final Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5));
+
+    /**
+     * Creates a prefilter in front of a detector.
+     *
+     * @param detector the detector run on the candidate regions
+     */
+    public ColorPrefilter(FrameDetector detector) {
+        this.detector = detector;
+    }
+
+    /**
+     * Checks if the prefilter is enabled by the "detector.prefilter" property.
+     *
+     * @return true if the prefilter is enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("detector.prefilter");
+    }
+
+    @Override
+    public List<Detection> detect(Mat image) {
+        long startNanos = System.nanoTime();
+        List<Rect> regions = findCandidateRegions(image);
+        PipelineMetrics.addPreprocessNanos(startNanos);
+        totalArea.add((long) image.cols() * image.rows());
+        searchedArea.add(Regions.area(regions));
+        return Regions.detectInRegions(detector, image, regions);
+    }
+
+    /**
+     * Finds the padded regions around the red, blue and yellow blobs of a frame.
+     *
+     * @param image Mat object representing the BGR frame
+     * @return the regions to search, in frame coordinates and without overlaps
+     */
+    public List<Rect> findCandidateRegions(Mat image) {
+        // Threshold a small copy, the blobs do not need full resolution
+        double scale = Math.min(1.0, (double) MASK_WIDTH / image.cols());
+        Imgproc.resize(image, small, new Size(Math.round(image.cols() * scale), Math.round(image.rows() * scale)), 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(small, hsv, Imgproc.COLOR_BGR2HSV);
+
+        mask.create(hsv.rows(), hsv.cols(), CvType.CV_8UC1);
+        mask.setTo(new Scalar(0));
+        for (Scalar[] colorRange : COLOR_RANGES) {
+            Core.inRange(hsv, colorRange[0], colorRange[1], range);
+            Core.bitwise_or(mask, range, mask);
+        }
+        // Join the parts of a sign split by its white or black inner symbols
+        Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_CLOSE, kernel);
+
+        int count = Imgproc.connectedComponentsWithStats(mask, labels, stats, centroids);
+        List<Rect> regions = new ArrayList<>();
+        // Label 0 is the background
+        for (int i = 1; i < count; i++) {
+            if (stats.get(i, Imgproc.CC_STAT_AREA)[0] < MIN_BLOB_AREA) {
+                continue;
+            }
+            int x = (int) (stats.get(i, Imgproc.CC_STAT_LEFT)[0] / scale);
+            int y = (int) (stats.get(i, Imgproc.CC_STAT_TOP)[0] / scale);
+            int width = (int) Math.ceil(stats.get(i, Imgproc.CC_STAT_WIDTH)[0] / scale);
+            int height = (int) Math.ceil(stats.get(i, Imgproc.CC_STAT_HEIGHT)[0] / scale);
+
+            // Pad the blob so the cascade sees the whole sign and some context
+            int side = Math.max(width, height);
+            int pad = Math.max((int) (side * PADDING), (MIN_REGION_SIDE - side + 1) / 2);
+            Rect region = Regions.pad(new Rect(x, y, width, height), Math.max(pad, 0), image.cols(), image.rows());
+            if (region.width > 0 && region.height > 0) {
+                regions.add(region);
+            }
+        }
+        return Regions.mergeOverlapping(regions);
+    }
+
+    /**
+     * Gets the share of the frame area that all prefilters skipped so far.
+     *
+     * @return the skipped share, between 0 and 1
+     */
+    public static double skippedFraction() {
+        long total = totalArea.sum();
+        return total == 0 ? 0 : 1 - (double) searchedArea.sum() / total;
+    }
+
+    /**
+     * Gets a short report of the skipped frame area.
+     *
+     * @return the report line
+     */
+    public static String report() {
+        return String.format(Locale.ROOT, "Color prefilter skipped %.1f%% of the frame area", skippedFraction() * 100);
+    }
+}
@@ -0,0 +1,62 @@
+package org.example;
+
+import org.opencv.core.Rect;
+
+/**
+ * Detection class is responsible for holding a traffic sign found in a frame.
+ */
+public class Detection {
+    private final String label; // Name of the cascade that found the traffic sign
+    private final Rect rect; // Bounding box of the traffic sign in frame coordinates
+    private final int trackId; // Identifier of the track following the traffic sign, or -1
+
+    /**
+     * Creates a detection that is not tracked.
+     *
+     * @param label name of the cascade that found the traffic sign
+     * @param rect  bounding box of the traffic sign
+     */
+    public Detection(String label, Rect rect) {
+        this(label, rect, -1);
+    }
+
+    /**
+     * Creates a detection followed by a track.
+     *
+     * @param label   name of the cascade that found the traffic sign
+     * @param rect    bounding box of the traffic sign
+     * @param trackId identifier of the track, stable across frames, or -1
+     */
+    public Detection(String label, Rect rect, int trackId) {
+        this.label = label;
+        this.rect = rect;
+        this.trackId = trackId;
+    }
+
+    /**
+     * Gets the name of the cascade that found the traffic sign.
+     *
+     * @return the label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Gets the bounding box of the traffic sign.
+     *
+     * @return the bounding box
+     */
+    public Rect getRect() {
+        return rect;
+    }
+
+    /**
+     * Gets the identifier of the track following the traffic sign.
+     *
+     * @return the track identifier, or -1 if the detection is not tracked
+     */
+    public int getTrackId() {
+        return trackId;
+    }
+}
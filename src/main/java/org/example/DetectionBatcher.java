@@ -0,0 +1,353 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * DetectionBatcher class is responsible for running the detection requests of the service on a fixed set of
+ * workers, each owning its own detector and therefore its own classifiers.
+ * <p>
+ * An idle worker takes the oldest request, so a burst is spread over every worker. Cascade detection runs one
+ * image at a time, so taking several requests at once only helps when no other worker is idle: then a worker
+ * also takes the requests already waiting behind it, up to "service.batch" requests (1 by default, no batching),
+ * and detects them in the order of their deadlines. A request whose deadline passed while queued is dropped
+ * without being detected.
+ * <p>
+ * Requests are admitted only if they can finish in time: the queue holds at most "service.queue" requests
+ * (4 per worker by default), and a request is refused when the measured detection time of the requests ahead
+ * of it, shared by the workers or serialized in a batch, already exceeds its deadline. Refused requests never
+ * enter the queue, so the latency of the admitted ones stays bounded under overload.
+ */
+public class DetectionBatcher implements AutoCloseable {
+    private static final double TIME_SMOOTHING = 0.1; // Weight of the last detection in the mean detection time
+
+    private final BlockingQueue<Request> queue; // Requests waiting for an idle worker
+    private final Thread[] workers; // Worker threads, each owning a detector
+    private final int batchSize; // Most requests taken by a worker at once
+    private final AtomicInteger liveWorkers; // Workers whose detector was created successfully
+    private final AtomicInteger busyWorkers = new AtomicInteger(); // Workers detecting a batch
+    private final AtomicLong meanDetectNanos = new AtomicLong(); // Smoothed detection time of one request, or 0
+    private final LatencyHistogram queueLatency = new LatencyHistogram(); // From admission to detection
+    private final LatencyHistogram detectLatency = new LatencyHistogram(); // Detection of one request
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder refusedFull = new LongAdder(); // Refused because the queue was full
+    private final LongAdder refusedLate = new LongAdder(); // Refused because the deadline could not be met
+    private final LongAdder expired = new LongAdder(); // Admitted but dropped once their deadline passed
+    private final LongAdder batches = new LongAdder(); // Batches taken by the workers
+    private volatile boolean closed = false;
+
+    /**
+     * Outcome of the admission of a request.
+     */
+    public enum Admission {
+        ACCEPTED,
+        QUEUE_FULL,
+        DEADLINE_UNREACHABLE,
+        UNAVAILABLE
+    }
+
+    /**
+     * A decoded image waiting for detection, its deadline and the future that receives its result.
+     * Once admitted, the image belongs to the batcher, which releases it after the detection.
+     */
+    public static class Request {
+        private final Mat image;
+        private final long deadlineNanos; // Time after which the result is useless, as given by System.nanoTime
+        private final CompletableFuture<List<Detection>> result = new CompletableFuture<>();
+        private long admittedNanos; // Time when the request entered the queue
+        private volatile long queueNanos; // Time spent in the queue
+        private volatile long detectNanos; // Time spent detecting
+
+        /**
+         * Creates a request.
+         *
+         * @param image         Mat object representing the image
+         * @param deadlineNanos time after which the result is useless, as given by System.nanoTime
+         */
+        public Request(Mat image, long deadlineNanos) {
+            this.image = image;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Gets the future that completes with the detected traffic signs. Cancelling it drops the request
+         * if no worker took it yet.
+         *
+         * @return the result
+         */
+        public CompletableFuture<List<Detection>> getResult() {
+            return result;
+        }
+
+        /**
+         * Gets the time the request waited for a worker.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getQueueNanos() {
+            return queueNanos;
+        }
+
+        /**
+         * Gets the time spent detecting the traffic signs of the request.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getDetectNanos() {
+            return detectNanos;
+        }
+    }
+
+    /**
+     * Creates a batcher with the workers, queue and batch sizes given by the "service.*" properties.
+     *
+     * @param detectorFactory factory that creates one detector per worker
+     */
+    public DetectionBatcher(Supplier<FrameDetector> detectorFactory) {
+        this(Integer.getInteger("service.workers", DetectorPool.defaultSize()), detectorFactory);
+    }
+
+    /**
+     * Creates a batcher with the given number of workers.
+     *
+     * @param size            number of worker threads
+     * @param detectorFactory factory that creates one detector per worker
+     */
+    public DetectionBatcher(int size, Supplier<FrameDetector> detectorFactory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Worker count must be positive: " + size);
+        }
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, Integer.getInteger("service.queue", 4 * size)));
+        this.batchSize = Math.max(1, Integer.getInteger("service.batch", 1));
+        this.workers = new Thread[size];
+        this.liveWorkers = new AtomicInteger(size);
+        for (int i = 0; i < size; i++) {
+            workers[i] = new Thread(() -> work(detectorFactory), "service-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Admits a request if it can be detected before its deadline. Never blocks.
+     *
+     * @param request the request; its image is released by the batcher only if it is accepted
+     * @return the outcome of the admission
+     */
+    public Admission submit(Request request) {
+        if (closed || liveWorkers.get() == 0) {
+            return Admission.UNAVAILABLE;
+        }
+        long now = System.nanoTime();
+        if (now + expectedWaitNanos() > request.deadlineNanos) {
+            refusedLate.increment();
+            return Admission.DEADLINE_UNREACHABLE;
+        }
+        request.admittedNanos = now;
+        if (!queue.offer(request)) {
+            refusedFull.increment();
+            return Admission.QUEUE_FULL;
+        }
+        admitted.increment();
+        if (closed) {
+            // Closed while the request was offered: nobody would take it
+            drain(new IllegalStateException("Detection service closed"));
+        }
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * Checks, without admitting anything, if a request with the given deadline would be admitted now.
+     * Used to refuse a request before its body is read and decoded.
+     *
+     * @param deadlineNanos time after which the result is useless, as given by System.nanoTime
+     * @return ACCEPTED if the request may be admitted, otherwise the reason it would be refused
+     */
+    public Admission wouldAdmit(long deadlineNanos) {
+        if (closed || liveWorkers.get() == 0) {
+            return Admission.UNAVAILABLE;
+        }
+        if (queue.remainingCapacity() == 0) {
+            refusedFull.increment();
+            return Admission.QUEUE_FULL;
+        }
+        if (System.nanoTime() + expectedWaitNanos() > deadlineNanos) {
+            refusedLate.increment();
+            return Admission.DEADLINE_UNREACHABLE;
+        }
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * Estimates the time a request admitted now would take to be detected, from the measured detection time.
+     * The requests ahead are shared by the workers, one at a time; with batching, a request may instead wait
+     * behind the other requests of its batch on a single worker.
+     *
+     * @return the estimated time in nanoseconds, or 0 before the first detection
+     */
+    private long expectedWaitNanos() {
+        long mean = meanDetectNanos.get();
+        if (mean == 0) {
+            return 0;
+        }
+        long ahead = queue.size() + busyWorkers.get();
+        long sharedNanos = ahead * mean / Math.max(1, liveWorkers.get());
+        long batchedNanos = Math.min(ahead, batchSize - 1) * mean;
+        return Math.max(sharedNanos, batchedNanos) + mean;
+    }
+
+    /**
+     * Worker loop: creates the detector of this worker and detects batches of requests.
+     *
+     * @param detectorFactory factory that creates the detector
+     */
+    private void work(Supplier<FrameDetector> detectorFactory) {
+        FrameDetector detector;
+        try {
+            detector = detectorFactory.get();
+        } catch (RuntimeException e) {
+            System.out.println("\nCould not create detector: " + e.getMessage());
+            if (liveWorkers.decrementAndGet() == 0) {
+                drain(e);
+            }
+            return;
+        }
+
+        List<Request> batch = new ArrayList<>(batchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                // Taking more requests would only serialize them here while another worker is idle
+                if (busyWorkers.incrementAndGet() >= liveWorkers.get()) {
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                batches.increment();
+                try {
+                    batch.sort(Comparator.comparingLong(request -> request.deadlineNanos));
+                    for (Request request : batch) {
+                        detect(detector, request);
+                    }
+                } finally {
+                    busyWorkers.decrementAndGet();
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Detects the traffic signs of a request unless it was cancelled or its deadline passed, then releases its image.
+     *
+     * @param detector the detector of the worker
+     * @param request  the request
+     */
+    private void detect(FrameDetector detector, Request request) {
+        long startNanos = System.nanoTime();
+        request.queueNanos = startNanos - request.admittedNanos;
+        try {
+            if (request.result.isDone()) {
+                // Cancelled by a caller who stopped waiting
+                return;
+            }
+            if (startNanos > request.deadlineNanos) {
+                expired.increment();
+                request.result.completeExceptionally(new TimeoutException("Deadline passed while queued"));
+                return;
+            }
+            queueLatency.record(request.queueNanos);
+            List<Detection> detections = detector.detect(request.image);
+            long nanos = System.nanoTime() - startNanos;
+            request.detectNanos = nanos;
+            detectLatency.record(nanos);
+            meanDetectNanos.getAndUpdate(mean -> mean == 0 ? nanos : (long) (mean + TIME_SMOOTHING * (nanos - mean)));
+            request.result.complete(detections);
+        } catch (RuntimeException e) {
+            request.result.completeExceptionally(e);
+        } finally {
+            request.image.release();
+        }
+    }
+
+    /**
+     * Fails the queued requests and releases their images, so no caller waits for a result.
+     *
+     * @param cause the reason of the failure
+     */
+    private void drain(Throwable cause) {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(cause);
+            request.image.release();
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for an idle worker.
+     *
+     * @return the number of queued requests
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the largest number of requests waiting for an idle worker.
+     *
+     * @return the queue capacity
+     */
+    public int queueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return the number of workers
+     */
+    public int size() {
+        return workers.length;
+    }
+
+    /**
+     * Describes the requests served so far as a JSON object: admission counts, mean batch size and latencies.
+     *
+     * @return the JSON text
+     */
+    public String statsJson() {
+        long batchCount = batches.sum();
+        double meanBatch = batchCount == 0 ? 0 : (double) (admitted.sum() - queue.size()) / batchCount;
+        return String.format(Locale.ROOT, "{\"workers\":%d,\"liveWorkers\":%d,\"queued\":%d,\"admitted\":%d,"
+                        + "\"refusedQueueFull\":%d,\"refusedDeadline\":%d,\"expired\":%d,\"detected\":%d,"
+                        + "\"meanBatchSize\":%.2f,\"queueP50Millis\":%.2f,\"queueP99Millis\":%.2f,"
+                        + "\"detectP50Millis\":%.2f,\"detectP99Millis\":%.2f}",
+                workers.length, liveWorkers.get(), queue.size(), admitted.sum(), refusedFull.sum(), refusedLate.sum(),
+                expired.sum(), detectLatency.count(), meanBatch, queueLatency.percentileMillis(50),
+                queueLatency.percentileMillis(99), detectLatency.percentileMillis(50), detectLatency.percentileMillis(99));
+    }
+
+    /**
+     * Stops the workers and fails the requests still waiting for detection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        drain(new IllegalStateException("Detection service closed"));
+    }
+}
@@ -0,0 +1,262 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * DetectionConfig class is responsible for holding the parameters of the cascade detection.
+ * It can be set from code or loaded from a properties file with the keys cascade, scaleFactor, minNeighbors,
+ * minSize, maxSize and detectionWidth. Sizes are in pixels of the detection image, after downscaling.
+ * A config must not be modified after it is given to a detector.
+ * <p>
+ * Named profiles, such as the ones written by ParameterTuner for a lighting condition, are loaded from
+ * "&lt;detection.profiles&gt;/&lt;name&gt;.properties" when the "detection.profile" property names one.
+ */
+public class DetectionConfig {
+    private static final String DEFAULT_FILE = "detection.properties"; // Config file read when present
+    private static final String DEFAULT_PROFILES = "profiles"; // Folder of the named profiles
+
+    private String cascade = null; // Path of the cascade XML file, or null for the default cascade
+    private double scaleFactor = 1.1; // Scale between two pyramid levels
+    private int minNeighbors = 3; // Hits needed to keep a detection
+    private int minSize = 0; // Smallest sign side searched, 0 for the cascade window
+    private int maxSize = 0; // Largest sign side searched, 0 for no limit
+    private int detectionWidth = 1280; // Frames wider than this are downscaled before detection, 0 to never downscale
+
+    /**
+     * Loads the config from the file named by the "detection.config" property, from the profile named by the
+     * "detection.profile" property, or from detection.properties in the working directory.
+     * Missing files give the default config.
+     *
+     * @return the loaded config
+     */
+    public static DetectionConfig load() {
+        String profile = System.getProperty("detection.profile");
+        Path file;
+        if (System.getProperty("detection.config") == null && profile != null) {
+            file = profilePath(profile);
+            if (!Files.isRegularFile(file)) {
+                System.out.println("\nCould not find detection profile " + profile + ": " + file);
+                return new DetectionConfig();
+            }
+        } else {
+            file = Paths.get(System.getProperty("detection.config", DEFAULT_FILE));
+        }
+        if (!Files.isRegularFile(file)) {
+            return new DetectionConfig();
+        }
+        try {
+            return load(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("\nCould not load detection config " + file + ": " + e.getMessage());
+            return new DetectionConfig();
+        }
+    }
+
+    /**
+     * Gets the file of a named profile, in the folder given by the "detection.profiles" property.
+     *
+     * @param name the profile name, such as a lighting condition
+     * @return the path of the profile file
+     */
+    public static Path profilePath(String name) {
+        return profilesFolder().resolve(name + ".properties");
+    }
+
+    /**
+     * Gets the folder of the named profiles, given by the "detection.profiles" property.
+     *
+     * @return the profiles folder
+     */
+    public static Path profilesFolder() {
+        return Paths.get(System.getProperty("detection.profiles", DEFAULT_PROFILES));
+    }
+
+    /**
+     * Loads the config from a properties file. Missing keys keep their default value.
+     *
+     * @param file the properties file
+     * @return the loaded config
+     * @throws IOException if the file cannot be read
+     */
+    public static DetectionConfig load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * Creates a config from properties. Missing keys keep their default value.
+     *
+     * @param properties the properties
+     * @return the config
+     */
+    public static DetectionConfig fromProperties(Properties properties) {
+        DetectionConfig config = new DetectionConfig();
+        config.setCascade(properties.getProperty("cascade"));
+        config.setScaleFactor(Double.parseDouble(properties.getProperty("scaleFactor", String.valueOf(config.scaleFactor))));
+        config.setMinNeighbors(Integer.parseInt(properties.getProperty("minNeighbors", String.valueOf(config.minNeighbors))));
+        config.setMinSize(Integer.parseInt(properties.getProperty("minSize", String.valueOf(config.minSize))));
+        config.setMaxSize(Integer.parseInt(properties.getProperty("maxSize", String.valueOf(config.maxSize))));
+        config.setDetectionWidth(Integer.parseInt(properties.getProperty("detectionWidth", String.valueOf(config.detectionWidth))));
+        return config;
+    }
+
+    /**
+     * Gets the config as properties, with the same keys as the config file.
+     *
+     * @return the properties
+     */
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        if (cascade != null) {
+            properties.setProperty("cascade", cascade);
+        }
+        properties.setProperty("scaleFactor", String.valueOf(scaleFactor));
+        properties.setProperty("minNeighbors", String.valueOf(minNeighbors));
+        properties.setProperty("minSize", String.valueOf(minSize));
+        properties.setProperty("maxSize", String.valueOf(maxSize));
+        properties.setProperty("detectionWidth", String.valueOf(detectionWidth));
+        return properties;
+    }
+
+    /**
+     * Gets the path of the cascade XML file.
+     *
+     * @return the cascade path, or null for the default cascade
+     */
+    public String getCascade() {
+        return cascade;
+    }
+
+    /**
+     * Sets the path of the cascade XML file. Ignored when the "detector.cascades" ensemble is used.
+     *
+     * @param cascade the cascade path, or null or empty for the default cascade
+     * @return this config
+     */
+    public DetectionConfig setCascade(String cascade) {
+        this.cascade = cascade == null || cascade.isBlank() ? null : cascade.trim();
+        return this;
+    }
+
+    /**
+     * Gets the scale between two pyramid levels.
+     *
+     * @return the scale factor
+     */
+    public double getScaleFactor() {
+        return scaleFactor;
+    }
+
+    /**
+     * Sets the scale between two pyramid levels.
+     *
+     * @param scaleFactor the scale factor, greater than 1
+     * @return this config
+     */
+    public DetectionConfig setScaleFactor(double scaleFactor) {
+        if (scaleFactor <= 1) {
+            throw new IllegalArgumentException("Scale factor must be greater than 1: " + scaleFactor);
+        }
+        this.scaleFactor = scaleFactor;
+        return this;
+    }
+
+    /**
+     * Gets the number of hits needed to keep a detection.
+     *
+     * @return the minimum number of neighbors
+     */
+    public int getMinNeighbors() {
+        return minNeighbors;
+    }
+
+    /**
+     * Sets the number of hits needed to keep a detection.
+     *
+     * @param minNeighbors the minimum number of neighbors
+     * @return this config
+     */
+    public DetectionConfig setMinNeighbors(int minNeighbors) {
+        if (minNeighbors < 0) {
+            throw new IllegalArgumentException("Minimum neighbors must not be negative: " + minNeighbors);
+        }
+        this.minNeighbors = minNeighbors;
+        return this;
+    }
+
+    /**
+     * Gets the smallest sign side searched, in detection image pixels.
+     *
+     * @return the minimum size, or 0 for the cascade window
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Sets the smallest sign side searched, in detection image pixels.
+     *
+     * @param minSize the minimum size, or 0 for the cascade window
+     * @return this config
+     */
+    public DetectionConfig setMinSize(int minSize) {
+        this.minSize = Math.max(0, minSize);
+        return this;
+    }
+
+    /**
+     * Gets the largest sign side searched, in detection image pixels.
+     *
+     * @return the maximum size, or 0 for no limit
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the largest sign side searched, in detection image pixels.
+     *
+     * @param maxSize the maximum size, or 0 for no limit
+     * @return this config
+     */
+    public DetectionConfig setMaxSize(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        return this;
+    }
+
+    /**
+     * Gets the width above which frames are downscaled before detection.
+     *
+     * @return the detection width, or 0 to never downscale
+     */
+    public int getDetectionWidth() {
+        return detectionWidth;
+    }
+
+    /**
+     * Sets the width above which frames are downscaled before detection.
+     *
+     * @param detectionWidth the detection width, or 0 to never downscale
+     * @return this config
+     */
+    public DetectionConfig setDetectionWidth(int detectionWidth) {
+        this.detectionWidth = Math.max(0, detectionWidth);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "cascade=%s scaleFactor=%s minNeighbors=%d minSize=%d maxSize=%d detectionWidth=%d",
+                cascade, scaleFactor, minNeighbors, minSize, maxSize, detectionWidth);
+    }
+}
@@ -0,0 +1,276 @@
+package org.example;
+
+import org.opencv.core.Rect;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * DetectionLog class is responsible for streaming the detections of a video to a sidecar file,
+ * so downstream tools do not have to run the detection again.
+ * <p>
+ * Two formats are supported: JSON Lines (one object per frame with its index, timestamp and boxes, each box
+ * labelled with the cascade that found it) and a compact binary variant. Only frames with traffic signs are
+ * written. A sparse index file next to the log stores the timestamp, frame index and byte offset of a record
+ * every second of video, so DetectionLogReader can seek to a time range without scanning the whole log.
+ */
+public class DetectionLog {
+    static final int MAGIC = 0x53444554; // "SDET", start of a binary log
+    static final int VERSION = 1; // Version of the binary layout
+    static final long INDEX_INTERVAL_MILLIS = 1000; // Video time between two index entries
+    static final int INDEX_INTERVAL_RECORDS = 64; // Records between two index entries when the time is unknown
+
+    private final Path path; // Path of the log
+    private final boolean binary; // True for the binary format, false for JSON Lines
+    private final OutputStream output; // Stream of the log
+    private final DataOutputStream index; // Stream of the index
+    private long position = 0; // Offset of the next record
+    private long lastIndexedMillis = Long.MIN_VALUE; // Timestamp of the last index entry
+    private int recordsSinceIndex = 0; // Records written since the last index entry
+
+    /**
+     * Creates a detection log and its index, replacing existing files.
+     *
+     * @param path   path of the log
+     * @param binary true for the binary format, false for JSON Lines
+     * @throws IOException if a file cannot be created
+     */
+    public DetectionLog(Path path, boolean binary) throws IOException {
+        this.path = path;
+        this.binary = binary;
+        this.output = new BufferedOutputStream(Files.newOutputStream(path));
+        this.index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPathOf(path))));
+        if (binary) {
+            DataOutputStream header = new DataOutputStream(output);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            position = 8;
+        }
+    }
+
+    /**
+     * Checks if a detection log is requested by the "detections.format" property (jsonl or binary)
+     * or by the detections-only mode.
+     *
+     * @return true if the detections are written to a sidecar file
+     */
+    public static boolean isEnabled() {
+        return System.getProperty("detections.format") != null || isDetectionsOnly();
+    }
+
+    /**
+     * Checks if the detections-only mode is enabled by the "detections.only" property.
+     * In this mode the detections are written to the sidecar file and no result image or video is encoded.
+     *
+     * @return true if only the detections are written
+     */
+    public static boolean isDetectionsOnly() {
+        return Boolean.getBoolean("detections.only");
+    }
+
+    /**
+     * Creates the detection log of a result file when one is requested, named after the result file.
+     *
+     * @param resultPath path of the result image or video
+     * @return the detection log, or null if none is requested or it cannot be created
+     */
+    public static DetectionLog create(String resultPath) {
+        Path path = pathFor(resultPath);
+        if (path == null) {
+            return null;
+        }
+        try {
+            return new DetectionLog(path, isBinary());
+        } catch (IOException e) {
+            System.out.println("\nCould not create detection log: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gets the path of the detection log of a result file.
+     *
+     * @param resultPath path of the result image or video
+     * @return path of the detection log, or null if none is requested
+     */
+    public static Path pathFor(String resultPath) {
+        if (!isEnabled()) {
+            return null;
+        }
+        int i = resultPath.lastIndexOf('.');
+        String base = i > Math.max(resultPath.lastIndexOf('/'), resultPath.lastIndexOf('\\')) ? resultPath.substring(0, i) : resultPath;
+        return Paths.get(base + (isBinary() ? ".detections.bin" : ".detections.jsonl"));
+    }
+
+    /**
+     * Checks if the binary format is requested by the "detections.format" property.
+     *
+     * @return true for the binary format, false for JSON Lines
+     */
+    private static boolean isBinary() {
+        return "binary".equalsIgnoreCase(System.getProperty("detections.format", "jsonl"));
+    }
+
+    /**
+     * Gets the path of the index of a detection log.
+     *
+     * @param path path of the log
+     * @return path of its index
+     */
+    static Path indexPathOf(Path path) {
+        return path.resolveSibling(path.getFileName() + ".idx");
+    }
+
+    /**
+     * Gets the path of the log.
+     *
+     * @return the log path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Appends the detections of a frame. Frames without traffic signs are not written.
+     *
+     * @param frameIndex      position of the frame in the video
+     * @param timestampMillis position of the frame in the video, in milliseconds
+     * @param detections      the traffic signs detected in the frame
+     * @throws IOException if the record cannot be written
+     */
+    public void write(int frameIndex, long timestampMillis, List<Detection> detections) throws IOException {
+        if (detections.isEmpty()) {
+            return;
+        }
+        // Index the first record of every second of video
+        if (lastIndexedMillis == Long.MIN_VALUE || timestampMillis >= lastIndexedMillis + INDEX_INTERVAL_MILLIS
+                || recordsSinceIndex >= INDEX_INTERVAL_RECORDS) {
+            index.writeLong(timestampMillis);
+            index.writeInt(frameIndex);
+            index.writeLong(position);
+            lastIndexedMillis = timestampMillis;
+            recordsSinceIndex = 0;
+        }
+
+        byte[] record = binary ? toBinary(frameIndex, timestampMillis, detections)
+                : toJson(frameIndex, timestampMillis, detections).getBytes(StandardCharsets.UTF_8);
+        output.write(record);
+        position += record.length;
+        recordsSinceIndex++;
+    }
+
+    /**
+     * Formats the detections of a frame as a JSON line.
+     *
+     * @param frameIndex      position of the frame in the video
+     * @param timestampMillis position of the frame in the video, in milliseconds
+     * @param detections      the traffic signs detected in the frame
+     * @return the JSON line, ending with a new line
+     */
+    static String toJson(int frameIndex, long timestampMillis, List<Detection> detections) {
+        StringBuilder json = new StringBuilder(64 + 96 * detections.size());
+        json.append("{\"frame\":").append(frameIndex)
+                .append(",\"timestamp\":").append(timestampMillis)
+                .append(",\"detections\":");
+        appendJson(json, detections);
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Appends detections to a JSON text as an array of boxes, in the format of the JSON lines.
+     *
+     * @param json       the JSON text
+     * @param detections the traffic signs
+     */
+    static void appendJson(StringBuilder json, List<Detection> detections) {
+        json.append('[');
+        for (int i = 0; i < detections.size(); i++) {
+            Detection detection = detections.get(i);
+            Rect rect = detection.getRect();
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"cascade\":\"").append(escape(detection.getLabel()))
+                    .append("\",\"x\":").append(rect.x)
+                    .append(",\"y\":").append(rect.y)
+                    .append(",\"width\":").append(rect.width)
+                    .append(",\"height\":").append(rect.height);
+            if (detection.getTrackId() >= 0) {
+                json.append(",\"track\":").append(detection.getTrackId());
+            }
+            json.append('}');
+        }
+        json.append(']');
+    }
+
+    /**
+     * Escapes the quotes, backslashes and control characters of a JSON string.
+     *
+     * @param text the text
+     * @return the escaped text
+     */
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Encodes the detections of a frame in the binary format: frame index, timestamp, box count,
+     * then per box the cascade label, the rectangle and the track id.
+     *
+     * @param frameIndex      position of the frame in the video
+     * @param timestampMillis position of the frame in the video, in milliseconds
+     * @param detections      the traffic signs detected in the frame
+     * @return the binary record
+     * @throws IOException if a label is too long
+     */
+    private static byte[] toBinary(int frameIndex, long timestampMillis, List<Detection> detections)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 40 * detections.size());
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeInt(frameIndex);
+        record.writeLong(timestampMillis);
+        record.writeShort(detections.size());
+        for (Detection detection : detections) {
+            Rect rect = detection.getRect();
+            record.writeUTF(detection.getLabel());
+            record.writeInt(rect.x);
+            record.writeInt(rect.y);
+            record.writeInt(rect.width);
+            record.writeInt(rect.height);
+            record.writeInt(detection.getTrackId());
+        }
+        record.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Flushes and closes the log and its index.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    public void close() throws IOException {
+        try {
+            output.close();
+        } finally {
+            index.close();
+        }
+    }
+}
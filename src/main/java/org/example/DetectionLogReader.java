@@ -0,0 +1,211 @@
+package org.example;
+
+import org.opencv.core.Rect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DetectionLogReader class is responsible for reading the detections of a time range from a detection log.
+ * The sparse index is loaded first and the log is read from the last indexed record before the range,
+ * so only a small part of a long log is scanned. Both the JSON Lines and the binary format are supported;
+ * the format is recognised by the file extension.
+ */
+public class DetectionLogReader {
+    // Fields of the JSON lines written by DetectionLog
+    private static final Pattern FRAME = Pattern.compile("\"frame\":(-?\\d+),\"timestamp\":(-?\\d+)");
+    private static final Pattern BOX = Pattern.compile(
+            "\\{\"cascade\":\"((?:[^\"\\\\]|\\\\.)*)\",\"x\":(-?\\d+),\"y\":(-?\\d+),\"width\":(\\d+),\"height\":(\\d+)(?:,\"track\":(\\d+))?}");
+
+    private final Path path; // Path of the log
+    private final boolean binary; // True for the binary format, false for JSON Lines
+    private final long[] indexMillis; // Timestamps of the indexed records, in increasing order
+    private final long[] indexOffsets; // Offsets of the indexed records
+
+    /**
+     * Opens a detection log and loads its index.
+     *
+     * @param path path of the log
+     * @throws IOException if the index cannot be read
+     */
+    public DetectionLogReader(Path path) throws IOException {
+        this.path = path;
+        this.binary = path.getFileName().toString().endsWith(".bin");
+
+        Path indexPath = DetectionLog.indexPathOf(path);
+        int count = Files.exists(indexPath) ? (int) (Files.size(indexPath) / 20) : 0;
+        indexMillis = new long[count];
+        indexOffsets = new long[count];
+        if (count > 0) {
+            try (DataInputStream index = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                for (int i = 0; i < count; i++) {
+                    indexMillis[i] = index.readLong();
+                    index.readInt(); // Frame index, not needed to seek
+                    indexOffsets[i] = index.readLong();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads every record of the log.
+     *
+     * @return the records, in the order they were written
+     * @throws IOException if the log cannot be read
+     */
+    public List<DetectionRecord> readAll() throws IOException {
+        return read(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the records of a time range.
+     *
+     * @param fromMillis start of the range in milliseconds, inclusive
+     * @param toMillis   end of the range in milliseconds, inclusive
+     * @return the records of the range, in the order they were written
+     * @throws IOException if the log cannot be read
+     */
+    public List<DetectionRecord> read(long fromMillis, long toMillis) throws IOException {
+        List<DetectionRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long start = seekOffset(fromMillis);
+            channel.position(start);
+            InputStream input = new BufferedInputStream(Channels.newInputStream(channel));
+            if (binary) {
+                readBinary(new DataInputStream(input), start, fromMillis, toMillis, records);
+            } else {
+                readJson(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)), fromMillis, toMillis, records);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Finds the offset of the last indexed record before a timestamp. Records with the same timestamp can span
+     * several index entries, as when the timestamps are unknown, so an entry at the timestamp itself may come
+     * after earlier records of that timestamp.
+     *
+     * @param millis the timestamp
+     * @return the offset to start reading from
+     */
+    private long seekOffset(long millis) {
+        int low = 0;
+        int high = indexMillis.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexMillis[middle] < millis) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (found >= 0) {
+            return indexOffsets[found];
+        }
+        // Before the first indexed record: start after the header of a binary log
+        return binary ? 8 : 0;
+    }
+
+    /**
+     * Reads binary records until the end of the range.
+     */
+    private static void readBinary(DataInputStream input, long start, long fromMillis, long toMillis,
+                                   List<DetectionRecord> records) throws IOException {
+        if (start == 0) {
+            input.skipNBytes(8);
+        }
+        try {
+            while (true) {
+                int frameIndex = input.readInt();
+                long timestampMillis = input.readLong();
+                int count = input.readShort();
+                List<Detection> detections = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String label = input.readUTF();
+                    Rect rect = new Rect(input.readInt(), input.readInt(), input.readInt(), input.readInt());
+                    detections.add(new Detection(label, rect, input.readInt()));
+                }
+                if (timestampMillis > toMillis) {
+                    return;
+                }
+                if (timestampMillis >= fromMillis) {
+                    records.add(new DetectionRecord(frameIndex, timestampMillis, detections));
+                }
+            }
+        } catch (EOFException e) {
+            // End of the log
+        }
+    }
+
+    /**
+     * Reads JSON lines until the end of the range.
+     */
+    private static void readJson(BufferedReader input, long fromMillis, long toMillis, List<DetectionRecord> records)
+            throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            Matcher frame = FRAME.matcher(line);
+            if (!frame.find()) {
+                continue;
+            }
+            long timestampMillis = Long.parseLong(frame.group(2));
+            if (timestampMillis > toMillis) {
+                return;
+            }
+            if (timestampMillis < fromMillis) {
+                continue;
+            }
+            List<Detection> detections = new ArrayList<>();
+            Matcher box = BOX.matcher(line);
+            while (box.find()) {
+                Rect rect = new Rect(Integer.parseInt(box.group(2)), Integer.parseInt(box.group(3)),
+                        Integer.parseInt(box.group(4)), Integer.parseInt(box.group(5)));
+                int trackId = box.group(6) != null ? Integer.parseInt(box.group(6)) : -1;
+                detections.add(new Detection(unescape(box.group(1)), rect, trackId));
+            }
+            records.add(new DetectionRecord(Integer.parseInt(frame.group(1)), timestampMillis, detections));
+        }
+    }
+
+    /**
+     * Reverts the escaping of a JSON string written by DetectionLog.
+     *
+     * @param text the escaped text
+     * @return the text
+     */
+    private static String unescape(String text) {
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                if (next == 'u' && i + 4 < text.length()) {
+                    unescaped.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    i += 4;
+                } else {
+                    unescaped.append(next);
+                }
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
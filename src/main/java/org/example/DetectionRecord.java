@@ -0,0 +1,53 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * DetectionRecord class is responsible for holding the traffic signs detected in one frame,
+ * as stored in a detection log.
+ */
+public class DetectionRecord {
+    private final int frameIndex; // Position of the frame in the video
+    private final long timestampMillis; // Position of the frame in the video, in milliseconds
+    private final List<Detection> detections; // Traffic signs detected in the frame, labelled with their cascade
+
+    /**
+     * Creates a detection record.
+     *
+     * @param frameIndex      position of the frame in the video
+     * @param timestampMillis position of the frame in the video, in milliseconds
+     * @param detections      traffic signs detected in the frame
+     */
+    public DetectionRecord(int frameIndex, long timestampMillis, List<Detection> detections) {
+        this.frameIndex = frameIndex;
+        this.timestampMillis = timestampMillis;
+        this.detections = detections;
+    }
+
+    /**
+     * Gets the position of the frame in the video.
+     *
+     * @return the frame index
+     */
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * Gets the position of the frame in the video, in milliseconds.
+     *
+     * @return the timestamp in milliseconds
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Gets the traffic signs detected in the frame.
+     *
+     * @return the detections
+     */
+    public List<Detection> getDetections() {
+        return detections;
+    }
+}
@@ -0,0 +1,360 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * DetectionService class is responsible for serving traffic sign detection over HTTP to other processes of the
+ * same host, without the graphical interface. It listens on "service.host" (127.0.0.1 by default) and the given
+ * port, and handles every request on its own virtual thread when the JVM has them.
+ * <p>
+ * POST /detect takes an encoded image (JPEG, PNG, ...) as the body, or raw BGR pixels with the content type
+ * "application/x-raw-bgr" and the "width" and "height" query parameters, and answers the detected traffic signs
+ * as JSON, in the format of the boxes of DetectionLog. The request must be answered before its deadline, given in
+ * milliseconds by the "X-Deadline-Ms" header or the "deadline" query parameter ("service.deadlineMs", 2000 by
+ * default). GET /stats answers the counters of the DetectionBatcher.
+ * <p>
+ * Detection runs on the workers of a DetectionBatcher. A request that cannot be queued is answered at once with
+ * 429, and a request that would miss its deadline with 503, both with a Retry-After header. Admission is checked
+ * before the body is read, and at most "service.handlers" bodies (twice the workers and queue of the batcher by
+ * default) are read and decoded at the same time, so an overload costs neither memory nor decoding time.
+ */
+public class DetectionService implements AutoCloseable {
+    private static final String RAW_CONTENT_TYPE = "application/x-raw-bgr"; // Body of raw BGR pixels
+
+    private final HttpServer server;
+    private final ExecutorService handlers; // Runs the HTTP exchanges
+    private final DetectionBatcher batcher; // Runs the detections
+    private final long defaultDeadlineMillis; // Deadline of the requests without one
+    private final int maxBodyBytes; // Largest accepted body
+    private final Semaphore bodies; // Bodies that may be read and decoded at the same time
+
+    /**
+     * Creates a service on the given port. It is started by start.
+     *
+     * @param port TCP port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public DetectionService(int port) throws IOException {
+        this.defaultDeadlineMillis = Math.max(1, Long.getLong("service.deadlineMs", 2000));
+        this.maxBodyBytes = (int) Math.min(Integer.MAX_VALUE - 8, Long.getLong("service.maxBodyMB", 32) << 20);
+        this.server = HttpServer.create(new InetSocketAddress(System.getProperty("service.host", "127.0.0.1"), port), 0);
+        this.batcher = new DetectionBatcher(TrafficSignDetector::createDetector);
+        int handlerCount = Math.max(1, Integer.getInteger("service.handlers", 2 * (batcher.size() + batcher.queueCapacity())));
+        this.bodies = new Semaphore(handlerCount);
+        this.handlers = newHandlerExecutor(handlerCount);
+        server.setExecutor(handlers);
+        server.createContext("/detect", this::handleDetect);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Creates the executor of the HTTP exchanges: a virtual thread per exchange when the JVM has them
+     * (Java 21 and later), otherwise a fixed pool of daemon threads. The exchanges waiting for a pool thread
+     * have not read their body yet, and a refused request is answered without waiting.
+     *
+     * @param threads number of threads of the pool
+     * @return the executor
+     */
+    private static ExecutorService newHandlerExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "service-handler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+        System.out.println("Detection service listening on http://" + server.getAddress().getHostString() + ":"
+                + getPort() + "/detect with " + batcher.size() + " workers");
+    }
+
+    /**
+     * Gets the port the service listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles POST /detect: decodes the image, waits for its detection until the deadline and answers the boxes.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the answer cannot be sent
+     */
+    private void handleDetect(HttpExchange exchange) throws IOException {
+        long startNanos = System.nanoTime();
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Use POST with an image as the body");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            long deadlineMillis;
+            try {
+                deadlineMillis = deadlineMillisOf(exchange, query);
+            } catch (NumberFormatException e) {
+                sendError(exchange, 400, "Invalid deadline");
+                return;
+            }
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+
+            // Refuse before reading and decoding the body when the request would be refused anyway
+            DetectionBatcher.Admission precheck = batcher.wouldAdmit(deadlineNanos);
+            if (precheck != DetectionBatcher.Admission.ACCEPTED) {
+                refuse(exchange, precheck);
+                return;
+            }
+            if (!bodies.tryAcquire()) {
+                refuse(exchange, DetectionBatcher.Admission.QUEUE_FULL);
+                return;
+            }
+            Mat image;
+            try {
+                byte[] body;
+                try (InputStream input = exchange.getRequestBody()) {
+                    body = input.readNBytes(maxBodyBytes + 1);
+                }
+                if (body.length > maxBodyBytes) {
+                    sendError(exchange, 413, "Image larger than " + maxBodyBytes + " bytes");
+                    return;
+                }
+                image = decode(body, exchange.getRequestHeaders().getFirst("Content-Type"), query);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            } finally {
+                bodies.release();
+            }
+
+            // The image belongs to the batcher once admitted
+            int width = image.cols();
+            int height = image.rows();
+            DetectionBatcher.Request request = new DetectionBatcher.Request(image, deadlineNanos);
+            DetectionBatcher.Admission admission = batcher.submit(request);
+            if (admission != DetectionBatcher.Admission.ACCEPTED) {
+                image.release();
+                refuse(exchange, admission);
+                return;
+            }
+
+            List<Detection> detections;
+            try {
+                detections = request.getResult().get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | CancellationException e) {
+                // Drop the request if no worker took it yet
+                request.getResult().cancel(false);
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Deadline of " + deadlineMillis + " ms exceeded");
+                return;
+            } catch (ExecutionException e) {
+                boolean late = e.getCause() instanceof TimeoutException;
+                sendError(exchange, late ? 503 : 500, e.getCause().getMessage());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                request.getResult().cancel(false);
+                sendError(exchange, 503, "Service stopping");
+                return;
+            }
+
+            StringBuilder json = new StringBuilder(128 + 96 * detections.size());
+            json.append("{\"width\":").append(width)
+                    .append(",\"height\":").append(height)
+                    .append(",\"detections\":");
+            DetectionLog.appendJson(json, detections);
+            json.append(String.format(Locale.ROOT, ",\"queueMillis\":%.2f,\"detectMillis\":%.2f,\"totalMillis\":%.2f}",
+                    request.getQueueNanos() / 1e6, request.getDetectNanos() / 1e6, (System.nanoTime() - startNanos) / 1e6));
+            sendJson(exchange, 200, json.toString());
+        }
+    }
+
+    /**
+     * Handles GET /stats: answers the counters of the batcher.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the answer cannot be sent
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "Use GET");
+                return;
+            }
+            sendJson(exchange, 200, batcher.statsJson());
+        }
+    }
+
+    /**
+     * Gets the deadline of a request, from the "X-Deadline-Ms" header, the "deadline" query parameter or the default.
+     *
+     * @param exchange the HTTP exchange
+     * @param query    the query parameters
+     * @return the deadline in milliseconds from the arrival of the request
+     * @throws NumberFormatException if the deadline is not a positive number
+     */
+    private long deadlineMillisOf(HttpExchange exchange, Map<String, String> query) {
+        String value = exchange.getRequestHeaders().getFirst("X-Deadline-Ms");
+        if (value == null) {
+            value = query.get("deadline");
+        }
+        if (value == null) {
+            return defaultDeadlineMillis;
+        }
+        long millis = Long.parseLong(value.trim());
+        if (millis <= 0) {
+            throw new NumberFormatException("Deadline must be positive: " + millis);
+        }
+        return millis;
+    }
+
+    /**
+     * Decodes the body of a request into a BGR image.
+     *
+     * @param body        the body
+     * @param contentType the content type of the body, or null
+     * @param query       the query parameters, giving the size of raw pixels
+     * @return Mat object representing the image
+     * @throws IllegalArgumentException if the body is not a valid image
+     */
+    private static Mat decode(byte[] body, String contentType, Map<String, String> query) {
+        if (body.length == 0) {
+            throw new IllegalArgumentException("Empty body");
+        }
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(RAW_CONTENT_TYPE)) {
+            int width;
+            int height;
+            try {
+                width = Integer.parseInt(query.getOrDefault("width", ""));
+                height = Integer.parseInt(query.getOrDefault("height", ""));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Raw pixels need the width and height query parameters");
+            }
+            if (width <= 0 || height <= 0 || (long) width * height * 3 != body.length) {
+                throw new IllegalArgumentException("Expected " + width + "x" + height + "x3 bytes of BGR pixels, got "
+                        + body.length);
+            }
+            Mat image = new Mat(height, width, CvType.CV_8UC3);
+            image.put(0, 0, body);
+            return image;
+        }
+
+        MatOfByte encoded = new MatOfByte(body);
+        Mat image = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR);
+        encoded.release();
+        if (image.empty()) {
+            image.release();
+            throw new IllegalArgumentException("Body is not a supported image");
+        }
+        return image;
+    }
+
+    /**
+     * Answers a request refused by the batcher: 429 when the queue is full, 503 otherwise.
+     *
+     * @param exchange  the HTTP exchange
+     * @param admission the reason of the refusal
+     * @throws IOException if the answer cannot be sent
+     */
+    private void refuse(HttpExchange exchange, DetectionBatcher.Admission admission) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        switch (admission) {
+            case QUEUE_FULL -> sendError(exchange, 429, "Too many requests waiting");
+            case DEADLINE_UNREACHABLE -> sendError(exchange, 503, "Deadline cannot be met with the current load");
+            default -> sendError(exchange, 503, "No detector available");
+        }
+    }
+
+    /**
+     * Parses the parameters of a query string.
+     *
+     * @param rawQuery the raw query string, or null
+     * @return the parameters by name
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    /**
+     * Answers an error as a JSON object with a message.
+     *
+     * @param exchange the HTTP exchange
+     * @param status   the HTTP status
+     * @param message  the error message
+     * @throws IOException if the answer cannot be sent
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":\"" + DetectionLog.escape(String.valueOf(message)) + "\"}");
+    }
+
+    /**
+     * Answers a JSON text.
+     *
+     * @param exchange the HTTP exchange
+     * @param status   the HTTP status
+     * @param json     the JSON text
+     * @throws IOException if the answer cannot be sent
+     */
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Stops answering requests, then stops the workers.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        batcher.close();
+        handlers.shutdownNow();
+    }
+}
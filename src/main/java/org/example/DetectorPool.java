@@ -0,0 +1,185 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * DetectorPool class is responsible for running traffic sign detection on several cores.
+ * Each worker thread owns its own FrameDetector, created by the given factory, and takes
+ * frames from a shared queue as soon as it is idle. Results are returned as futures, so
+ * callers keep the frame order by waiting on the futures in submission order.
+ */
+public class DetectorPool implements AutoCloseable {
+    private final BlockingQueue<Job> jobs = new LinkedBlockingQueue<>(); // Frames waiting for an idle worker
+    private final Thread[] workers; // Worker threads, each owning a detector
+    private final AtomicInteger liveWorkers; // Workers whose detector was created successfully
+
+    /**
+     * A frame waiting for detection and the future that receives its result.
+     */
+    private static class Job {
+        private final Mat image;
+        private final PipelineMetrics metrics; // Receives the detection time, or null
+        private final RegionMask mask = RegionMask.current(); // Region mask of the submitting thread, or null
+        private final CompletableFuture<List<Detection>> result = new CompletableFuture<>();
+
+        private Job(Mat image, PipelineMetrics metrics) {
+            this.image = image;
+            this.metrics = metrics;
+        }
+    }
+
+    /**
+     * Creates a pool with the default number of workers.
+     *
+     * @param detectorFactory factory that creates one detector per worker
+     */
+    public DetectorPool(Supplier<FrameDetector> detectorFactory) {
+        this(defaultSize(), detectorFactory);
+    }
+
+    /**
+     * Creates a pool with the given number of workers.
+     *
+     * @param size            number of worker threads
+     * @param detectorFactory factory that creates one detector per worker
+     */
+    public DetectorPool(int size, Supplier<FrameDetector> detectorFactory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Detector pool size must be positive: " + size);
+        }
+        workers = new Thread[size];
+        liveWorkers = new AtomicInteger(size);
+        for (int i = 0; i < size; i++) {
+            workers[i] = new Thread(() -> work(detectorFactory), "detector-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Gets the default pool size, read from the "detector.threads" system property
+     * and falling back to the number of available processors.
+     *
+     * @return the default number of workers
+     */
+    public static int defaultSize() {
+        return Math.max(1, Integer.getInteger("detector.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Gets the number of workers in the pool.
+     *
+     * @return the number of workers
+     */
+    public int size() {
+        return workers.length;
+    }
+
+    /**
+     * Submits a frame for detection. The frame must not be modified until the future completes.
+     *
+     * @param image Mat object representing the frame
+     * @return future that completes with the detected traffic signs
+     */
+    public Future<List<Detection>> submit(Mat image) {
+        return submit(image, null);
+    }
+
+    /**
+     * Submits a frame for detection and records the preprocessing and detection times of the frame.
+     * The frame must not be modified until the future completes.
+     *
+     * @param image   Mat object representing the frame
+     * @param metrics metrics of the run receiving the times, or null
+     * @return future that completes with the detected traffic signs
+     */
+    public Future<List<Detection>> submit(Mat image, PipelineMetrics metrics) {
+        Job job = new Job(image, metrics);
+        jobs.add(job);
+        // Nobody would take the job if every worker failed to create its detector
+        if (liveWorkers.get() == 0) {
+            failPendingJobs(new IllegalStateException("No detector worker is available"));
+        }
+        return job.result;
+    }
+
+    /**
+     * Gets the number of frames waiting for an idle worker.
+     *
+     * @return the number of queued frames
+     */
+    public int pendingJobs() {
+        return jobs.size();
+    }
+
+    /**
+     * Worker loop: creates the detector of this worker and detects traffic signs in the queued frames.
+     *
+     * @param detectorFactory factory that creates the detector
+     */
+    private void work(Supplier<FrameDetector> detectorFactory) {
+        FrameDetector detector;
+        try {
+            detector = detectorFactory.get();
+        } catch (RuntimeException e) {
+            System.out.println("\nCould not create detector: " + e.getMessage());
+            if (liveWorkers.decrementAndGet() == 0) {
+                failPendingJobs(e);
+            }
+            return;
+        }
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Job job = jobs.take();
+                // Forget the preprocessing time of frames detected without metrics
+                PipelineMetrics.takePreprocessNanos();
+                long startNanos = System.nanoTime();
+                // The frame is searched with the mask of the input it comes from
+                RegionMask.setCurrent(job.mask);
+                try {
+                    List<Detection> detections = detector.detect(job.image);
+                    if (job.metrics != null) {
+                        job.metrics.recordDetection(startNanos);
+                    }
+                    job.result.complete(detections);
+                } catch (RuntimeException e) {
+                    job.result.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fails the queued jobs, so no caller waits forever for a result.
+     *
+     * @param cause the reason of the failure
+     */
+    private void failPendingJobs(Throwable cause) {
+        Job job;
+        while ((job = jobs.poll()) != null) {
+            job.result.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Stops the workers and fails the frames still waiting for detection.
+     */
+    @Override
+    public void close() {
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        failPendingJobs(new IllegalStateException("Detector pool closed"));
+    }
+}
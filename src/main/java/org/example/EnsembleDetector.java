@@ -0,0 +1,196 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+import org.opencv.objdetect.Objdetect;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EnsembleDetector class is responsible for detecting several classes of traffic signs with one cascade per class.
+ * The grayscale image and the scaled image pyramid are built once per frame and shared by all the cascades.
+ * Each cascade then scans every pyramid level at its native window size only, and the raw hits of all the
+ * levels are grouped the same way detectMultiScale groups them. Adding a class therefore adds the cascade
+ * evaluation, but not another grayscale conversion and pyramid. The scale factor, minimum neighbors and
+ * size limits come from a DetectionConfig.
+ */
+public class EnsembleDetector implements FrameDetector {
+    // Cascades shipped in the cascades folder, as label=path entries
+    public static final String DEFAULT_CASCADES = "speed_limit=cascades/Speed Limit Signs/HAAR/Speedlimit_HAAR_ 17Stages.xml,"
+            + "stop=cascades/Stop Signs/StopSign_HAAR/Stopsign_HAAR_19Stages.xml,"
+            + "yield=cascades/Yield Signs/Yield Sign LBP/yieldsign12Stages.xml";
+    private static final double GROUP_EPS = 0.2; // Relative difference of the rectangles grouped together
+
+    private final String[] labels; // Class label of each cascade
+    private final CascadeClassifier[] cascades; // Cascades owned by this detector
+    private final Size[] windowSizes; // Native window size of each cascade
+    private final double minWindowSide; // Side of the smallest cascade window
+    private final DetectionConfig config; // Scale factor, minimum neighbors and size limits
+    private final Mat gray = new Mat(); // Reused grayscale image
+    private final List<Mat> pyramid = new ArrayList<>(); // Reused pyramid levels, level 0 excluded
+
+    /**
+     * Creates an ensemble with the default detection parameters by loading one cascade per class.
+     *
+     * @param cascadePaths map from class label to cascade XML path, in drawing order
+     */
+    public EnsembleDetector(Map<String, String> cascadePaths) {
+        this(cascadePaths, new DetectionConfig());
+    }
+
+    /**
+     * Creates an ensemble by loading one cascade per class.
+     *
+     * @param cascadePaths map from class label to cascade XML path, in drawing order
+     * @param config       scale factor, minimum neighbors and size limits
+     */
+    public EnsembleDetector(Map<String, String> cascadePaths, DetectionConfig config) {
+        if (cascadePaths.isEmpty()) {
+            throw new IllegalArgumentException("No cascade configured");
+        }
+        labels = new String[cascadePaths.size()];
+        cascades = new CascadeClassifier[cascadePaths.size()];
+        windowSizes = new Size[cascadePaths.size()];
+        double minSide = Double.MAX_VALUE;
+        int i = 0;
+        for (Map.Entry<String, String> entry : cascadePaths.entrySet()) {
+            CascadeClassifier cascade = new CascadeClassifier(entry.getValue());
+            if (cascade.empty()) {
+                throw new IllegalArgumentException("Could not load cascade: " + entry.getValue());
+            }
+            labels[i] = entry.getKey();
+            cascades[i] = cascade;
+            windowSizes[i] = cascade.getOriginalWindowSize();
+            minSide = Math.min(minSide, Math.min(windowSizes[i].width, windowSizes[i].height));
+            i++;
+        }
+        minWindowSide = minSide;
+        this.config = config;
+    }
+
+    /**
+     * Parses a list of cascades written as comma separated label=path entries.
+     * An entry without a label uses the cascade file name as label, and "all" selects the shipped cascades.
+     *
+     * @param spec the list of cascades
+     * @return map from class label to cascade XML path
+     */
+    public static Map<String, String> parseCascades(String spec) {
+        if (spec.trim().equalsIgnoreCase("all")) {
+            spec = DEFAULT_CASCADES;
+        }
+        Map<String, String> cascadePaths = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int i = entry.indexOf('=');
+            if (i > 0) {
+                cascadePaths.put(entry.substring(0, i).trim(), entry.substring(i + 1).trim());
+            } else {
+                cascadePaths.put(CascadeDetector.labelOf(entry), entry);
+            }
+        }
+        return cascadePaths;
+    }
+
+    @Override
+    public List<Detection> detect(Mat image) {
+        // Grayscale conversion, shared by all cascades
+        long startNanos = System.nanoTime();
+        Mat source = image;
+        if (image.channels() > 1) {
+            Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+            source = gray;
+        }
+
+        // Scaled pyramid, shared by all cascades
+        List<Double> scales = buildPyramid(source);
+        PipelineMetrics.addPreprocessNanos(startNanos);
+
+        List<Detection> detections = new ArrayList<>();
+        MatOfRect levelHits = new MatOfRect();
+        for (int c = 0; c < cascades.length; c++) {
+            List<Rect> hits = new ArrayList<>();
+            for (int level = 0; level < scales.size(); level++) {
+                // Skip the levels where the window does not match the configured sign sizes
+                double scale = scales.get(level);
+                double side = Math.max(windowSizes[c].width, windowSizes[c].height) * scale;
+                if (side < config.getMinSize() || (config.getMaxSize() > 0 && side > config.getMaxSize())) {
+                    continue;
+                }
+                Mat levelImage = level == 0 ? source : pyramid.get(level - 1);
+                // minSize == maxSize == window: the cascade scans this level at one scale only
+                cascades[c].detectMultiScale(levelImage, levelHits, config.getScaleFactor(), 0, 0, windowSizes[c], windowSizes[c]);
+                for (Rect rect : levelHits.toArray()) {
+                    hits.add(new Rect((int) Math.round(rect.x * scale), (int) Math.round(rect.y * scale),
+                            (int) Math.round(rect.width * scale), (int) Math.round(rect.height * scale)));
+                }
+            }
+            for (Rect rect : groupHits(hits)) {
+                detections.add(new Detection(labels[c], rect));
+            }
+        }
+        levelHits.release();
+        return detections;
+    }
+
+    /**
+     * Builds the pyramid levels of an image until they are smaller than the smallest cascade window,
+     * or until the windows of all cascades are larger than the maximum size.
+     *
+     * @param source the grayscale image, used as level 0
+     * @return the scale of each level relative to the source image
+     */
+    private List<Double> buildPyramid(Mat source) {
+        List<Double> scales = new ArrayList<>();
+        scales.add(1.0);
+        double scale = config.getScaleFactor();
+        while (true) {
+            int width = (int) Math.round(source.cols() / scale);
+            int height = (int) Math.round(source.rows() / scale);
+            // Stop when the level is smaller than a window or its windows are larger than the largest sign
+            if (width < minWindowSide || height < minWindowSide || (config.getMaxSize() > 0 && minWindowSide * scale > config.getMaxSize())) {
+                break;
+            }
+            int level = scales.size() - 1;
+            if (level == pyramid.size()) {
+                pyramid.add(new Mat());
+            }
+            // Reuses the level Mat when the frame size does not change
+            Imgproc.resize(source, pyramid.get(level), new Size(width, height), 0, 0, Imgproc.INTER_LINEAR);
+            scales.add(scale);
+            scale *= config.getScaleFactor();
+        }
+        return scales;
+    }
+
+    /**
+     * Groups the raw hits of all pyramid levels into detections, like detectMultiScale does with minNeighbors.
+     *
+     * @param hits the raw hits in source image coordinates
+     * @return the grouped rectangles
+     */
+    private Rect[] groupHits(List<Rect> hits) {
+        if (hits.isEmpty()) {
+            return new Rect[0];
+        }
+        MatOfRect rects = new MatOfRect();
+        rects.fromList(hits);
+        MatOfInt weights = new MatOfInt();
+        Objdetect.groupRectangles(rects, weights, config.getMinNeighbors(), GROUP_EPS);
+        Rect[] grouped = rects.toArray();
+        rects.release();
+        weights.release();
+        return grouped;
+    }
+}
@@ -0,0 +1,43 @@
+package org.example;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * FrameCanvas class is responsible for painting the latest video frame, centered.
+ * Frames can be given from any thread; Swing double-buffers the component and merges the repaints
+ * requested faster than the screen refreshes, so only the latest frame is drawn.
+ */
+public class FrameCanvas extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    private volatile BufferedImage image; // Frame painted on the next repaint
+
+    /**
+     * Creates a canvas of the display size.
+     */
+    public FrameCanvas() {
+        setDoubleBuffered(true);
+        setPreferredSize(new Dimension(ImageProcessor.DISPLAY_WIDTH, ImageProcessor.DISPLAY_HEIGHT));
+    }
+
+    /**
+     * Shows a frame. Can be called from any thread.
+     *
+     * @param image the frame, which must not be modified until the next frame is shown
+     */
+    public void show(BufferedImage image) {
+        this.image = image;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        BufferedImage current = image;
+        if (current != null) {
+            g.drawImage(current, (getWidth() - current.getWidth()) / 2, (getHeight() - current.getHeight()) / 2, null);
+        }
+    }
+}
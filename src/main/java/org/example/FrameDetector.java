@@ -0,0 +1,20 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+
+/**
+ * FrameDetector interface is implemented by the classes that find traffic signs in a frame.
+ * Implementations are not required to be thread-safe; every thread must use its own instance.
+ */
+public interface FrameDetector {
+
+    /**
+     * Detects traffic signs in a frame without modifying it.
+     *
+     * @param image Mat object representing the frame
+     * @return the detected traffic signs
+     */
+    List<Detection> detect(Mat image);
+}
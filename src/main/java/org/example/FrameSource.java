@@ -0,0 +1,57 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * FrameSource interface is implemented by the live sources of frames read by the streaming mode.
+ */
+public interface FrameSource extends AutoCloseable {
+
+    /**
+     * Reads the next frame, waiting until it is available.
+     *
+     * @param frame Mat object receiving the BGR pixels of the frame
+     * @return true if a frame was read, false at the end of the stream
+     * @throws IOException if the source cannot be read
+     */
+    boolean read(Mat frame) throws IOException;
+
+    /**
+     * Closes the source.
+     *
+     * @throws IOException if the source cannot be closed
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Opens a source: "-" reads raw BGR frames from the standard input, a number opens that camera device, and
+     * any other value is a named pipe or file of raw BGR frames when a frame size is given, or else a video file
+     * or stream URL opened by VideoCapture.
+     *
+     * @param source the source
+     * @param width  width of the raw frames, or 0 if the source is not raw
+     * @param height height of the raw frames, or 0 if the source is not raw
+     * @return the opened source
+     * @throws IOException if the source cannot be opened
+     */
+    static FrameSource open(String source, int width, int height) throws IOException {
+        boolean raw = width > 0 && height > 0;
+        if (source.equals("-")) {
+            if (!raw) {
+                throw new IOException("The frame size of the standard input must be given");
+            }
+            return new RawFrameSource(System.in, width, height);
+        }
+        if (source.matches("\\d+")) {
+            return CaptureFrameSource.ofDevice(Integer.parseInt(source));
+        }
+        if (raw) {
+            return new RawFrameSource(new FileInputStream(source), width, height);
+        }
+        return CaptureFrameSource.ofPath(source);
+    }
+}
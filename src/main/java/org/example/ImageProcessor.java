@@ -12,12 +12,15 @@ import java.awt.image.BufferedImage;
  * ImageProcessor class is responsible for processing images.
  */
 public class ImageProcessor {
+    static final int DISPLAY_WIDTH = 1100; // Maximum width of the displayed images
+    static final int DISPLAY_HEIGHT = 800; // Maximum height of the displayed images
     private static JLabel imageLabel; // JLabel to display the image
     private static final JPanel contentPanel = new JPanel(); // JPanel to hold the image
     private static JLabel resultImageLabel = null; // JLabel to display the result image
 
     /**
-     * Converts a Mat object to a BufferedImage object.
+     * Converts a Mat object to a new BufferedImage object.
+     * Frames converted repeatedly, as during playback, should use a BufferedImageConverter instead.
      *
      * @param mat Mat object to be converted
      * @return BufferedImage object
@@ -27,12 +30,16 @@ public class ImageProcessor {
         if (mat.channels() > 1) {
             type = BufferedImage.TYPE_3BYTE_BGR;
         }
-        int bufferSize = mat.channels() * mat.cols() * mat.rows();
-        byte[] b = new byte[bufferSize];
-        mat.get(0, 0, b);
         BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
+        // Copy the pixels straight into the raster of the image
         final byte[] targetPixels = ((java.awt.image.DataBufferByte) image.getRaster().getDataBuffer()).getData();
-        System.arraycopy(b, 0, targetPixels, 0, b.length);
+        if (mat.isContinuous()) {
+            mat.get(0, 0, targetPixels);
+        } else {
+            try (MatScope scope = new MatScope()) {
+                scope.track(mat.clone()).get(0, 0, targetPixels);
+            }
+        }
         return image;
     }
 
@@ -43,8 +50,8 @@ public class ImageProcessor {
      * @return BufferedImage object
      */
     public static BufferedImage matToResizedBufferedImage(Mat mat) {
-        int maxWidth = 1100;
-        int maxHeight = 800;
+        int maxWidth = DISPLAY_WIDTH;
+        int maxHeight = DISPLAY_HEIGHT;
 
         int originalWidth = mat.width();
         int originalHeight = mat.height();
@@ -54,11 +61,14 @@ public class ImageProcessor {
         int newWidth = (int) (originalWidth * ratio);
         int newHeight = (int) (originalHeight * ratio);
 
-        Mat resizedMat = new Mat();
-        Size newSize = new Size(newWidth, newHeight);
-        Imgproc.resize(mat, resizedMat, newSize, 0, 0, Imgproc.INTER_AREA);
+        // Free the native memory now instead of waiting for the finalizer
+        try (MatScope scope = new MatScope()) {
+            Mat resizedMat = scope.newMat();
+            Size newSize = new Size(newWidth, newHeight);
+            Imgproc.resize(mat, resizedMat, newSize, 0, 0, Imgproc.INTER_AREA);
 
-        return matToBufferedImage(resizedMat);
+            return matToBufferedImage(resizedMat);
+        }
     }
 
     /**
@@ -1,8 +1,12 @@
 package org.example;
 
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.io.File;
 
 /**
  * InterfaceGUI class is responsible for creating the graphical user interface.
@@ -20,9 +24,9 @@ public class InterfaceGUI {
         JFrame frame = createMainFrame();
 
         // Create buttons
-        JButton button1 = createButton("Select generic image", e -> FileProcessor.handleImageSelection(frame, IMAGES_BASE_DIR));
-        JButton button2 = createButton("Select generic video", e -> FileProcessor.handleVideoSelection(frame, VIDEOS_BASE_DIR));
-        JButton button3 = createButton("Select phone video", e -> FileProcessor.handleVideoSelection(frame, PHONE_VIDEOS_BASE_DIR));
+        JButton button1 = createButton("Select generic image", e -> handleImageSelection(frame, IMAGES_BASE_DIR));
+        JButton button2 = createButton("Select generic video", e -> handleVideoSelection(frame, VIDEOS_BASE_DIR));
+        JButton button3 = createButton("Select phone video", e -> handleVideoSelection(frame, PHONE_VIDEOS_BASE_DIR));
 
         // Create panel
         JPanel panel = createPanel(button1, button2, button3);
@@ -72,4 +76,105 @@ public class InterfaceGUI {
         }
         return panel;
     }
+
+    /**
+     * Handles the selection of an image file.
+     *
+     * @param frame     the frame to display the image
+     * @param imagesDir the directory containing the images
+     */
+    private static void handleImageSelection(JFrame frame, String imagesDir) {
+        // Create a file chooser
+        JFileChooser fileChooser = new JFileChooser(new File(imagesDir));
+        int returnValue = fileChooser.showOpenDialog(null);
+        // Check if the user selects a file
+        if (returnValue == JFileChooser.APPROVE_OPTION) {
+            File selectedFile = fileChooser.getSelectedFile();
+            // Get the relative path of the selected file
+            String relativePath = imagesDir + "/" + selectedFile.getName();
+
+            Mat originalImage = NativeMemory.track(Imgcodecs.imread(relativePath));
+            // Display the original image
+            ImageProcessor.displayImage(frame, ImageProcessor.matToResizedBufferedImage(originalImage));
+            NativeMemory.release(originalImage);
+
+            // Create a timer to detect traffic signs after 3 seconds, or at once if the result is cached
+            Timer timer = getTimer(frame, relativePath, TrafficSignDetector.isImageCached(relativePath) ? 0 : 3000);
+            timer.start();
+        }
+    }
+
+    /**
+     * Creates a timer to detect traffic signs in the image after a delay.
+     *
+     * @param frame        the frame to display the detected image
+     * @param relativePath the relative path of the image
+     * @param delay        the delay in milliseconds
+     * @return the timer
+     */
+    private static Timer getTimer(JFrame frame, String relativePath, int delay) {
+        Timer timer = new Timer(delay, event -> {
+            Mat resultImage = TrafficSignDetector.detectTrafficSigns(relativePath);
+            // Display the detected image if not null
+            if (resultImage != null) {
+                ImageProcessor.displayDetectedImage(frame, ImageProcessor.matToResizedBufferedImage(resultImage), relativePath);
+                NativeMemory.release(resultImage);
+            }
+        });
+        // Set the timer to run only once
+        timer.setRepeats(false);
+        return timer;
+    }
+
+    /**
+     * Handles the selection of a video file.
+     *
+     * @param frame     the frame to display the video
+     * @param videosDir the directory containing the videos
+     */
+    private static void handleVideoSelection(JFrame frame, String videosDir) {
+        // Create a file chooser
+        JFileChooser fileChooser = new JFileChooser(new File(videosDir));
+        int returnValue = fileChooser.showOpenDialog(null);
+        // Check if the user selects a file
+        if (returnValue == JFileChooser.APPROVE_OPTION) {
+            String relativePath = getString(videosDir, fileChooser);
+
+            // Remove the image from the frame
+            ImageProcessor.removeImage(frame);
+
+            // Create a progress bar
+            JProgressBar progressBar = VideoProcessor.createProgressBar(frame);
+            // Add the progress bar to the frame
+            frame.add(progressBar, BorderLayout.SOUTH);
+
+            // Start a new thread to detect traffic signs in the video
+            new Thread(() -> VideoProcessor.processVideo(relativePath, VideoProcessor.progressBar, frame)).start();
+        }
+    }
+
+    /**
+     * Gets the relative path of the selected file.
+     *
+     * @param  videosDir   the directory containing the videos
+     * @param  fileChooser the file chooser
+     * @return the relative path of the selected file
+     */
+    private static String getString(String videosDir, JFileChooser fileChooser) {
+        File selectedFile = fileChooser.getSelectedFile();
+        // Get the parent directory name of the selected file
+        String parentDir = selectedFile.getParentFile().getName();
+
+        // Get the relative path of the selected file
+        String relativePath;
+        // Check if the parent directory is "morning", "afternoon", or "night"
+        if (parentDir.equals("morning") || parentDir.equals("afternoon") || parentDir.equals("night")) {
+            // Append the parent directory name and the selected file name to the relative path
+            relativePath = videosDir + "/" + parentDir + "/" + selectedFile.getName();
+        } else {
+            // Append the selected file name to the relative path
+            relativePath = videosDir + "/" + selectedFile.getName();
+        }
+        return relativePath;
+    }
 }
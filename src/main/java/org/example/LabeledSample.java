@@ -0,0 +1,81 @@
+package org.example;
+
+import org.opencv.core.Rect;
+
+import java.util.List;
+
+/**
+ * LabeledSample class is responsible for holding an image or video frame of the tuning set and the boxes of the
+ * traffic signs it shows, as read from an annotation file by AnnotationReader.
+ */
+public class LabeledSample {
+    private final String path; // Path of the image or video
+    private final int frameIndex; // Position of the frame in the video, or -1 for an image
+    private final String condition; // Lighting condition of the sample, such as night
+    private final List<Rect> signs; // Boxes of the traffic signs, in pixels of the full image
+
+    /**
+     * Creates a labeled sample.
+     *
+     * @param path       path of the image or video
+     * @param frameIndex position of the frame in the video, or -1 for an image
+     * @param condition  lighting condition of the sample
+     * @param signs      boxes of the traffic signs, empty if the sample shows none
+     */
+    public LabeledSample(String path, int frameIndex, String condition, List<Rect> signs) {
+        this.path = path;
+        this.frameIndex = frameIndex;
+        this.condition = condition;
+        this.signs = signs;
+    }
+
+    /**
+     * Gets the path of the image or video.
+     *
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the position of the frame in the video.
+     *
+     * @return the frame index, or -1 for an image
+     */
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * Checks if the sample is a video frame.
+     *
+     * @return true for a video frame, false for an image
+     */
+    public boolean isVideoFrame() {
+        return frameIndex >= 0;
+    }
+
+    /**
+     * Gets the lighting condition of the sample.
+     *
+     * @return the condition name
+     */
+    public String getCondition() {
+        return condition;
+    }
+
+    /**
+     * Gets the boxes of the traffic signs.
+     *
+     * @return the boxes, in pixels of the full image
+     */
+    public List<Rect> getSigns() {
+        return signs;
+    }
+
+    @Override
+    public String toString() {
+        return isVideoFrame() ? path + "@" + frameIndex : path;
+    }
+}
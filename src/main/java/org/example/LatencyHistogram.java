@@ -0,0 +1,129 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class is responsible for counting latencies in fixed buckets, so recording a sample costs
+ * a few atomic increments and no allocation, whatever the length of the video. Buckets have a resolution of
+ * one microsecond below 16 microseconds and of one eighth of a power of two above, so percentiles are within
+ * 12.5% of the exact value. It is thread-safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 8; // Buckets per power of two
+    private static final int BUCKET_COUNT = 42 * SUB_BUCKETS; // Up to about 2^43 microseconds
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT); // Number of samples per bucket
+    private final LongAdder count = new LongAdder(); // Number of samples
+    private final LongAdder totalNanos = new LongAdder(); // Sum of the samples
+    private final AtomicLong maxNanos = new AtomicLong(); // Largest sample
+
+    /**
+     * Records a latency sample.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        buckets.incrementAndGet(bucketOf(nanos / 1000));
+        count.increment();
+        totalNanos.add(nanos);
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * Gets the bucket of a latency.
+     *
+     * @param micros the latency in microseconds
+     * @return the index of the bucket
+     */
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(micros); // At least 3
+        int subBucket = (int) (micros >>> (octave - 3)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKET_COUNT - 1, (octave - 2) * SUB_BUCKETS + subBucket);
+    }
+
+    /**
+     * Gets the smallest latency of a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the latency in microseconds
+     */
+    private static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int octave = bucket / SUB_BUCKETS + 2;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (octave - 3);
+    }
+
+    /**
+     * Gets the number of recorded samples.
+     *
+     * @return the number of samples
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of the recorded latencies.
+     *
+     * @return the total in nanoseconds
+     */
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Gets the mean of the recorded latencies.
+     *
+     * @return the mean in milliseconds, or 0 if no sample was recorded
+     */
+    public double meanMillis() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : totalNanos.sum() / 1e6 / samples;
+    }
+
+    /**
+     * Gets the largest recorded latency.
+     *
+     * @return the maximum in milliseconds
+     */
+    public double maxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Gets a percentile of the recorded latencies, as the middle of the bucket holding it.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in milliseconds, or 0 if no sample was recorded
+     */
+    public double percentileMillis(double percentile) {
+        long samples = count.sum();
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * samples));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                long lower = lowerBoundOf(i);
+                long upper = i + 1 < BUCKET_COUNT ? lowerBoundOf(i + 1) : lower;
+                // Never report more than the largest sample
+                return Math.min((lower + upper) / 2e3, maxMillis());
+            }
+        }
+        return maxMillis();
+    }
+}
@@ -0,0 +1,196 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LivePreview class is responsible for showing the latest annotated frame while a video is processed.
+ * The preview is optional: it shows at most "preview.fps" frames per second, and is disabled when the property
+ * is not set or 0. The processing threads only scale the frames due to be shown and hand them over without
+ * blocking; a preview thread converts them, so the preview never waits for the event dispatch thread.
+ * <p>
+ * When the "preview.record" property is true, every frame is scaled and recorded, so the result can be played
+ * without decoding it again; this costs a resize per frame on the processing thread. The recording is bounded
+ * by the "preview.memoryMB" property (256 MB by default, at most a quarter of the maximum heap) and is
+ * abandoned when a frame is missed.
+ */
+public class LivePreview {
+    private static final int QUEUE_CAPACITY = 8; // Scaled frames waiting for the preview thread
+    private static final ScaledFrame END = new ScaledFrame(null, -1); // Marker of the end of the processing
+
+    private final FrameCanvas canvas = new FrameCanvas(); // Component showing the latest frame
+    private final BlockingQueue<ScaledFrame> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final MatPool scaledPool = new MatPool(QUEUE_CAPACITY + 1); // Buffers of the scaled frames
+    private final long intervalNanos; // Minimum time between two shown frames
+    private final long maxRecordingBytes; // Size above which the recording is abandoned
+    private final double frameRate; // Frame rate of the video, for the frames without a timestamp
+    private final AtomicLong nextPreviewNanos = new AtomicLong(); // Time from which the next frame is shown
+    private final List<PreviewFrame> recording = new ArrayList<>(); // Frames kept for playback, on the preview thread
+    private final Thread thread;
+
+    private volatile boolean recordingEnabled; // False if not requested, or once a frame was missed or the budget is exceeded
+    private long recordingBytes = 0; // Size of the recorded images, on the preview thread
+
+    /**
+     * A frame scaled to the display size, waiting for the preview thread.
+     */
+    private static class ScaledFrame {
+        private final Mat mat;
+        private final long timestampMillis;
+
+        private ScaledFrame(Mat mat, long timestampMillis) {
+            this.mat = mat;
+            this.timestampMillis = timestampMillis;
+        }
+    }
+
+    /**
+     * Creates a live preview and starts its thread.
+     *
+     * @param frameRate frame rate of the video, used to place the frames without a timestamp
+     */
+    public LivePreview(double frameRate) {
+        this.intervalNanos = 1_000_000_000L / Math.max(1, Integer.getInteger("preview.fps", 0));
+        // The recording lives on the heap, so it must leave room for the rest of the application
+        this.maxRecordingBytes = Math.min(Long.getLong("preview.memoryMB", 256) << 20, Runtime.getRuntime().maxMemory() / 4);
+        this.recordingEnabled = Boolean.getBoolean("preview.record");
+        this.frameRate = frameRate > 0 ? frameRate : 30;
+        this.thread = new Thread(this::run, "live-preview");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Checks if the live preview is enabled by the "preview.fps" property.
+     *
+     * @return true if enabled
+     */
+    public static boolean isEnabled() {
+        return Integer.getInteger("preview.fps", 0) > 0;
+    }
+
+    /**
+     * Gets the component showing the latest frame.
+     *
+     * @return the preview component
+     */
+    public JComponent getComponent() {
+        return canvas;
+    }
+
+    /**
+     * Hands a processed frame over to the preview. Called from the processing threads; never blocks.
+     *
+     * @param frame the annotated frame, which may be released after this method returns
+     */
+    public void frameProcessed(VideoFrame frame) {
+        long now = System.nanoTime();
+        long next = nextPreviewNanos.get();
+        boolean due = now >= next && nextPreviewNanos.compareAndSet(next, now + intervalNanos);
+        if (!due && !recordingEnabled) {
+            // Nothing to do for this frame: it is neither shown nor recorded
+            return;
+        }
+
+        Mat source = frame.getMat();
+        double ratio = Math.min((double) ImageProcessor.DISPLAY_WIDTH / source.cols(),
+                (double) ImageProcessor.DISPLAY_HEIGHT / source.rows());
+        Size size = new Size(Math.max(1, (int) (source.cols() * ratio)), Math.max(1, (int) (source.rows() * ratio)));
+        Mat scaled = scaledPool.acquire();
+        Imgproc.resize(source, scaled, size, 0, 0, Imgproc.INTER_AREA);
+
+        long timestampMillis = frame.getTimestampMillis();
+        if (timestampMillis <= 0 && frame.getIndex() > 0) {
+            // The segments of a video do not report timestamps
+            timestampMillis = (long) (frame.getIndex() * 1000 / frameRate);
+        }
+        if (!queue.offer(new ScaledFrame(scaled, timestampMillis))) {
+            // The preview thread is behind: skip the frame rather than slow the processing down
+            scaledPool.recycle(scaled);
+            recordingEnabled = false;
+        }
+    }
+
+    /**
+     * Preview thread: converts the scaled frames, records them and shows the latest one at the preview rate.
+     */
+    private void run() {
+        long lastShownNanos = 0;
+        try {
+            while (true) {
+                ScaledFrame scaled = queue.take();
+                if (scaled == END) {
+                    break;
+                }
+                BufferedImage image = ImageProcessor.matToBufferedImage(scaled.mat);
+                scaledPool.recycle(scaled.mat);
+
+                if (recordingEnabled) {
+                    recordingBytes += (long) image.getWidth() * image.getHeight() * image.getColorModel().getNumComponents();
+                    if (recordingBytes > maxRecordingBytes) {
+                        recordingEnabled = false;
+                    } else {
+                        recording.add(new PreviewFrame(image, scaled.timestampMillis));
+                    }
+                }
+                if (!recordingEnabled && !recording.isEmpty()) {
+                    // Free the memory as soon as the recording cannot be used
+                    recording.clear();
+                }
+
+                long now = System.nanoTime();
+                if (now - lastShownNanos >= intervalNanos) {
+                    lastShownNanos = now;
+                    canvas.show(image);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            scaledPool.clear();
+        }
+    }
+
+    /**
+     * Waits for the preview thread to handle the queued frames and stops it. Called after the processing ends.
+     */
+    public void finish() {
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            thread.interrupt();
+        }
+        // Frames left by an interrupted preview thread, or recycled after it stopped
+        ScaledFrame left;
+        while ((left = queue.poll()) != null) {
+            scaledPool.recycle(left.mat);
+        }
+        scaledPool.clear();
+    }
+
+    /**
+     * Gets the recorded frames, ordered by their position in the video. Must be called after finish.
+     *
+     * @return the frames, or null if a frame was missed, the memory budget was exceeded or nothing was recorded
+     */
+    public List<PreviewFrame> getRecording() {
+        if (!recordingEnabled || recording.isEmpty()) {
+            return null;
+        }
+        // Segments of a video are processed in parallel, so their frames arrive out of order
+        recording.sort(Comparator.comparingLong(PreviewFrame::getTimestampMillis));
+        return recording;
+    }
+}
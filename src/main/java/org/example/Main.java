@@ -4,6 +4,7 @@ import org.opencv.core.Core;
 
 /**
  * Main class is responsible for running the application and loading OpenCV library.
+ * Without arguments it opens the graphical user interface; with arguments it runs the headless batch mode.
  */
 public class Main {
 
@@ -18,6 +19,11 @@ public class Main {
      * @param args command line arguments
      */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // Batch mode never opens a window
+            System.setProperty("java.awt.headless", "true");
+            System.exit(BatchProcessor.run(args));
+        }
         InterfaceGUI.createInterface();
     }
 }
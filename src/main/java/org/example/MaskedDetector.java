@@ -0,0 +1,74 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MaskedDetector class is responsible for searching only the region-of-interest mask of the current input.
+ * The wrapped detector runs on the regions of the current RegionMask of the thread, the boxes are mapped back
+ * to frame coordinates, and the detections whose center is outside the mask are dropped. Without a current mask
+ * the whole frame is searched. The share of the frame area that was skipped is counted for all masks together.
+ */
+public class MaskedDetector implements FrameDetector {
+    private static final LongAdder totalArea = new LongAdder(); // Frame pixels seen with a mask
+    private static final LongAdder searchedArea = new LongAdder(); // Frame pixels inside the masks
+
+    private final FrameDetector detector; // Detector run on the regions of the mask
+
+    /**
+     * Creates a masked detector in front of a detector.
+     *
+     * @param detector the detector run on the regions of the mask
+     */
+    public MaskedDetector(FrameDetector detector) {
+        this.detector = detector;
+    }
+
+    @Override
+    public List<Detection> detect(Mat image) {
+        RegionMask mask = RegionMask.current();
+        if (mask == null) {
+            return detector.detect(image);
+        }
+        int width = image.cols();
+        int height = image.rows();
+        List<Rect> regions = mask.regionsIn(width, height);
+        totalArea.add((long) width * height);
+        searchedArea.add(Regions.area(regions));
+        List<Detection> detections = new ArrayList<>();
+        for (Detection detection : Regions.detectInRegions(detector, image, regions)) {
+            if (mask.contains(detection, width, height)) {
+                detections.add(detection);
+            }
+        }
+        mask.record(detections, width, height);
+        return detections;
+    }
+
+    /**
+     * Gets the share of the frame area skipped by the masks since the start.
+     *
+     * @return the skipped fraction, from 0 to 1
+     */
+    public static double skippedFraction() {
+        long total = totalArea.sum();
+        return total == 0 ? 0 : 1 - (double) searchedArea.sum() / total;
+    }
+
+    /**
+     * Gets a short report of the skipped frame area.
+     *
+     * @return the report line, or null if no frame was masked
+     */
+    public static String report() {
+        if (totalArea.sum() == 0) {
+            return null;
+        }
+        return String.format(Locale.ROOT, "Region masks skipped %.1f%% of the frame area", skippedFraction() * 100);
+    }
+}
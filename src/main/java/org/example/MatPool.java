@@ -0,0 +1,56 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * MatPool class is responsible for reusing the Mats of frames of the same size.
+ * Reading a frame into a recycled Mat of the right size does not allocate native memory, so a video
+ * is decoded with a fixed set of buffers instead of one allocation per frame. The pool is thread-safe:
+ * frames are acquired by one stage and recycled by another.
+ */
+public class MatPool {
+    private final BlockingQueue<Mat> free; // Recycled Mats ready to be reused
+
+    /**
+     * Creates a pool.
+     *
+     * @param capacity maximum number of recycled Mats kept; extra Mats are released
+     */
+    public MatPool(int capacity) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Gets a recycled Mat, or a new tracked Mat if none is free.
+     *
+     * @return the Mat, to be given back with recycle
+     */
+    public Mat acquire() {
+        Mat mat = free.poll();
+        return mat != null ? mat : NativeMemory.newMat();
+    }
+
+    /**
+     * Gives a Mat back to the pool, or releases it if the pool is full.
+     *
+     * @param mat the Mat
+     */
+    public void recycle(Mat mat) {
+        if (mat != null && !free.offer(mat)) {
+            NativeMemory.release(mat);
+        }
+    }
+
+    /**
+     * Releases the recycled Mats.
+     */
+    public void clear() {
+        Mat mat;
+        while ((mat = free.poll()) != null) {
+            NativeMemory.release(mat);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MatScope class is responsible for releasing the temporary Mats of a block of code.
+ * Mats created or tracked by a scope are released when the scope is closed, so a try-with-resources
+ * block frees its native memory even when an exception is thrown. A Mat that must outlive the scope
+ * is kept with keep and released later with NativeMemory.release. A scope is not thread-safe.
+ */
+public class MatScope implements AutoCloseable {
+    private final List<Mat> mats = new ArrayList<>(); // Mats released when the scope is closed
+
+    /**
+     * Creates an empty Mat released with the scope.
+     *
+     * @return the new Mat
+     */
+    public Mat newMat() {
+        return track(new Mat());
+    }
+
+    /**
+     * Releases a Mat with the scope.
+     *
+     * @param mat the Mat, may be null
+     * @param <T> the type of the Mat
+     * @return the same Mat
+     */
+    public <T extends Mat> T track(T mat) {
+        if (mat != null) {
+            mats.add(NativeMemory.track(mat));
+        }
+        return mat;
+    }
+
+    /**
+     * Removes a Mat from the scope, so it is not released when the scope is closed.
+     * It stays tracked by NativeMemory until it is released.
+     *
+     * @param mat the Mat
+     * @param <T> the type of the Mat
+     * @return the same Mat
+     */
+    public <T extends Mat> T keep(T mat) {
+        mats.remove(mat);
+        return mat;
+    }
+
+    /**
+     * Releases the Mats of the scope.
+     */
+    @Override
+    public void close() {
+        for (Mat mat : mats) {
+            NativeMemory.release(mat);
+        }
+        mats.clear();
+    }
+}
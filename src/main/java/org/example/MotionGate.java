@@ -0,0 +1,134 @@
+package org.example;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+
+/**
+ * MotionGate class is responsible for skipping detection on frames that did not change.
+ * Each frame is reduced to a small grayscale thumbnail and compared with the thumbnail of the last
+ * detected frame. When the mean absolute difference stays under the threshold, the detections of the
+ * last detected frame are reused. After a maximum number of reused frames, detection runs again anyway.
+ * A gate handles one video, in frame order, from a single thread.
+ */
+public class MotionGate {
+    private static final int THUMBNAIL_WIDTH = 160; // Width of the thumbnails that are compared
+
+    private final double threshold; // Mean absolute difference, in gray levels, under which a frame is static
+    private final int maxSkips; // Maximum number of consecutive reused frames
+    private final Mat small = new Mat(); // Reused downscaled frame
+    private Mat thumbnail = new Mat(); // Thumbnail of the current frame
+    private Mat reference = new Mat(); // Thumbnail of the last detected frame
+    private final Mat difference = new Mat(); // Reused absolute difference
+    private int consecutiveSkips; // Frames reused since the last detected frame
+    private int checkedFrames; // Frames compared
+    private int skippedFrames; // Frames whose detections were reused
+
+    /**
+     * Creates a motion gate.
+     *
+     * @param threshold mean absolute difference, in gray levels from 0 to 255, under which a frame is static
+     * @param maxSkips  maximum number of consecutive frames whose detections are reused
+     */
+    public MotionGate(double threshold, int maxSkips) {
+        this.threshold = threshold;
+        this.maxSkips = maxSkips;
+    }
+
+    /**
+     * Creates a motion gate from the "motion.threshold" and "motion.maxSkip" properties.
+     *
+     * @return the motion gate, or null if no threshold is set
+     */
+    public static MotionGate fromProperties() {
+        String threshold = System.getProperty("motion.threshold");
+        if (threshold == null) {
+            return null;
+        }
+        return new MotionGate(Double.parseDouble(threshold), Integer.getInteger("motion.maxSkip", 30));
+    }
+
+    /**
+     * Checks if a frame is nearly identical to the last detected frame.
+     * When it is not, the frame becomes the new reference and must be detected.
+     *
+     * @param image Mat object representing the frame
+     * @return true if the detections of the last detected frame can be reused
+     */
+    public boolean isStatic(Mat image) {
+        checkedFrames++;
+        double scale = Math.min(1.0, (double) THUMBNAIL_WIDTH / image.cols());
+        Imgproc.resize(image, small, new Size(Math.round(image.cols() * scale), Math.round(image.rows() * scale)), 0, 0, Imgproc.INTER_AREA);
+        if (small.channels() > 1) {
+            Imgproc.cvtColor(small, thumbnail, Imgproc.COLOR_BGR2GRAY);
+        } else {
+            small.copyTo(thumbnail);
+        }
+
+        if (!reference.empty() && consecutiveSkips < maxSkips) {
+            Core.absdiff(thumbnail, reference, difference);
+            if (Core.mean(difference).val[0] < threshold) {
+                consecutiveSkips++;
+                skippedFrames++;
+                return true;
+            }
+        }
+
+        // The frame changed: it becomes the new reference
+        Mat swap = reference;
+        reference = thumbnail;
+        thumbnail = swap;
+        consecutiveSkips = 0;
+        return false;
+    }
+
+    /**
+     * Gets the number of frames compared.
+     *
+     * @return the number of frames
+     */
+    public int getCheckedFrames() {
+        return checkedFrames;
+    }
+
+    /**
+     * Gets the number of frames whose detections were reused.
+     *
+     * @return the number of skipped frames
+     */
+    public int getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Gets the share of frames whose detections were reused.
+     *
+     * @return the skip rate, between 0 and 1
+     */
+    public double getSkipRate() {
+        return checkedFrames == 0 ? 0 : (double) skippedFrames / checkedFrames;
+    }
+
+    /**
+     * Gets a short report of the skipped frames.
+     *
+     * @return the report line
+     */
+    public String report() {
+        return String.format(Locale.ROOT, "Motion gate skipped %d of %d frames (%.1f%%, threshold %.1f, max %d in a row)",
+                skippedFrames, checkedFrames, getSkipRate() * 100, threshold, maxSkips);
+    }
+
+    /**
+     * Releases the buffers of the gate.
+     */
+    public void release() {
+        small.release();
+        thumbnail.release();
+        reference.release();
+        difference.release();
+    }
+}
@@ -0,0 +1,123 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NativeMemory class is responsible for tracking the OpenCV Mats that hold native memory.
+ * The pixels of a Mat live outside the Java heap and are only freed by release or by the finalizer,
+ * so a Mat that is dropped without being released keeps its memory until the next garbage collection.
+ * Mats created through this class, MatScope or MatPool are counted until they are released, and the
+ * live count and bytes are exposed as metrics so a leak shows up as a growing number: they are attributes of
+ * the PipelineMetrics MXBean of a video run and part of its status line.
+ */
+public class NativeMemory {
+    private static final Set<Mat> liveMats = Collections.newSetFromMap(new ConcurrentHashMap<>()); // Tracked Mats
+    private static final LongAdder allocatedMats = new LongAdder(); // Mats tracked since the start of the program
+    private static final LongAdder releasedMats = new LongAdder(); // Mats released since the start of the program
+    private static final AtomicInteger peakLiveMats = new AtomicInteger(); // Highest number of live Mats
+
+    /**
+     * Creates an empty tracked Mat.
+     *
+     * @return the new Mat, to be released with release
+     */
+    public static Mat newMat() {
+        return track(new Mat());
+    }
+
+    /**
+     * Starts tracking a Mat created elsewhere, such as one returned by imread.
+     *
+     * @param mat the Mat, may be null
+     * @param <T> the type of the Mat
+     * @return the same Mat
+     */
+    public static <T extends Mat> T track(T mat) {
+        if (mat != null && liveMats.add(mat)) {
+            allocatedMats.increment();
+            peakLiveMats.accumulateAndGet(liveMats.size(), Math::max);
+        }
+        return mat;
+    }
+
+    /**
+     * Releases the native memory of a Mat and stops tracking it.
+     *
+     * @param mat the Mat, may be null
+     */
+    public static void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        if (liveMats.remove(mat)) {
+            releasedMats.increment();
+        }
+        mat.release();
+    }
+
+    /**
+     * Gets the number of tracked Mats that are not released yet.
+     *
+     * @return the number of live Mats
+     */
+    public static int liveMats() {
+        return liveMats.size();
+    }
+
+    /**
+     * Gets the highest number of live Mats since the start of the program.
+     *
+     * @return the peak number of live Mats
+     */
+    public static int peakLiveMats() {
+        return peakLiveMats.get();
+    }
+
+    /**
+     * Gets the native memory held by the pixels of the live Mats.
+     *
+     * @return the number of bytes
+     */
+    public static long liveBytes() {
+        long bytes = 0;
+        for (Mat mat : liveMats) {
+            bytes += mat.total() * mat.elemSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the number of Mats tracked since the start of the program.
+     *
+     * @return the number of tracked Mats
+     */
+    public static long allocatedMats() {
+        return allocatedMats.sum();
+    }
+
+    /**
+     * Gets the number of tracked Mats released since the start of the program.
+     *
+     * @return the number of released Mats
+     */
+    public static long releasedMats() {
+        return releasedMats.sum();
+    }
+
+    /**
+     * Describes the tracked native memory.
+     *
+     * @return the report line
+     */
+    public static String report() {
+        return String.format(Locale.ROOT, "Native memory: %d live Mats (%.1f MB, peak %d Mats), %d allocated, %d released",
+                liveMats(), liveBytes() / 1e6, peakLiveMats(), allocatedMats(), releasedMats());
+    }
+}
@@ -0,0 +1,423 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * ParameterTuner class is responsible for finding the detection parameters that trade throughput against recall
+ * on a labeled sample set. It sweeps every combination of cascade, scale factor, minimum neighbors, minimum size
+ * and detection width, detects the samples of an annotation file (see AnnotationReader) with each of them, and
+ * measures the detection throughput, precision and recall of every lighting condition of the file.
+ * <p>
+ * The values swept are read from comma-separated properties: "tune.cascades" (every XML file of the cascades
+ * folder by default), "tune.scaleFactors", "tune.minNeighbors", "tune.minSizes" and "tune.detectionWidths".
+ * A detection matches a sign when their intersection over union is at least "tune.iou" (0.5 by default).
+ * <p>
+ * For every condition the Pareto-optimal configurations, which no other configuration beats on throughput,
+ * precision and recall at once, are written to "&lt;condition&gt;-pareto.csv" in the profiles folder
+ * ("detection.profiles", profiles by default). Three of them are written as profiles that DetectionConfig loads
+ * with "detection.profile": "&lt;condition&gt;" is the fastest one reaching "tune.minRecall" (0.8 by default) and
+ * "tune.minPrecision" (0.5 by default), "&lt;condition&gt;-fastest" the fastest one and "&lt;condition&gt;-accurate"
+ * the one with the best recall.
+ * <p>
+ * Configurations are measured one after the other on one thread, so the throughputs are comparable; the samples
+ * are decoded once and kept in memory at full resolution. The detectors are created like the ones of the
+ * application, so the color prefilter is part of the measures when it is enabled.
+ */
+public class ParameterTuner {
+    private static final String CASCADES_FOLDER = "cascades"; // Folder of the cascades swept by default
+
+    private final List<LabeledSample> samples; // Samples of the annotation file
+    private final double minIou; // Intersection over union needed to match a sign
+    private final Map<String, List<Result>> results = new LinkedHashMap<>(); // Results by lighting condition
+
+    /**
+     * Throughput, precision and recall of a configuration on the samples of a lighting condition.
+     */
+    private static class Result {
+        private final DetectionConfig config;
+        private long detectNanos; // Time spent detecting the samples
+        private int samples; // Number of detected samples
+        private int truePositives; // Detections matching a sign
+        private int falsePositives; // Detections matching no sign
+        private int falseNegatives; // Signs matched by no detection
+
+        private Result(DetectionConfig config) {
+            this.config = config;
+        }
+
+        private double framesPerSecond() {
+            return detectNanos > 0 ? samples * 1e9 / detectNanos : 0;
+        }
+
+        private double precision() {
+            int detections = truePositives + falsePositives;
+            return detections == 0 ? 1 : (double) truePositives / detections;
+        }
+
+        private double recall() {
+            int signs = truePositives + falseNegatives;
+            return signs == 0 ? 1 : (double) truePositives / signs;
+        }
+
+        /**
+         * Checks if another result is at least as good on every measure and better on one.
+         */
+        private boolean isDominatedBy(Result other) {
+            return other.framesPerSecond() >= framesPerSecond() && other.precision() >= precision()
+                    && other.recall() >= recall() && (other.framesPerSecond() > framesPerSecond()
+                    || other.precision() > precision() || other.recall() > recall());
+        }
+    }
+
+    /**
+     * Creates a tuner for a sample set.
+     *
+     * @param samples the labeled samples
+     */
+    public ParameterTuner(List<LabeledSample> samples) {
+        this.samples = samples;
+        this.minIou = Double.parseDouble(System.getProperty("tune.iou", "0.5"));
+    }
+
+    /**
+     * Runs the tuning on an annotation file and writes the profiles.
+     *
+     * @param annotations path of the annotation file
+     * @return the exit code
+     */
+    public static int run(Path annotations) {
+        if (System.getProperty("detector.cascades") != null) {
+            System.out.println("Tuning picks a single cascade: do not set detector.cascades");
+            return 2;
+        }
+        List<LabeledSample> samples;
+        List<DetectionConfig> configs;
+        try {
+            samples = new AnnotationReader(annotations).readAll();
+            configs = sweptConfigs();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Could not prepare tuning: " + e.getMessage());
+            return 1;
+        }
+        if (samples.isEmpty() || configs.isEmpty()) {
+            System.out.println("Nothing to tune: " + samples.size() + " samples, " + configs.size() + " configurations");
+            return 1;
+        }
+
+        ParameterTuner tuner = new ParameterTuner(samples);
+        Path profiles = DetectionConfig.profilesFolder();
+        try {
+            tuner.sweep(configs);
+            Files.createDirectories(profiles);
+            tuner.writeProfiles(profiles);
+            return 0;
+        } catch (IOException e) {
+            System.out.println("Could not write profiles: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Lists the configurations to measure, from the "tune.*" properties.
+     *
+     * @return the configurations
+     * @throws IOException if the cascades folder cannot be listed
+     */
+    private static List<DetectionConfig> sweptConfigs() throws IOException {
+        List<String> cascades = new ArrayList<>();
+        String cascadeList = System.getProperty("tune.cascades");
+        if (cascadeList != null) {
+            for (String cascade : cascadeList.split(",")) {
+                cascades.add(cascade.trim());
+            }
+        } else {
+            try (Stream<Path> files = Files.list(Paths.get(CASCADES_FOLDER))) {
+                files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".xml"))
+                        .sorted()
+                        .forEach(file -> cascades.add(file.toString()));
+            }
+        }
+        int maxSize = TrafficSignDetector.getDetectionConfig().getMaxSize();
+
+        List<DetectionConfig> configs = new ArrayList<>();
+        for (String cascade : cascades) {
+            for (String width : listProperty("tune.detectionWidths", "640,960,1280")) {
+                for (String scaleFactor : listProperty("tune.scaleFactors", "1.05,1.1,1.2,1.3")) {
+                    for (String minNeighbors : listProperty("tune.minNeighbors", "2,3,5")) {
+                        for (String minSize : listProperty("tune.minSizes", "0,24,48")) {
+                            configs.add(new DetectionConfig()
+                                    .setCascade(cascade)
+                                    .setDetectionWidth(Integer.parseInt(width))
+                                    .setScaleFactor(Double.parseDouble(scaleFactor))
+                                    .setMinNeighbors(Integer.parseInt(minNeighbors))
+                                    .setMinSize(Integer.parseInt(minSize))
+                                    .setMaxSize(maxSize));
+                        }
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Reads a comma-separated property.
+     *
+     * @param key          the property key
+     * @param defaultValue the value used when the property is not set
+     * @return the values
+     */
+    private static String[] listProperty(String key, String defaultValue) {
+        return System.getProperty(key, defaultValue).replace(" ", "").split(",");
+    }
+
+    /**
+     * Measures every configuration on the samples.
+     *
+     * @param configs the configurations
+     */
+    public void sweep(List<DetectionConfig> configs) {
+        List<Mat> images = loadSamples();
+        try {
+            for (int i = 0; i < configs.size(); i++) {
+                DetectionConfig config = configs.get(i);
+                FrameDetector detector;
+                try {
+                    detector = TrafficSignDetector.createDetector(config);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("\nSkipping configuration: " + e.getMessage());
+                    continue;
+                }
+                Map<String, Result> byCondition = measure(detector, config, images);
+                byCondition.forEach((condition, result) ->
+                        results.computeIfAbsent(condition, key -> new ArrayList<>()).add(result));
+
+                Result all = total(config, byCondition.values());
+                System.out.println(String.format(Locale.ROOT, "[%d/%d] %s: %.1f frames/s, precision %.2f, recall %.2f",
+                        i + 1, configs.size(), config, all.framesPerSecond(), all.precision(), all.recall()));
+            }
+        } finally {
+            for (Mat image : images) {
+                NativeMemory.release(image);
+            }
+        }
+    }
+
+    /**
+     * Decodes the samples. Samples that cannot be read are kept as empty images and skipped by the measures.
+     *
+     * @return the images, in the order of the samples
+     */
+    private List<Mat> loadSamples() {
+        List<Mat> images = new ArrayList<>();
+        Map<String, VideoCapture> videos = new LinkedHashMap<>();
+        for (LabeledSample sample : samples) {
+            Mat image;
+            if (sample.isVideoFrame()) {
+                VideoCapture capture = videos.computeIfAbsent(sample.getPath(), VideoCapture::new);
+                image = NativeMemory.track(new Mat());
+                capture.set(Videoio.CAP_PROP_POS_FRAMES, sample.getFrameIndex());
+                if (!capture.isOpened() || !capture.read(image)) {
+                    image.release();
+                }
+            } else {
+                image = NativeMemory.track(Imgcodecs.imread(sample.getPath()));
+            }
+            if (image.empty()) {
+                System.out.println("\nCould not load sample: " + sample);
+            }
+            images.add(image);
+        }
+        videos.values().forEach(VideoCapture::release);
+        return images;
+    }
+
+    /**
+     * Detects the samples with a detector and compares the detections with the signs.
+     *
+     * @param detector the detector of the configuration
+     * @param config   the configuration
+     * @param images   the decoded samples
+     * @return the results by lighting condition
+     */
+    private Map<String, Result> measure(FrameDetector detector, DetectionConfig config, List<Mat> images) {
+        Map<String, Result> byCondition = new LinkedHashMap<>();
+        boolean warm = false;
+        for (int i = 0; i < samples.size(); i++) {
+            Mat image = images.get(i);
+            if (image.empty()) {
+                continue;
+            }
+            if (!warm) {
+                // The first detection allocates the buffers of the detector
+                detector.detect(image);
+                warm = true;
+            }
+            LabeledSample sample = samples.get(i);
+            long startNanos = System.nanoTime();
+            List<Detection> detections = detector.detect(image);
+            long nanos = System.nanoTime() - startNanos;
+
+            Result result = byCondition.computeIfAbsent(sample.getCondition(), key -> new Result(config));
+            result.detectNanos += nanos;
+            result.samples++;
+            int matched = countMatches(sample.getSigns(), detections);
+            result.truePositives += matched;
+            result.falsePositives += detections.size() - matched;
+            result.falseNegatives += sample.getSigns().size() - matched;
+        }
+        return byCondition;
+    }
+
+    /**
+     * Matches the detections with the signs, each detection matching at most one sign.
+     *
+     * @param signs      the labeled boxes
+     * @param detections the detected boxes
+     * @return the number of matched signs
+     */
+    private int countMatches(List<Rect> signs, List<Detection> detections) {
+        boolean[] used = new boolean[detections.size()];
+        int matched = 0;
+        for (Rect sign : signs) {
+            int best = -1;
+            double bestIou = minIou;
+            for (int i = 0; i < detections.size(); i++) {
+                double iou = Regions.intersectionOverUnion(sign, detections.get(i).getRect());
+                if (!used[i] && iou >= bestIou) {
+                    best = i;
+                    bestIou = iou;
+                }
+            }
+            if (best >= 0) {
+                used[best] = true;
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Adds up the results of the lighting conditions.
+     *
+     * @param config  the configuration
+     * @param results the results of every condition
+     * @return the result on every sample
+     */
+    private static Result total(DetectionConfig config, Iterable<Result> results) {
+        Result total = new Result(config);
+        for (Result result : results) {
+            total.detectNanos += result.detectNanos;
+            total.samples += result.samples;
+            total.truePositives += result.truePositives;
+            total.falsePositives += result.falsePositives;
+            total.falseNegatives += result.falseNegatives;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the results that no other result of the same condition dominates.
+     *
+     * @param results the results of a condition
+     * @return the Pareto-optimal results, fastest first
+     */
+    private static List<Result> paretoFront(List<Result> results) {
+        List<Result> front = new ArrayList<>();
+        for (Result result : results) {
+            boolean dominated = false;
+            for (Result other : results) {
+                if (result.isDominatedBy(other)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                front.add(result);
+            }
+        }
+        front.sort(Comparator.comparingDouble(Result::framesPerSecond).reversed());
+        return front;
+    }
+
+    /**
+     * Writes the Pareto-optimal configurations and the profiles of every lighting condition.
+     *
+     * @param folder the profiles folder
+     * @throws IOException if a file cannot be written
+     */
+    public void writeProfiles(Path folder) throws IOException {
+        double minRecall = Double.parseDouble(System.getProperty("tune.minRecall", "0.8"));
+        double minPrecision = Double.parseDouble(System.getProperty("tune.minPrecision", "0.5"));
+        for (Map.Entry<String, List<Result>> entry : results.entrySet()) {
+            String condition = entry.getKey();
+            List<Result> front = paretoFront(entry.getValue());
+
+            Path csv = folder.resolve(condition + "-pareto.csv");
+            try (Writer writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                writer.write("framesPerSecond,precision,recall,cascade,detectionWidth,scaleFactor,minNeighbors,minSize,maxSize\n");
+                for (Result result : front) {
+                    DetectionConfig config = result.config;
+                    writer.write(String.format(Locale.ROOT, "%.2f,%.3f,%.3f,\"%s\",%d,%s,%d,%d,%d%n",
+                            result.framesPerSecond(), result.precision(), result.recall(), config.getCascade(),
+                            config.getDetectionWidth(), config.getScaleFactor(), config.getMinNeighbors(),
+                            config.getMinSize(), config.getMaxSize()));
+                }
+            }
+
+            // The front is sorted by throughput, so the first result reaching the targets is the fastest one
+            Result balanced = front.stream()
+                    .filter(result -> result.recall() >= minRecall && result.precision() >= minPrecision)
+                    .findFirst().orElse(null);
+            Result accurate = front.stream()
+                    .max(Comparator.comparingDouble(Result::recall).thenComparingDouble(Result::precision)
+                            .thenComparingDouble(Result::framesPerSecond))
+                    .orElseThrow();
+            writeProfile(folder, condition, balanced != null ? balanced : accurate);
+            writeProfile(folder, condition + "-fastest", front.get(0));
+            writeProfile(folder, condition + "-accurate", accurate);
+
+            System.out.println(String.format(Locale.ROOT, "%s: %d Pareto-optimal configurations in %s", condition,
+                    front.size(), csv));
+            if (balanced == null) {
+                System.out.println(String.format(Locale.ROOT, "%s: no configuration reaches recall %.2f and precision %.2f,"
+                        + " the profile uses the best recall", condition, minRecall, minPrecision));
+            }
+        }
+    }
+
+    /**
+     * Writes a profile with the measures of its configuration as a comment.
+     *
+     * @param folder the profiles folder
+     * @param name   the profile name
+     * @param result the result of the configuration
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeProfile(Path folder, String name, Result result) throws IOException {
+        String comment = String.format(Locale.ROOT, "Profile %s tuned on %d samples: %.1f frames/s, precision %.3f, recall %.3f",
+                name, result.samples, result.framesPerSecond(), result.precision(), result.recall());
+        try (Writer writer = Files.newBufferedWriter(folder.resolve(name + ".properties"), StandardCharsets.UTF_8)) {
+            result.config.toProperties().store(writer, comment);
+        }
+        System.out.println(comment);
+    }
+}
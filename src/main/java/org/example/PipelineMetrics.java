@@ -0,0 +1,365 @@
+package org.example;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * PipelineMetrics class is responsible for measuring where the time of a video run goes.
+ * Every stage records its latency in a LatencyHistogram, the queues between the stages are sampled every second,
+ * and the throughput and the time left are computed from the frames written so far and CAP_PROP_FRAME_COUNT.
+ * <p>
+ * While the run lasts, the measurements are exposed as an MXBean named "org.example:type=PipelineMetrics",
+ * a status line is printed every "metrics.logSeconds" seconds (10 by default, 0 to disable it) and the listener
+ * of the run is notified every second. A report is printed when the run ends.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+    private static final long SAMPLE_MILLIS = 1000; // Time between two samples of the queues
+    private static final AtomicInteger runs = new AtomicInteger(); // Number of runs, used in the MXBean names
+    // Time spent preparing frames for the detector on the current thread, taken by the caller of the detector
+    private static final ThreadLocal<long[]> preprocessNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Stages of a video run.
+     */
+    public enum Stage {
+        DECODE("decode"),
+        PREPROCESS("preprocess"),
+        DETECT("detect"),
+        DRAW("draw"),
+        SNAPSHOT_WRITE("snapshot-write"),
+        ENCODE("encode");
+
+        private final String label; // Name of the stage in the reports
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Gets the name of the stage in the reports.
+         *
+         * @return the stage name
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final String video; // Path of the processed video
+    private final long totalFrames; // Number of frames reported by the video, or 0
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final Map<String, IntSupplier> queues = new LinkedHashMap<>(); // Queues sampled every second
+    private final Map<String, Integer> maxQueueDepths = new ConcurrentHashMap<>(); // Largest sampled depth of each queue
+    private final LongAdder framesProcessed = new LongAdder();
+    private volatile long startNanos; // Time when the run started
+    private volatile long endNanos = -1; // Time when the run ended, or -1 while it runs
+    private Thread reporter; // Samples the queues, notifies the listener and prints the status line
+    private ObjectName objectName; // Name of the registered MXBean, or null
+
+    /**
+     * Creates the metrics of a run.
+     *
+     * @param video       path of the processed video
+     * @param totalFrames number of frames reported by the video, or 0 if unknown
+     */
+    public PipelineMetrics(String video, long totalFrames) {
+        this.video = video;
+        this.totalFrames = Math.max(0, totalFrames);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Adds time spent preparing a frame for the detector on the current thread, such as a color conversion or a
+     * resize. Called by the detectors, whose callers take the total with takePreprocessNanos.
+     *
+     * @param startNanos time when the preparation started, as given by System.nanoTime
+     */
+    public static void addPreprocessNanos(long startNanos) {
+        preprocessNanos.get()[0] += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Gets and resets the preparation time added on the current thread.
+     *
+     * @return the preparation time in nanoseconds
+     */
+    public static long takePreprocessNanos() {
+        long[] nanos = preprocessNanos.get();
+        long taken = nanos[0];
+        nanos[0] = 0;
+        return taken;
+    }
+
+    /**
+     * Records the latency of a stage for one frame.
+     *
+     * @param stage the stage
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    /**
+     * Records the detection of a frame, splitting the time spent preparing the frame from the detection itself.
+     *
+     * @param startNanos time when the detection started, as given by System.nanoTime
+     */
+    public void recordDetection(long startNanos) {
+        long total = System.nanoTime() - startNanos;
+        long preprocess = Math.min(total, takePreprocessNanos());
+        record(Stage.PREPROCESS, preprocess);
+        record(Stage.DETECT, total - preprocess);
+    }
+
+    /**
+     * Counts a frame written by the last stage.
+     */
+    public void frameProcessed() {
+        framesProcessed.increment();
+    }
+
+    /**
+     * Adds a queue to sample. Must be called before start.
+     *
+     * @param name  name of the queue in the reports
+     * @param depth gives the number of frames waiting in the queue
+     */
+    public void watchQueue(String name, IntSupplier depth) {
+        queues.put(name, depth);
+    }
+
+    /**
+     * Starts the run: registers the MXBean and starts the thread sampling the queues and printing the status line.
+     *
+     * @param listener listener notified of the measurements every second
+     */
+    public void start(ProcessingListener listener) {
+        startNanos = System.nanoTime();
+        try {
+            objectName = new ObjectName("org.example:type=PipelineMetrics,run=" + runs.incrementAndGet()
+                    + ",video=" + ObjectName.quote(video));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            System.out.println("\nCould not register pipeline metrics: " + e.getMessage());
+            objectName = null;
+        }
+
+        long logMillis = Long.getLong("metrics.logSeconds", 10) * 1000;
+        reporter = new Thread(() -> sample(listener, logMillis), "metrics-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Reporter thread: samples the queues and notifies the listener every second, and prints the status line.
+     *
+     * @param listener  listener notified of the measurements
+     * @param logMillis time between two status lines, or 0 to not print them
+     */
+    private void sample(ProcessingListener listener, long logMillis) {
+        long sinceLog = 0;
+        try {
+            while (true) {
+                Thread.sleep(SAMPLE_MILLIS);
+                for (Map.Entry<String, Integer> depth : getQueueDepths().entrySet()) {
+                    maxQueueDepths.merge(depth.getKey(), depth.getValue(), Math::max);
+                }
+                listener.metricsUpdated(this);
+                sinceLog += SAMPLE_MILLIS;
+                if (logMillis > 0 && sinceLog >= logMillis) {
+                    sinceLog = 0;
+                    System.out.println(statusLine());
+                }
+            }
+        } catch (InterruptedException e) {
+            // The run ended
+        }
+    }
+
+    /**
+     * Ends the run: stops the reporter thread, unregisters the MXBean and prints the report.
+     */
+    public void finish() {
+        endNanos = System.nanoTime();
+        if (reporter != null) {
+            reporter.interrupt();
+            try {
+                reporter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // Already unregistered
+            }
+        }
+        System.out.println(report());
+    }
+
+    @Override
+    public String getVideo() {
+        return video;
+    }
+
+    @Override
+    public long getFramesProcessed() {
+        return framesProcessed.sum();
+    }
+
+    @Override
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    /**
+     * Gets the time since the start of the run, or the length of the run once it ended.
+     *
+     * @return the elapsed time in seconds
+     */
+    public double getElapsedSeconds() {
+        long end = endNanos >= 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1e9;
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        double elapsed = getElapsedSeconds();
+        return elapsed > 0 ? framesProcessed.sum() / elapsed : 0;
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        double framesPerSecond = getFramesPerSecond();
+        if (totalFrames == 0 || framesPerSecond <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, totalFrames - framesProcessed.sum()) / framesPerSecond);
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanMillis() {
+        Map<String, Double> means = new LinkedHashMap<>();
+        stages.forEach((stage, histogram) -> means.put(stage.getLabel(), histogram.meanMillis()));
+        return means;
+    }
+
+    @Override
+    public Map<String, Double> getStageP50Millis() {
+        Map<String, Double> medians = new LinkedHashMap<>();
+        stages.forEach((stage, histogram) -> medians.put(stage.getLabel(), histogram.percentileMillis(50)));
+        return medians;
+    }
+
+    @Override
+    public Map<String, Double> getStageP99Millis() {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        stages.forEach((stage, histogram) -> percentiles.put(stage.getLabel(), histogram.percentileMillis(99)));
+        return percentiles;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        queues.forEach((name, depth) -> depths.put(name, depth.getAsInt()));
+        return depths;
+    }
+
+    @Override
+    public int getLiveMats() {
+        return NativeMemory.liveMats();
+    }
+
+    @Override
+    public long getLiveMatBytes() {
+        return NativeMemory.liveBytes();
+    }
+
+    @Override
+    public long getAllocatedMats() {
+        return NativeMemory.allocatedMats();
+    }
+
+    @Override
+    public long getReleasedMats() {
+        return NativeMemory.releasedMats();
+    }
+
+    /**
+     * Formats a duration as minutes and seconds.
+     *
+     * @param seconds the duration in seconds, or a negative value if unknown
+     * @return the formatted duration
+     */
+    public static String formatDuration(long seconds) {
+        if (seconds < 0) {
+            return "unknown";
+        }
+        return String.format(Locale.ROOT, "%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Describes the progress of the run in one line: frames, throughput, time left, median stage latencies,
+     * queue depths and live native memory.
+     *
+     * @return the status line
+     */
+    public String statusLine() {
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%s: %d/%d frames, %.1f frames/s, ETA %s",
+                video, framesProcessed.sum(), totalFrames, getFramesPerSecond(), formatDuration(getEtaSeconds())));
+        stages.forEach((stage, histogram) -> {
+            if (histogram.count() > 0) {
+                line.append(String.format(Locale.ROOT, " | %s %.1f ms", stage.getLabel(), histogram.percentileMillis(50)));
+            }
+        });
+        if (!queues.isEmpty()) {
+            line.append(" | queues");
+            getQueueDepths().forEach((name, depth) -> line.append(' ').append(name).append('=').append(depth));
+        }
+        line.append(String.format(Locale.ROOT, " | native %d Mats %.1f MB", getLiveMats(), getLiveMatBytes() / 1e6));
+        return line.toString();
+    }
+
+    /**
+     * Describes the whole run: throughput, latency percentiles and share of the time of every stage,
+     * and the largest sampled depth of every queue.
+     *
+     * @return the report
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Pipeline report for %s: %d frames in %.1f s (%.1f frames/s)%n", video, framesProcessed.sum(),
+                getElapsedSeconds(), getFramesPerSecond()));
+        report.append(String.format(Locale.ROOT, "  %-15s %8s %9s %9s %9s %9s %9s %10s%n",
+                "stage", "count", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms", "total s"));
+        stages.forEach((stage, histogram) -> {
+            if (histogram.count() > 0) {
+                report.append(String.format(Locale.ROOT, "  %-15s %8d %9.2f %9.2f %9.2f %9.2f %9.2f %10.1f%n",
+                        stage.getLabel(), histogram.count(), histogram.meanMillis(), histogram.percentileMillis(50),
+                        histogram.percentileMillis(95), histogram.percentileMillis(99), histogram.maxMillis(),
+                        histogram.totalNanos() / 1e9));
+            }
+        });
+        if (!maxQueueDepths.isEmpty()) {
+            report.append("  max queue depths:");
+            for (String name : queues.keySet()) {
+                report.append(' ').append(name).append('=').append(maxQueueDepths.getOrDefault(name, 0));
+            }
+        }
+        return report.toString().stripTrailing();
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import java.util.Map;
+
+/**
+ * PipelineMetricsMXBean interface exposes the measurements of a video run over JMX.
+ * Latency maps are keyed by stage name and hold milliseconds.
+ */
+public interface PipelineMetricsMXBean {
+
+    /**
+     * Gets the path of the processed video.
+     *
+     * @return the video path
+     */
+    String getVideo();
+
+    /**
+     * Gets the number of frames written so far.
+     *
+     * @return the number of processed frames
+     */
+    long getFramesProcessed();
+
+    /**
+     * Gets the number of frames reported by the video.
+     *
+     * @return the number of frames, or 0 if unknown
+     */
+    long getTotalFrames();
+
+    /**
+     * Gets the measured throughput since the start of the run.
+     *
+     * @return the frames per second
+     */
+    double getFramesPerSecond();
+
+    /**
+     * Gets the estimated time left, from the measured throughput and the frame count.
+     *
+     * @return the time left in seconds, or -1 if unknown
+     */
+    long getEtaSeconds();
+
+    /**
+     * Gets the mean latency of every stage.
+     *
+     * @return the mean latencies in milliseconds
+     */
+    Map<String, Double> getStageMeanMillis();
+
+    /**
+     * Gets the median latency of every stage.
+     *
+     * @return the median latencies in milliseconds
+     */
+    Map<String, Double> getStageP50Millis();
+
+    /**
+     * Gets the 99th percentile latency of every stage.
+     *
+     * @return the 99th percentile latencies in milliseconds
+     */
+    Map<String, Double> getStageP99Millis();
+
+    /**
+     * Gets the current number of frames waiting in every queue.
+     *
+     * @return the queue depths
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * Gets the number of tracked OpenCV Mats that are not released yet, over all runs.
+     *
+     * @return the number of live Mats
+     */
+    int getLiveMats();
+
+    /**
+     * Gets the native memory held by the pixels of the live Mats.
+     *
+     * @return the number of bytes
+     */
+    long getLiveMatBytes();
+
+    /**
+     * Gets the number of Mats tracked since the start of the program.
+     *
+     * @return the number of tracked Mats
+     */
+    long getAllocatedMats();
+
+    /**
+     * Gets the number of tracked Mats released since the start of the program.
+     *
+     * @return the number of released Mats
+     */
+    long getReleasedMats();
+}
@@ -0,0 +1,41 @@
+package org.example;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * PreviewFrame class is responsible for holding an annotated frame scaled to the display size,
+ * kept in memory by the live preview so the result can be played without decoding it again.
+ */
+public class PreviewFrame {
+    private final BufferedImage image; // Annotated frame at the display size
+    private final long timestampMillis; // Position of the frame in the video, in milliseconds
+
+    /**
+     * Creates a preview frame.
+     *
+     * @param image           annotated frame at the display size
+     * @param timestampMillis position of the frame in the video, in milliseconds
+     */
+    public PreviewFrame(BufferedImage image, long timestampMillis) {
+        this.image = image;
+        this.timestampMillis = timestampMillis;
+    }
+
+    /**
+     * Gets the annotated frame.
+     *
+     * @return the frame image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Gets the position of the frame in the video.
+     *
+     * @return the timestamp in milliseconds
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+}
@@ -0,0 +1,33 @@
+package org.example;
+
+/**
+ * ProcessingListener interface is implemented by the classes that follow the processing of a video.
+ * Methods may be called from processing threads, so implementations must be thread-safe and return quickly.
+ */
+public interface ProcessingListener {
+
+    /**
+     * Called when the percentage of processed frames increases.
+     *
+     * @param percentage the percentage of processed frames
+     */
+    default void progressChanged(int percentage) {
+    }
+
+    /**
+     * Called after a frame is highlighted and written. The frame is released after this method returns.
+     *
+     * @param frame        the processed frame
+     * @param latencyNanos time between decoding and writing the frame, in nanoseconds
+     */
+    default void frameProcessed(VideoFrame frame, long latencyNanos) {
+    }
+
+    /**
+     * Called every second with the measurements of the run, such as the throughput and the time left.
+     *
+     * @param metrics the measurements of the run
+     */
+    default void metricsUpdated(PipelineMetrics metrics) {
+    }
+}
@@ -0,0 +1,52 @@
+package org.example;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * RawFrameSource class is responsible for reading packed BGR frames of a known size from a stream, such as the
+ * output of "ffmpeg -f rawvideo -pix_fmt bgr24 -" piped to the standard input or written to a named pipe.
+ */
+public class RawFrameSource implements FrameSource {
+    private final InputStream input; // Stream of frames, each width * height * 3 bytes
+    private final int width;
+    private final int height;
+    private final byte[] buffer; // Pixels of the frame being read
+
+    /**
+     * Creates a source of raw BGR frames.
+     *
+     * @param input  the stream of frames
+     * @param width  width of the frames
+     * @param height height of the frames
+     */
+    public RawFrameSource(InputStream input, int width, int height) {
+        this.input = input;
+        this.width = width;
+        this.height = height;
+        this.buffer = new byte[Math.multiplyExact(Math.multiplyExact(width, height), 3)];
+    }
+
+    @Override
+    public boolean read(Mat frame) throws IOException {
+        int read = input.readNBytes(buffer, 0, buffer.length);
+        if (read == 0) {
+            return false;
+        }
+        if (read < buffer.length) {
+            throw new EOFException("Stream ended inside a frame (" + read + " of " + buffer.length + " bytes)");
+        }
+        frame.create(height, width, CvType.CV_8UC3);
+        frame.put(0, 0, buffer);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,462 @@
+package org.example;
+
+import org.opencv.core.Rect;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RegionMask class is responsible for holding the parts of the frame where the traffic signs of a source can
+ * appear, so the detection skips the hood, the dashboard and the road. The masks are read from the properties
+ * file named by the "roi.config" property (roi.properties by default); masking is enabled when the file exists.
+ * Each mask has a name and three keys:
+ * <pre>
+ * # Parts of the input path, or camera:&lt;index&gt;, selecting the mask (a mask named default matches any source)
+ * dashcam.match=phone videos/, camera:0
+ * # Rectangles rect(x,y,width,height) and polygons poly(x y, x y, ...), in fractions of the frame size
+ * dashcam.regions=rect(0,0,1,0.5); poly(0.6 0, 1 0, 1 0.8, 0.75 0.6)
+ * # Shrink the searched area to where the signs were found (false by default)
+ * dashcam.adaptive=true
+ * </pre>
+ * The searched area is the bounding rectangle of every shape, and a detection is kept only if its center lies
+ * inside a shape. When the mask is adaptive, the detections are counted in a coarse heat map of the frame;
+ * once "roi.learnDetections" detections (50 by default) are counted, only the hot cells of the shapes and their
+ * neighbors are searched, except on every "roi.exploreEvery"-th frame (30 by default), which searches the whole
+ * mask so new places are learned.
+ * <p>
+ * The mask of the input being processed is the current mask of the thread; it is inherited by the threads the
+ * processing starts and carried by the jobs of the DetectorPool, and MaskedDetector applies it.
+ */
+public class RegionMask {
+    private static final String DEFAULT_FILE = "roi.properties"; // Mask file read when present
+    private static final String DEFAULT_MASK = "default"; // Mask used for the sources no other mask matches
+    private static final int GRID_COLUMNS = 32; // Columns of the heat map
+    private static final int GRID_ROWS = 18; // Rows of the heat map
+    private static final int MIN_HITS = 2; // Detections needed for a heat map cell to be searched
+    private static final InheritableThreadLocal<RegionMask> current = new InheritableThreadLocal<>();
+    private static Map<String, RegionMask> masks; // Masks of the config file by name, loaded on first use
+
+    private final String name; // Name of the mask in the config file
+    private final List<String> matches; // Parts of the source names selecting the mask
+    private final List<double[]> polygons = new ArrayList<>(); // Shapes as x0, y0, x1, y1, ... in frame fractions
+    private final boolean adaptive; // True to search only where the signs were found
+    private final int learnDetections; // Detections counted before the searched area adapts
+    private final int exploreEvery; // Frames between two searches of the whole mask
+    private final int[] heat = new int[GRID_COLUMNS * GRID_ROWS]; // Detections per cell, guarded by this
+    private int heatCount = 0; // Detections counted in the heat map, guarded by this
+    private double[] hotCells = null; // Searched cells as x, y, width, height fractions, or null until learned
+    private final AtomicLong frames = new AtomicLong(); // Frames searched with this mask
+
+    /**
+     * Creates a mask.
+     *
+     * @param name     name of the mask
+     * @param matches  parts of the source names selecting the mask
+     * @param regions  the shapes, as in the config file
+     * @param adaptive true to search only where the signs were found
+     * @throws IllegalArgumentException if a shape is not valid
+     */
+    public RegionMask(String name, List<String> matches, String regions, boolean adaptive) {
+        this.name = name;
+        this.matches = matches;
+        this.adaptive = adaptive;
+        this.learnDetections = Math.max(1, Integer.getInteger("roi.learnDetections", 50));
+        this.exploreEvery = Math.max(1, Integer.getInteger("roi.exploreEvery", 30));
+        for (String shape : regions.split(";")) {
+            shape = shape.strip();
+            if (!shape.isEmpty()) {
+                polygons.add(parseShape(shape));
+            }
+        }
+        if (polygons.isEmpty()) {
+            throw new IllegalArgumentException("Mask " + name + " has no region");
+        }
+    }
+
+    /**
+     * Parses a rectangle or a polygon into the corners of a polygon.
+     *
+     * @param shape rect(x,y,width,height) or poly(x y, x y, ...)
+     * @return the corners as x0, y0, x1, y1, ...
+     * @throws IllegalArgumentException if the shape is not valid
+     */
+    private double[] parseShape(String shape) {
+        String lower = shape.toLowerCase(Locale.ROOT);
+        if (!lower.endsWith(")") || !(lower.startsWith("rect(") || lower.startsWith("poly("))) {
+            throw new IllegalArgumentException("Mask " + name + ": expected rect(...) or poly(...), got " + shape);
+        }
+        String[] values = shape.substring(5, shape.length() - 1).trim().split("\\s*[, ]\\s*");
+        double[] numbers = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            numbers[i] = Double.parseDouble(values[i]);
+            if (numbers[i] < 0 || numbers[i] > 1) {
+                throw new IllegalArgumentException("Mask " + name + ": coordinates are fractions of the frame, got " + values[i]);
+            }
+        }
+        if (lower.startsWith("rect(")) {
+            if (numbers.length != 4) {
+                throw new IllegalArgumentException("Mask " + name + ": rect needs x,y,width,height, got " + shape);
+            }
+            double x2 = Math.min(1, numbers[0] + numbers[2]);
+            double y2 = Math.min(1, numbers[1] + numbers[3]);
+            return new double[]{numbers[0], numbers[1], x2, numbers[1], x2, y2, numbers[0], y2};
+        }
+        if (numbers.length < 6 || numbers.length % 2 != 0) {
+            throw new IllegalArgumentException("Mask " + name + ": poly needs at least three x y corners, got " + shape);
+        }
+        return numbers;
+    }
+
+    /**
+     * Checks if masking is enabled, which is when the mask file exists.
+     *
+     * @return true if masking is enabled
+     */
+    public static boolean isEnabled() {
+        return Files.isRegularFile(configPath());
+    }
+
+    /**
+     * Gets the path of the mask file, from the "roi.config" property.
+     *
+     * @return the path of the mask file
+     */
+    public static Path configPath() {
+        return Paths.get(System.getProperty("roi.config", DEFAULT_FILE));
+    }
+
+    /**
+     * Gets the masks of the config file, loading them on first use. An invalid file gives no mask.
+     *
+     * @return the masks by name
+     */
+    private static synchronized Map<String, RegionMask> masks() {
+        if (masks == null) {
+            masks = new LinkedHashMap<>();
+            Path file = configPath();
+            if (Files.isRegularFile(file)) {
+                try {
+                    masks = load(file);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.out.println("\nCould not load region masks " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Loads the masks of a properties file.
+     *
+     * @param file the properties file
+     * @return the masks by name, in the order of their names
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a mask is not valid
+     */
+    public static Map<String, RegionMask> load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        Map<String, RegionMask> loaded = new LinkedHashMap<>();
+        properties.stringPropertyNames().stream().sorted()
+                .filter(key -> key.endsWith(".regions"))
+                .forEach(key -> {
+                    String name = key.substring(0, key.length() - ".regions".length());
+                    List<String> matches = new ArrayList<>();
+                    for (String match : properties.getProperty(name + ".match", "").split(",")) {
+                        if (!match.isBlank()) {
+                            matches.add(normalize(match.strip()));
+                        }
+                    }
+                    boolean adaptive = Boolean.parseBoolean(properties.getProperty(name + ".adaptive", "false"));
+                    loaded.put(name, new RegionMask(name, matches, properties.getProperty(key), adaptive));
+                });
+        return loaded;
+    }
+
+    /**
+     * Normalizes a source name, so paths match whatever their separators.
+     *
+     * @param source the source name
+     * @return the normalized name
+     */
+    private static String normalize(String source) {
+        return source.replace('\\', '/').toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets the mask of a source: the first mask whose match is part of the source name, or the default mask.
+     *
+     * @param source path of the input, or camera:&lt;index&gt;
+     * @return the mask, or null if masking is disabled or no mask matches
+     */
+    public static RegionMask forSource(String source) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String normalized = normalize(source);
+        if (!normalized.startsWith("camera:")) {
+            try {
+                normalized = normalize(Paths.get(source).toAbsolutePath().normalize().toString());
+            } catch (InvalidPathException e) {
+                // Stream URLs are matched as they are
+            }
+        }
+        Map<String, RegionMask> loaded = masks();
+        for (RegionMask mask : loaded.values()) {
+            for (String match : mask.matches) {
+                if (normalized.contains(match)) {
+                    return mask;
+                }
+            }
+        }
+        return loaded.get(DEFAULT_MASK);
+    }
+
+    /**
+     * Makes the mask of a source the current mask of the thread and of the threads it starts.
+     *
+     * @param source path of the input, or camera:&lt;index&gt;
+     * @return the previous current mask, to be restored with setCurrent
+     */
+    public static RegionMask select(String source) {
+        RegionMask previous = current.get();
+        current.set(forSource(source));
+        return previous;
+    }
+
+    /**
+     * Gets the current mask of the thread.
+     *
+     * @return the mask, or null to search the whole frame
+     */
+    public static RegionMask current() {
+        return current.get();
+    }
+
+    /**
+     * Sets the current mask of the thread.
+     *
+     * @param mask the mask, or null to search the whole frame
+     */
+    public static void setCurrent(RegionMask mask) {
+        current.set(mask);
+    }
+
+    /**
+     * Gets the name of the mask in the config file.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks if the searched area adapts to where the signs were found, so the detections depend on the
+     * inputs processed before.
+     *
+     * @return true if the mask is adaptive
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Gets the rectangles to search in a frame, without overlaps. Called once per frame.
+     *
+     * @param width  width of the frame
+     * @param height height of the frame
+     * @return the regions, in frame coordinates
+     */
+    public List<Rect> regionsIn(int width, int height) {
+        long frame = frames.getAndIncrement();
+        double[] hot;
+        synchronized (this) {
+            hot = hotCells;
+        }
+        List<Rect> regions = new ArrayList<>();
+        for (double[] polygon : polygons) {
+            Rect bounds = toFrame(boundsOf(polygon), width, height);
+            if (hot == null || frame % exploreEvery == 0) {
+                regions.add(bounds);
+                continue;
+            }
+            // Only the hot parts of the shape are searched
+            for (int i = 0; i < hot.length; i += 4) {
+                Rect cell = intersection(bounds, toFrame(new double[]{hot[i], hot[i + 1], hot[i + 2], hot[i + 3]}, width, height));
+                if (cell != null) {
+                    regions.add(cell);
+                }
+            }
+        }
+        regions.removeIf(region -> region.width <= 0 || region.height <= 0);
+        return Regions.mergeOverlapping(regions);
+    }
+
+    /**
+     * Checks if a detection lies inside the mask, which is when its center lies inside a shape.
+     *
+     * @param detection the detection
+     * @param width     width of the frame
+     * @param height    height of the frame
+     * @return true if the detection is kept
+     */
+    public boolean contains(Detection detection, int width, int height) {
+        Rect rect = detection.getRect();
+        double x = (rect.x + rect.width / 2.0) / width;
+        double y = (rect.y + rect.height / 2.0) / height;
+        for (double[] polygon : polygons) {
+            if (inside(polygon, x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts detections in the heat map of an adaptive mask, and updates the searched cells.
+     *
+     * @param detections the detections kept in the frame
+     * @param width      width of the frame
+     * @param height     height of the frame
+     */
+    public void record(List<Detection> detections, int width, int height) {
+        if (!adaptive || detections.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Detection detection : detections) {
+                Rect rect = detection.getRect();
+                int column1 = Math.max(0, rect.x * GRID_COLUMNS / width);
+                int row1 = Math.max(0, rect.y * GRID_ROWS / height);
+                int column2 = Math.min(GRID_COLUMNS - 1, (rect.x + rect.width - 1) * GRID_COLUMNS / width);
+                int row2 = Math.min(GRID_ROWS - 1, (rect.y + rect.height - 1) * GRID_ROWS / height);
+                for (int row = row1; row <= row2; row++) {
+                    for (int column = column1; column <= column2; column++) {
+                        heat[row * GRID_COLUMNS + column]++;
+                    }
+                }
+                heatCount++;
+            }
+            if (heatCount >= learnDetections) {
+                hotCells = findHotCells();
+            }
+        }
+    }
+
+    /**
+     * Finds the cells of the heat map with enough detections, grown by one cell and merged into rectangles.
+     *
+     * @return the rectangles as x, y, width, height fractions of the frame
+     */
+    private double[] findHotCells() {
+        List<Rect> cells = new ArrayList<>();
+        for (int row = 0; row < GRID_ROWS; row++) {
+            for (int column = 0; column < GRID_COLUMNS; column++) {
+                if (heat[row * GRID_COLUMNS + column] >= MIN_HITS) {
+                    // A sign a little away from the places seen so far is still found
+                    cells.add(Regions.pad(new Rect(column, row, 1, 1), 1, GRID_COLUMNS, GRID_ROWS));
+                }
+            }
+        }
+        List<Rect> merged = Regions.mergeOverlapping(cells);
+        double[] fractions = new double[merged.size() * 4];
+        for (int i = 0; i < merged.size(); i++) {
+            Rect cell = merged.get(i);
+            fractions[4 * i] = (double) cell.x / GRID_COLUMNS;
+            fractions[4 * i + 1] = (double) cell.y / GRID_ROWS;
+            fractions[4 * i + 2] = (double) cell.width / GRID_COLUMNS;
+            fractions[4 * i + 3] = (double) cell.height / GRID_ROWS;
+        }
+        return fractions;
+    }
+
+    /**
+     * Gets the bounding rectangle of a polygon.
+     *
+     * @param polygon the corners as x0, y0, x1, y1, ...
+     * @return the rectangle as x, y, width, height fractions of the frame
+     */
+    private static double[] boundsOf(double[] polygon) {
+        double x1 = 1;
+        double y1 = 1;
+        double x2 = 0;
+        double y2 = 0;
+        for (int i = 0; i < polygon.length; i += 2) {
+            x1 = Math.min(x1, polygon[i]);
+            y1 = Math.min(y1, polygon[i + 1]);
+            x2 = Math.max(x2, polygon[i]);
+            y2 = Math.max(y2, polygon[i + 1]);
+        }
+        return new double[]{x1, y1, x2 - x1, y2 - y1};
+    }
+
+    /**
+     * Converts a rectangle in fractions of the frame to pixels, rounding outwards.
+     *
+     * @param fractions the rectangle as x, y, width, height fractions
+     * @param width     width of the frame
+     * @param height    height of the frame
+     * @return the rectangle in pixels, inside the frame
+     */
+    private static Rect toFrame(double[] fractions, int width, int height) {
+        int x1 = (int) Math.floor(fractions[0] * width);
+        int y1 = (int) Math.floor(fractions[1] * height);
+        int x2 = Math.min(width, (int) Math.ceil((fractions[0] + fractions[2]) * width));
+        int y2 = Math.min(height, (int) Math.ceil((fractions[1] + fractions[3]) * height));
+        return new Rect(x1, y1, Math.max(0, x2 - x1), Math.max(0, y2 - y1));
+    }
+
+    /**
+     * Gets the intersection of two rectangles.
+     *
+     * @param a the first rectangle
+     * @param b the second rectangle
+     * @return the intersection, or null if they do not overlap
+     */
+    private static Rect intersection(Rect a, Rect b) {
+        if (!Regions.overlap(a, b)) {
+            return null;
+        }
+        int x1 = Math.max(a.x, b.x);
+        int y1 = Math.max(a.y, b.y);
+        return new Rect(x1, y1, Math.min(a.x + a.width, b.x + b.width) - x1, Math.min(a.y + a.height, b.y + b.height) - y1);
+    }
+
+    /**
+     * Checks if a point lies inside a polygon, by counting the edges crossed by a horizontal ray.
+     *
+     * @param polygon the corners as x0, y0, x1, y1, ...
+     * @param x       horizontal position of the point
+     * @param y       vertical position of the point
+     * @return true if the point is inside
+     */
+    private static boolean inside(double[] polygon, double x, double y) {
+        boolean inside = false;
+        int corners = polygon.length / 2;
+        for (int i = 0, j = corners - 1; i < corners; j = i++) {
+            double xi = polygon[2 * i];
+            double yi = polygon[2 * i + 1];
+            double xj = polygon[2 * j];
+            double yj = polygon[2 * j + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
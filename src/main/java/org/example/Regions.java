@@ -0,0 +1,198 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Regions class is responsible for running detection on parts of a frame and mapping the results back.
+ */
+public class Regions {
+
+    /**
+     * Detects traffic signs inside regions of a frame and maps the boxes back to frame coordinates.
+     *
+     * @param detector the detector owned by the calling thread
+     * @param image    Mat object representing the frame
+     * @param regions  the regions to search, inside the frame
+     * @return the detected traffic signs in frame coordinates
+     */
+    public static List<Detection> detectInRegions(FrameDetector detector, Mat image, List<Rect> regions) {
+        List<Detection> detections = new ArrayList<>();
+        for (Rect region : regions) {
+            // A submat shares the pixels of the frame, so nothing is copied
+            Mat roi = image.submat(region);
+            for (Detection detection : detector.detect(roi)) {
+                detections.add(offset(detection, region.x, region.y));
+            }
+            roi.release();
+        }
+        return detections;
+    }
+
+    /**
+     * Moves a detection by an offset.
+     *
+     * @param detection the detection
+     * @param dx        horizontal offset
+     * @param dy        vertical offset
+     * @return the moved detection
+     */
+    public static Detection offset(Detection detection, int dx, int dy) {
+        Rect rect = detection.getRect();
+        return new Detection(detection.getLabel(), new Rect(rect.x + dx, rect.y + dy, rect.width, rect.height), detection.getTrackId());
+    }
+
+    /**
+     * Grows a rectangle on every side and clips it to the frame.
+     *
+     * @param rect   the rectangle
+     * @param pad    number of pixels added on every side
+     * @param width  width of the frame
+     * @param height height of the frame
+     * @return the padded rectangle
+     */
+    public static Rect pad(Rect rect, int pad, int width, int height) {
+        int x1 = Math.max(0, rect.x - pad);
+        int y1 = Math.max(0, rect.y - pad);
+        int x2 = Math.min(width, rect.x + rect.width + pad);
+        int y2 = Math.min(height, rect.y + rect.height + pad);
+        return new Rect(x1, y1, Math.max(0, x2 - x1), Math.max(0, y2 - y1));
+    }
+
+    /**
+     * Merges overlapping rectangles until no two rectangles overlap, so no pixel is searched twice.
+     *
+     * @param rects the rectangles
+     * @return the merged rectangles
+     */
+    public static List<Rect> mergeOverlapping(List<Rect> rects) {
+        List<Rect> merged = new ArrayList<>(rects);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < merged.size() && !changed; i++) {
+                for (int j = i + 1; j < merged.size(); j++) {
+                    if (overlap(merged.get(i), merged.get(j))) {
+                        merged.set(i, union(merged.get(i), merged.get(j)));
+                        merged.remove(j);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Checks if two rectangles overlap.
+     *
+     * @param a the first rectangle
+     * @param b the second rectangle
+     * @return true if they share at least one pixel
+     */
+    public static boolean overlap(Rect a, Rect b) {
+        return a.x < b.x + b.width && b.x < a.x + a.width && a.y < b.y + b.height && b.y < a.y + a.height;
+    }
+
+    /**
+     * Gets the smallest rectangle containing two rectangles.
+     *
+     * @param a the first rectangle
+     * @param b the second rectangle
+     * @return the union rectangle
+     */
+    public static Rect union(Rect a, Rect b) {
+        int x1 = Math.min(a.x, b.x);
+        int y1 = Math.min(a.y, b.y);
+        int x2 = Math.max(a.x + a.width, b.x + b.width);
+        int y2 = Math.max(a.y + a.height, b.y + b.height);
+        return new Rect(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Gets the intersection over union of two rectangles.
+     *
+     * @param a the first rectangle
+     * @param b the second rectangle
+     * @return the overlap ratio, between 0 and 1
+     */
+    public static double intersectionOverUnion(Rect a, Rect b) {
+        int x1 = Math.max(a.x, b.x);
+        int y1 = Math.max(a.y, b.y);
+        int x2 = Math.min(a.x + a.width, b.x + b.width);
+        int y2 = Math.min(a.y + a.height, b.y + b.height);
+        if (x2 <= x1 || y2 <= y1) {
+            return 0;
+        }
+        double intersection = (double) (x2 - x1) * (y2 - y1);
+        return intersection / ((double) a.width * a.height + (double) b.width * b.height - intersection);
+    }
+
+    /**
+     * Removes duplicate detections of the same traffic sign with non-maximum suppression.
+     * The cascades give no score, so larger boxes are kept first; a box is dropped when it has the same
+     * label as a kept box and either overlaps it more than the threshold or lies mostly inside it.
+     *
+     * @param detections the detections, possibly with duplicates
+     * @param threshold  intersection over union above which two boxes are duplicates
+     * @return the detections without duplicates
+     */
+    public static List<Detection> suppressOverlaps(List<Detection> detections, double threshold) {
+        List<Detection> sorted = new ArrayList<>(detections);
+        sorted.sort(Comparator.comparingDouble((Detection detection) -> detection.getRect().area()).reversed());
+
+        List<Detection> kept = new ArrayList<>();
+        for (Detection candidate : sorted) {
+            boolean duplicate = false;
+            for (Detection detection : kept) {
+                if (detection.getLabel().equals(candidate.getLabel())
+                        && (intersectionOverUnion(detection.getRect(), candidate.getRect()) > threshold
+                        || containment(candidate.getRect(), detection.getRect()) > 0.7)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                kept.add(candidate);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Gets the share of a rectangle that lies inside another one.
+     *
+     * @param inner the rectangle that may be inside
+     * @param outer the other rectangle
+     * @return the share of the inner rectangle area, between 0 and 1
+     */
+    public static double containment(Rect inner, Rect outer) {
+        int x1 = Math.max(inner.x, outer.x);
+        int y1 = Math.max(inner.y, outer.y);
+        int x2 = Math.min(inner.x + inner.width, outer.x + outer.width);
+        int y2 = Math.min(inner.y + inner.height, outer.y + outer.height);
+        if (x2 <= x1 || y2 <= y1 || inner.width == 0 || inner.height == 0) {
+            return 0;
+        }
+        return (double) (x2 - x1) * (y2 - y1) / ((double) inner.width * inner.height);
+    }
+
+    /**
+     * Gets the total area of rectangles that do not overlap.
+     *
+     * @param rects the rectangles
+     * @return the area in pixels
+     */
+    public static long area(List<Rect> rects) {
+        long area = 0;
+        for (Rect rect : rects) {
+            area += (long) rect.width * rect.height;
+        }
+        return area;
+    }
+}
@@ -0,0 +1,379 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * ResultCache class is responsible for not processing the same input twice with the same parameters.
+ * Results are stored on disk under a key made of a SHA-256 hash of the input file content and of the
+ * detection parameters (cascades, detection config and the modes that change the detections). Each entry is
+ * a directory holding the result files, such as the rendered image or video and the detection log.
+ * The cache is enabled by the "cache.maxMB" property, which bounds its size (0 by default, disabled), and
+ * evicts the least recently used entries; it is stored in the folder named by the "cache.dir" property
+ * (.cache/results in the working directory by default).
+ */
+public class ResultCache {
+    private static final String DEFAULT_DIR = ".cache/results"; // Folder of the cache when none is configured
+    private static final int BUFFER_SIZE = 1 << 20; // Bytes hashed at a time
+    private static final LongAdder hits = new LongAdder(); // Lookups that found a result
+    private static final LongAdder misses = new LongAdder(); // Lookups that found nothing
+    private static ResultCache defaultCache; // Cache configured by the system properties
+
+    private final Path directory; // Folder of the cache entries
+    private final long maxBytes; // Size above which entries are evicted
+    // Content hashes already computed, keyed by path, size and modification time
+    private final Map<String, String> contentHashes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a result cache.
+     *
+     * @param directory folder of the cache entries, created if missing
+     * @param maxBytes  size above which the least recently used entries are evicted
+     */
+    public ResultCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the cache configured by the "cache.dir" and "cache.maxMB" properties.
+     *
+     * @return the cache, or null if it is disabled
+     */
+    public static synchronized ResultCache getDefault() {
+        long maxMegabytes = Long.getLong("cache.maxMB", 0);
+        if (maxMegabytes <= 0) {
+            return null;
+        }
+        if (defaultCache == null) {
+            defaultCache = new ResultCache(Paths.get(System.getProperty("cache.dir", DEFAULT_DIR)), maxMegabytes << 20);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Computes the cache key of an input processed with the current detection parameters.
+     *
+     * @param input the image or video
+     * @param kind  kind of result, such as "image" or "video"
+     * @return the cache key
+     * @throws IOException if the input cannot be read
+     */
+    public String key(Path input, String kind) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(contentHash(input).getBytes(StandardCharsets.UTF_8));
+        digest.update((kind + '\n' + parameters() + regionMask(input)).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Describes the parameters that change the detections, so a change of any of them misses the cache.
+     *
+     * @return the description of the parameters
+     * @throws IOException if a cascade file cannot be read
+     */
+    private static String parameters() throws IOException {
+        StringBuilder parameters = new StringBuilder();
+        String cascades = System.getProperty("detector.cascades");
+        parameters.append("cascades=").append(cascades).append('\n');
+        // A retrained cascade must not reuse the old results
+        List<String> cascadePaths = new ArrayList<>();
+        if (cascades == null) {
+            cascadePaths.add(TrafficSignDetector.cascadePathOf(TrafficSignDetector.getDetectionConfig()));
+        } else {
+            cascadePaths.addAll(EnsembleDetector.parseCascades(cascades).values());
+        }
+        for (String cascadePath : cascadePaths) {
+            Path path = Paths.get(cascadePath);
+            if (Files.isRegularFile(path)) {
+                parameters.append(cascadePath).append(' ').append(Files.size(path)).append(' ')
+                        .append(Files.getLastModifiedTime(path).toMillis()).append('\n');
+            }
+        }
+        parameters.append(TrafficSignDetector.getDetectionConfig()).append('\n');
+        for (String property : new String[]{"detector.prefilter", "detector.tiled", "tracker.interval",
+                "tracker.method", "tracker.confidence", "motion.threshold", "motion.maxSkip", "detections.only",
+                "detections.format", "video.output", "video.outputWidth"}) {
+            parameters.append(property).append('=').append(System.getProperty(property)).append('\n');
+        }
+        return parameters.toString();
+    }
+
+    /**
+     * Describes the region mask of an input, so the same file in folders with different masks, or an edited
+     * mask file, misses the cache. The inputs with an adaptive mask are not cached, since their detections
+     * depend on the inputs processed before.
+     *
+     * @param input the image or video
+     * @return the description of the mask, empty if the input is not masked
+     * @throws IOException if the mask file cannot be read
+     */
+    private static String regionMask(Path input) throws IOException {
+        RegionMask mask = RegionMask.forSource(input.toString());
+        if (mask == null) {
+            return "";
+        }
+        Path config = RegionMask.configPath();
+        return "roi=" + mask.getName() + ' ' + Files.size(config) + ' ' + Files.getLastModifiedTime(config).toMillis() + '\n';
+    }
+
+    /**
+     * Hashes the content of a file, reusing the hash while the file size and modification time do not change.
+     *
+     * @param input the file
+     * @return the hexadecimal SHA-256 hash of the content
+     * @throws IOException if the file cannot be read
+     */
+    private String contentHash(Path input) throws IOException {
+        String fileKey = input.toAbsolutePath() + "|" + Files.size(input) + "|" + Files.getLastModifiedTime(input).toMillis();
+        String hash = contentHashes.get(fileKey);
+        if (hash == null) {
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream stream = Files.newInputStream(input)) {
+                int read;
+                while ((read = stream.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            hash = HexFormat.of().formatHex(digest.digest());
+            contentHashes.put(fileKey, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Creates a SHA-256 digest.
+     *
+     * @return the digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Looks up the entry of a key and marks it as recently used. Counts a hit or a miss.
+     *
+     * @param key           the cache key
+     * @param requiredFiles names of the files the entry must hold to be used
+     * @return the folder of the entry, or null if the key is not cached with the required files
+     */
+    public Path lookup(String key, String... requiredFiles) {
+        Path entry = directory.resolve(key);
+        boolean found = Files.isDirectory(entry);
+        for (String requiredFile : requiredFiles) {
+            found = found && Files.isRegularFile(entry.resolve(requiredFile));
+        }
+        if (!found) {
+            misses.increment();
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // The entry was evicted by another thread
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    /**
+     * Checks if the rendered results are stored in the cache, as set by the "cache.render" property.
+     * Without them a hit only skips the detection and the result is drawn again.
+     *
+     * @return true if the rendered results are stored
+     */
+    public static boolean storesRenderedResults() {
+        return Boolean.parseBoolean(System.getProperty("cache.render", "true"));
+    }
+
+    /**
+     * Checks if a key is cached, without counting a hit or a miss.
+     *
+     * @param key the cache key
+     * @return true if the key is cached
+     */
+    public boolean contains(String key) {
+        return Files.isDirectory(directory.resolve(key));
+    }
+
+    /**
+     * Stores the result files of a key, replacing any previous entry, then evicts the least recently used
+     * entries above the size limit. Missing files are skipped.
+     *
+     * @param key   the cache key
+     * @param files the files to store, keyed by their name in the entry
+     */
+    public void store(String key, Map<String, Path> files) {
+        Path entry = directory.resolve(key);
+        Path staging = directory.resolve(key + ".tmp" + Thread.currentThread().getId());
+        try {
+            Files.createDirectories(staging);
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                if (file.getValue() != null && Files.isRegularFile(file.getValue())) {
+                    Files.copy(file.getValue(), staging.resolve(file.getKey()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            deleteEntry(entry);
+            // Readers never see a partially written entry
+            Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("\nCould not store result in cache: " + e.getMessage());
+            deleteEntry(staging);
+            return;
+        }
+        evict();
+    }
+
+    /**
+     * Copies a file of a cached entry to its destination.
+     *
+     * @param entry       the folder of the entry
+     * @param name        the name of the file in the entry
+     * @param destination the destination of the file
+     * @return true if the file was copied
+     */
+    public static boolean restore(Path entry, String name, Path destination) {
+        Path source = entry.resolve(name);
+        if (!Files.isRegularFile(source)) {
+            return false;
+        }
+        try {
+            Path parent = destination.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            System.out.println("\nCould not restore cached result: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits its size limit.
+     */
+    private synchronized void evict() {
+        List<Path> entries = new ArrayList<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+        try (Stream<Path> stream = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) stream::iterator) {
+                if (Files.isDirectory(entry) && !entry.getFileName().toString().contains(".tmp")) {
+                    long size = sizeOf(entry);
+                    entries.add(entry);
+                    sizes.put(entry, size);
+                    total += size;
+                }
+            }
+        } catch (IOException e) {
+            return;
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(ResultCache::lastUsed));
+        for (Path entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            deleteEntry(entry);
+            total -= sizes.get(entry);
+        }
+    }
+
+    /**
+     * Gets the last time an entry was used.
+     *
+     * @param entry the folder of the entry
+     * @return the time in milliseconds, or 0 if unknown
+     */
+    private static long lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the size of the files of an entry.
+     *
+     * @param entry the folder of the entry
+     * @return the size in bytes
+     * @throws IOException if the entry cannot be listed
+     */
+    private static long sizeOf(Path entry) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.list(entry)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Deletes an entry and its files.
+     *
+     * @param entry the folder of the entry
+     */
+    private static void deleteEntry(Path entry) {
+        if (!Files.isDirectory(entry)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(entry)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(entry);
+        } catch (IOException e) {
+            System.out.println("\nCould not delete cache entry: " + entry);
+        }
+    }
+
+    /**
+     * Gets the share of lookups that found a result since the start of the program.
+     *
+     * @return the hit rate, between 0 and 1
+     */
+    public static double hitRate() {
+        long total = hits.sum() + misses.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    /**
+     * Describes the hits and misses of the cache since the start of the program.
+     *
+     * @return the report line
+     */
+    public static String report() {
+        return String.format(Locale.ROOT, "Result cache: %d hits, %d misses (%.1f%% hit rate)",
+                hits.sum(), misses.sum(), hitRate() * 100);
+    }
+}
@@ -0,0 +1,53 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ScaledDetector class is responsible for running detection on a downscaled copy of large frames.
+ * Frames wider than the detection width are resized before the wrapped detector runs, and the boxes
+ * are scaled back to frame coordinates. The cascades then scan far fewer pyramid levels.
+ */
+public class ScaledDetector implements FrameDetector {
+    private final FrameDetector detector; // Detector run on the downscaled frame
+    private final int detectionWidth; // Width of the downscaled frame
+    private final Mat scaled = new Mat(); // Reused downscaled frame
+
+    /**
+     * Creates a detector that downscales frames wider than a width.
+     *
+     * @param detector       the detector run on the downscaled frame
+     * @param detectionWidth the width of the downscaled frame
+     */
+    public ScaledDetector(FrameDetector detector, int detectionWidth) {
+        this.detector = detector;
+        this.detectionWidth = detectionWidth;
+    }
+
+    @Override
+    public List<Detection> detect(Mat image) {
+        if (image.cols() <= detectionWidth) {
+            return detector.detect(image);
+        }
+
+        double scale = (double) detectionWidth / image.cols();
+        long startNanos = System.nanoTime();
+        Imgproc.resize(image, scaled, new Size(detectionWidth, Math.round(image.rows() * scale)), 0, 0, Imgproc.INTER_AREA);
+        PipelineMetrics.addPreprocessNanos(startNanos);
+
+        // Scale the boxes back to frame coordinates
+        List<Detection> detections = new ArrayList<>();
+        for (Detection detection : detector.detect(scaled)) {
+            Rect rect = detection.getRect();
+            Rect frameRect = new Rect((int) Math.round(rect.x / scale), (int) Math.round(rect.y / scale),
+                    (int) Math.round(rect.width / scale), (int) Math.round(rect.height / scale));
+            detections.add(new Detection(detection.getLabel(), Regions.pad(frameRect, 0, image.cols(), image.rows()), detection.getTrackId()));
+        }
+        return detections;
+    }
+}
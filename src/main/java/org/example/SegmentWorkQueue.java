@@ -0,0 +1,358 @@
+package org.example;
+
+import org.opencv.core.Scalar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * SegmentWorkQueue class is responsible for sharing video segments between processes through a directory.
+ * Several local JVMs, or nodes that mount the same filesystem, can enqueue videos and process their segments.
+ * A segment is claimed by atomically moving its file from "pending" to the worker's own folder of "claimed",
+ * so only one worker gets it, and the worker that completes the last segment of a video merges the result into
+ * "results". A segment that cannot be processed is moved to "failed".
+ * <p>
+ * While a segment is processed, its worker touches the claimed file every few minutes. A claim not touched for
+ * "queue.staleMinutes" (60 by default) is assumed abandoned by a stopped worker and moved back to "pending"; if
+ * its worker was only stalled, it finds its claim gone when it ends and leaves the segment to the new owner.
+ */
+public class SegmentWorkQueue {
+    private static final String SEGMENT_SUFFIX = ".segment"; // Extension of the segment job files
+    private static final String MERGE_SUFFIX = ".merge"; // Extension of the merge lock files
+
+    private final Path pendingDir; // Segments waiting for a worker
+    private final Path claimedDir; // Segments being processed, in a folder per worker
+    private final Path doneDir; // Processed segments waiting for the merge
+    private final Path failedDir; // Segments that could not be processed
+    private final Path segmentDir; // Processed segment videos
+    private final Path resultDir; // Merged result videos
+    private final long staleMillis; // Age after which a claimed segment is considered abandoned
+    private final AtomicInteger failedSegments = new AtomicInteger(); // Segments this process could not process
+
+    /**
+     * Opens a work queue, creating its directories if needed.
+     *
+     * @param queueDir the shared directory of the queue
+     * @throws IOException if the directories cannot be created
+     */
+    public SegmentWorkQueue(Path queueDir) throws IOException {
+        pendingDir = Files.createDirectories(queueDir.resolve("pending"));
+        claimedDir = Files.createDirectories(queueDir.resolve("claimed"));
+        doneDir = Files.createDirectories(queueDir.resolve("done"));
+        failedDir = Files.createDirectories(queueDir.resolve("failed"));
+        segmentDir = Files.createDirectories(queueDir.resolve("segments"));
+        resultDir = Files.createDirectories(queueDir.resolve("results"));
+        staleMillis = Math.max(1, Long.getLong("queue.staleMinutes", 60)) * 60_000;
+    }
+
+    /**
+     * Splits a video into segments and adds them to the queue.
+     *
+     * @param videoPath    path to the video, readable by every worker
+     * @param segmentCount number of segments
+     * @return the number of segments added
+     * @throws IOException if the segment files cannot be written
+     */
+    public int enqueue(String videoPath, int segmentCount) throws IOException {
+        String absoluteVideoPath = new File(videoPath).getAbsolutePath();
+        String key = videoKey(absoluteVideoPath);
+        Path videoSegmentDir = Files.createDirectories(segmentDir.resolve(key));
+        String resultPath = resultDir.resolve(FileProcessor.maintainFormat(absoluteVideoPath)).toString();
+
+        List<VideoSegment> segments = SegmentedVideoProcessor.planSegments(absoluteVideoPath, segmentCount, videoSegmentDir.toString(), resultPath);
+        for (VideoSegment segment : segments) {
+            // Write the file elsewhere first, so workers never see a partial segment file
+            Path tempFile = Files.createTempFile(claimedDir, key, ".tmp");
+            segment.store(tempFile);
+            moveAtomically(tempFile, pendingDir.resolve(segmentFileName(key, segment.getIndex())));
+        }
+        return segments.size();
+    }
+
+    /**
+     * Claims the next pending segment for a worker.
+     *
+     * @param owner name of the worker, unique in the queue
+     * @return the claimed segment, or null if no segment is pending
+     * @throws IOException if the queue directory cannot be read
+     */
+    public VideoSegment claim(String owner) throws IOException {
+        Path ownerDir = Files.createDirectories(claimedDir.resolve(owner));
+        for (Path pendingFile : listSegmentFiles(pendingDir, "")) {
+            Path claimedFile = ownerDir.resolve(pendingFile.getFileName());
+            try {
+                moveAtomically(pendingFile, claimedFile);
+            } catch (NoSuchFileException e) {
+                // Another worker claimed it first
+                continue;
+            }
+            // A move keeps the time of the enqueue, but the age of a claim counts from now
+            Files.setLastModifiedTime(claimedFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return VideoSegment.load(claimedFile);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the claimed file of a segment.
+     *
+     * @param segment the segment
+     * @param owner   name of the worker that claimed it
+     * @return the path of the claimed file
+     */
+    private Path claimedFile(VideoSegment segment, String owner) {
+        return claimedDir.resolve(owner).resolve(segmentFileName(videoKey(segment.getVideoPath()), segment.getIndex()));
+    }
+
+    /**
+     * Touches the claimed file of a segment, so the claim is not taken for abandoned while it is processed.
+     *
+     * @param segment the segment being processed
+     * @param owner   name of the worker that claimed it
+     * @return false if the claim was taken over
+     */
+    public boolean heartbeat(VideoSegment segment, String owner) {
+        try {
+            Files.setLastModifiedTime(claimedFile(segment, owner), FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Marks a claimed segment as processed. If it was the last segment of its video,
+     * merges the segments into the result video.
+     *
+     * @param segment the processed segment
+     * @param owner   name of the worker that claimed it
+     * @return the path of the result video if this call merged it, or null otherwise
+     * @throws IOException if the queue directory cannot be updated
+     */
+    public String complete(VideoSegment segment, String owner) throws IOException {
+        String key = videoKey(segment.getVideoPath());
+        String fileName = segmentFileName(key, segment.getIndex());
+        try {
+            moveAtomically(claimedFile(segment, owner), doneDir.resolve(fileName));
+        } catch (NoSuchFileException e) {
+            // The claim was taken for abandoned and its new owner completes it
+            System.out.println("\nSegment " + segment.getIndex() + " of " + segment.getVideoPath() + " was taken over by another worker");
+            return null;
+        }
+
+        List<Path> doneFiles = listSegmentFiles(doneDir, key + ".");
+        if (doneFiles.size() < segment.getCount()) {
+            return null;
+        }
+
+        // Only the worker that creates the lock file merges the video
+        Path mergeLock = doneDir.resolve(key + MERGE_SUFFIX);
+        try {
+            Files.createFile(mergeLock);
+        } catch (FileAlreadyExistsException e) {
+            return null;
+        }
+
+        List<VideoSegment> segments = new ArrayList<>();
+        for (Path doneFile : doneFiles) {
+            segments.add(VideoSegment.load(doneFile));
+        }
+        segments.sort(Comparator.comparingInt(VideoSegment::getIndex));
+
+        boolean merged = SegmentedVideoProcessor.mergeSegments(segments, segment.getResultPath());
+        SegmentedVideoProcessor.deleteSegments(segments, segmentDir.resolve(key));
+        for (Path doneFile : doneFiles) {
+            Files.deleteIfExists(doneFile);
+        }
+        Files.deleteIfExists(mergeLock);
+        return merged ? segment.getResultPath() : null;
+    }
+
+    /**
+     * Moves a claimed segment that could not be processed to the failed directory, so it is not claimed again.
+     * Its video is not merged.
+     *
+     * @param segment the segment
+     * @param owner   name of the worker that claimed it
+     * @throws IOException if the queue directory cannot be updated
+     */
+    public void fail(VideoSegment segment, String owner) throws IOException {
+        String fileName = segmentFileName(videoKey(segment.getVideoPath()), segment.getIndex());
+        try {
+            moveAtomically(claimedFile(segment, owner), failedDir.resolve(fileName));
+            failedSegments.incrementAndGet();
+        } catch (NoSuchFileException e) {
+            // The claim was taken for abandoned: its new owner may still process it
+        }
+    }
+
+    /**
+     * Gets the number of segments this process could not process.
+     *
+     * @return the number of failed segments
+     */
+    public int getFailedSegments() {
+        return failedSegments.get();
+    }
+
+    /**
+     * Moves segments claimed by workers that stopped back to the pending directory.
+     *
+     * @param maxAgeMillis age after which a claimed segment is considered abandoned
+     * @return the number of segments moved back
+     * @throws IOException if the queue directory cannot be read
+     */
+    public int requeueStale(long maxAgeMillis) throws IOException {
+        int requeued = 0;
+        long now = System.currentTimeMillis();
+        List<Path> ownerDirs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(claimedDir, Files::isDirectory)) {
+            stream.forEach(ownerDirs::add);
+        }
+        for (Path ownerDir : ownerDirs) {
+            List<Path> claimedFiles;
+            try {
+                claimedFiles = listSegmentFiles(ownerDir, "");
+            } catch (NoSuchFileException e) {
+                // The worker ended in the meantime
+                continue;
+            }
+            for (Path claimedFile : claimedFiles) {
+                try {
+                    if (now - Files.getLastModifiedTime(claimedFile).toMillis() > maxAgeMillis) {
+                        moveAtomically(claimedFile, pendingDir.resolve(claimedFile.getFileName()));
+                        requeued++;
+                    }
+                } catch (NoSuchFileException e) {
+                    // The segment was completed in the meantime
+                }
+            }
+        }
+        return requeued;
+    }
+
+    /**
+     * Processes pending segments until the queue is empty, first moving the abandoned segments back to pending.
+     *
+     * @param detectorFactory factory that creates the detector of this worker
+     * @param color           Scalar object representing the color of the rectangles
+     * @return the number of segments processed by this worker
+     * @throws IOException if the queue directory cannot be read or updated
+     */
+    public int runWorker(Supplier<FrameDetector> detectorFactory, Scalar color) throws IOException {
+        FrameDetector detector = detectorFactory.get();
+        // Every worker claims into its own folder, so a claim taken over is never mistaken for its own
+        String owner = UUID.randomUUID().toString();
+        long heartbeatMillis = Math.max(1000, staleMillis / 4);
+        int processed = 0;
+        try {
+            while (true) {
+                requeueStale(staleMillis);
+                VideoSegment segment = claim(owner);
+                if (segment == null) {
+                    break;
+                }
+                ProcessingListener heartbeat = new ProcessingListener() {
+                    private long lastBeatMillis = System.currentTimeMillis();
+
+                    @Override
+                    public void frameProcessed(VideoFrame frame, long latencyNanos) {
+                        long now = System.currentTimeMillis();
+                        if (now - lastBeatMillis >= heartbeatMillis) {
+                            lastBeatMillis = now;
+                            heartbeat(segment, owner);
+                        }
+                    }
+                };
+                if (!SegmentedVideoProcessor.processSegment(segment, detector, color, heartbeat)) {
+                    System.out.println("\nCould not process segment " + segment.getIndex() + " of " + segment.getVideoPath());
+                    fail(segment, owner);
+                    continue;
+                }
+                processed++;
+                String resultPath = complete(segment, owner);
+                if (resultPath != null) {
+                    System.out.println("Result video saved at " + resultPath);
+                }
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(claimedDir.resolve(owner));
+            } catch (DirectoryNotEmptyException e) {
+                // A claim left by an interrupted run is requeued once stale
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * Lists the segment files of a directory whose name starts with a prefix, sorted by name.
+     *
+     * @param dir    the directory to list
+     * @param prefix the prefix of the file names
+     * @return the segment files
+     * @throws IOException if the directory cannot be read
+     */
+    private static List<Path> listSegmentFiles(Path dir, String prefix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.naturalOrder());
+        return files;
+    }
+
+    /**
+     * Moves a file atomically, falling back to a plain move on filesystems without atomic moves.
+     *
+     * @param source the file to move
+     * @param target the new location of the file
+     * @throws IOException if the file cannot be moved
+     */
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+    }
+
+    /**
+     * Gets the key of a video, made of its file name and a hash of its full path.
+     *
+     * @param videoPath the absolute path of the video
+     * @return the key of the video
+     */
+    private static String videoKey(String videoPath) {
+        String name = new File(videoPath).getName().replaceAll("[^A-Za-z0-9_-]", "_");
+        return name + "-" + Integer.toHexString(videoPath.hashCode());
+    }
+
+    /**
+     * Gets the name of the job file of a segment.
+     *
+     * @param key   the key of the video
+     * @param index the index of the segment
+     * @return the file name
+     */
+    private static String segmentFileName(String key, int index) {
+        return String.format("%s.%03d%s", key, index, SEGMENT_SUFFIX);
+    }
+}
@@ -0,0 +1,367 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * SegmentedVideoProcessor class is responsible for processing a long video as several frame ranges in parallel.
+ * Each segment seeks to its first frame with CAP_PROP_POS_FRAMES and has its own capture, detector and writer.
+ * The processed segments are then concatenated into the result video, without re-encoding when ffmpeg is available.
+ */
+public class SegmentedVideoProcessor {
+
+    /**
+     * Gets the default number of segments, read from the "video.segments" system property.
+     * A value of 1 disables segment-parallel processing.
+     *
+     * @return the default number of segments
+     */
+    public static int defaultSegmentCount() {
+        return Math.max(1, Integer.getInteger("video.segments", 1));
+    }
+
+    /**
+     * Splits a video into frame ranges of about the same length.
+     *
+     * @param videoPath    path to the video
+     * @param segmentCount number of segments
+     * @param segmentDir   directory where the processed segments are written
+     * @return the segments, or an empty list if the video cannot be opened
+     */
+    public static List<VideoSegment> planSegments(String videoPath, int segmentCount, String segmentDir) {
+        return planSegments(videoPath, segmentCount, segmentDir, FileProcessor.maintainFormat(videoPath));
+    }
+
+    /**
+     * Splits a video into frame ranges of about the same length, with the given result video path.
+     *
+     * @param videoPath    path to the video
+     * @param segmentCount number of segments
+     * @param segmentDir   directory where the processed segments are written
+     * @param resultPath   path of the result video
+     * @return the segments, or an empty list if the video cannot be opened
+     */
+    public static List<VideoSegment> planSegments(String videoPath, int segmentCount, String segmentDir, String resultPath) {
+        List<VideoSegment> segments = new ArrayList<>();
+        VideoCapture videoCapture = new VideoCapture(videoPath);
+        if (!videoCapture.isOpened()) {
+            System.out.println("\nCould not open video: " + videoPath);
+            return segments;
+        }
+        int totalFrames = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_COUNT);
+        videoCapture.release();
+
+        String extension = resultPath.substring(resultPath.lastIndexOf('.') + 1);
+
+        // Without a frame count the video cannot be split, so it becomes a single segment
+        int count = totalFrames > 0 ? Math.max(1, Math.min(segmentCount, totalFrames)) : 1;
+        for (int i = 0; i < count; i++) {
+            int startFrame = totalFrames > 0 ? (int) ((long) totalFrames * i / count) : 0;
+            int endFrame = totalFrames > 0 ? (int) ((long) totalFrames * (i + 1) / count) : Integer.MAX_VALUE;
+            String segmentPath = segmentDir + File.separator + String.format("segment_%03d.%s", i, extension);
+            segments.add(new VideoSegment(videoPath, i, count, startFrame, endFrame, segmentPath, resultPath));
+        }
+        return segments;
+    }
+
+    /**
+     * Processes a video as parallel segments and writes the result video.
+     *
+     * @param videoPath       path to the video
+     * @param resultVideoPath path of the result video
+     * @param segmentCount    number of segments processed in parallel
+     * @param detectorFactory factory that creates one detector per segment
+     * @param color           Scalar object representing the color of the rectangles
+     * @param listener        listener notified of the progress and of every processed frame
+     * @return the path of the result video, or null if the video could not be processed
+     * @throws InterruptedException if the thread is interrupted while waiting for the segments
+     */
+    public static String processVideo(String videoPath, String resultVideoPath, int segmentCount, Supplier<FrameDetector> detectorFactory,
+                                      Scalar color, ProcessingListener listener) throws InterruptedException {
+        Path segmentDir;
+        try {
+            segmentDir = Files.createTempDirectory("segments");
+        } catch (IOException e) {
+            System.out.println("\nCould not create segment directory: " + e.getMessage());
+            return null;
+        }
+
+        List<VideoSegment> segments = planSegments(videoPath, segmentCount, segmentDir.toString(), resultVideoPath);
+        if (segments.isEmpty()) {
+            return null;
+        }
+
+        // Report the progress and the measurements of all the segments together
+        long totalFrames = segments.get(segments.size() - 1).getEndFrame();
+        PipelineMetrics metrics = new PipelineMetrics(videoPath, totalFrames == Integer.MAX_VALUE ? 0 : totalFrames);
+        AtomicInteger processedFrames = new AtomicInteger();
+        AtomicInteger percentage = new AtomicInteger();
+        ProcessingListener segmentListener = new ProcessingListener() {
+            @Override
+            public void frameProcessed(VideoFrame frame, long latencyNanos) {
+                listener.frameProcessed(frame, latencyNanos);
+                metrics.frameProcessed();
+                int newPercentage = (int) (processedFrames.incrementAndGet() * 100L / totalFrames);
+                int oldPercentage = percentage.get();
+                if (newPercentage > oldPercentage && percentage.compareAndSet(oldPercentage, newPercentage)) {
+                    listener.progressChanged(newPercentage);
+                }
+            }
+        };
+
+        boolean processed = true;
+        ExecutorService executor = Executors.newFixedThreadPool(segments.size());
+        metrics.start(listener);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (VideoSegment segment : segments) {
+                tasks.add(() -> processSegment(segment, detectorFactory.get(), color, segmentListener, metrics));
+            }
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                processed &= result.get();
+            }
+        } catch (ExecutionException e) {
+            System.out.println("\nSegment processing failed: " + e.getCause().getMessage());
+            processed = false;
+        } finally {
+            executor.shutdownNow();
+            metrics.finish();
+        }
+
+        String resultPath = segments.get(0).getResultPath();
+        boolean merged = processed && mergeSegments(segments, resultPath);
+        deleteSegments(segments, segmentDir);
+        return merged ? resultPath : null;
+    }
+
+    /**
+     * Processes the frames of a segment with its own capture, detector and writer.
+     *
+     * @param segment  the segment to process
+     * @param detector detector owned by the calling thread
+     * @param color    Scalar object representing the color of the rectangles
+     * @param listener listener notified of every processed frame
+     * @return true if the segment was written
+     */
+    public static boolean processSegment(VideoSegment segment, FrameDetector detector, Scalar color, ProcessingListener listener) {
+        return processSegment(segment, detector, color, listener, null);
+    }
+
+    /**
+     * Processes the frames of a segment with its own capture, detector and writer, measuring its stages.
+     *
+     * @param segment  the segment to process
+     * @param detector detector owned by the calling thread
+     * @param color    Scalar object representing the color of the rectangles
+     * @param listener listener notified of every processed frame
+     * @param metrics  metrics receiving the latency of every stage, or null
+     * @return true if the segment was written
+     */
+    public static boolean processSegment(VideoSegment segment, FrameDetector detector, Scalar color, ProcessingListener listener,
+                                         PipelineMetrics metrics) {
+        VideoCapture videoCapture = new VideoCapture(segment.getVideoPath());
+        if (!videoCapture.isOpened()) {
+            System.out.println("\nCould not open video: " + segment.getVideoPath());
+            return false;
+        }
+
+        // Seek to the first frame of the segment
+        if (segment.getStartFrame() > 0) {
+            videoCapture.set(Videoio.CAP_PROP_POS_FRAMES, segment.getStartFrame());
+        }
+
+        int frameWidth = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH);
+        int frameHeight = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+        double frameRate = videoCapture.get(Videoio.CAP_PROP_FPS);
+
+        VideoWriter videoWriter = new VideoWriter(segment.getSegmentPath(), VideoWriter.fourcc('X', '2', '6', '4'), frameRate, new Size(frameWidth, frameHeight), true);
+        if (!videoWriter.isOpened()) {
+            System.out.println("\nCould not create video writer: " + segment.getSegmentPath());
+            videoCapture.release();
+            return false;
+        }
+
+        // Each segment has its own tracker when the detect-then-track mode is enabled
+        SignTracker tracker = SignTracker.fromProperties();
+        MotionGate motionGate = tracker == null ? MotionGate.fromProperties() : null;
+        List<Detection> lastDetections = null;
+
+        Mat frameMat = new Mat();
+        int frames = segment.getFrameCount();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < frames && videoCapture.read(frameMat); i++) {
+            if (metrics != null) {
+                metrics.record(PipelineMetrics.Stage.DECODE, System.nanoTime() - startNanos);
+            }
+            VideoFrame frame = new VideoFrame(segment.getStartFrame() + i, frameMat);
+            if (tracker != null) {
+                try {
+                    tracker.process(frame, detector);
+                } catch (InterruptedException e) {
+                    // Only frames with a pending detection wait, and segment frames never have one
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } else if (motionGate != null && motionGate.isStatic(frameMat) && lastDetections != null) {
+                // Static scene: reuse the detections of the last detected frame
+                frame.setDetections(lastDetections);
+            } else {
+                PipelineMetrics.takePreprocessNanos();
+                long detectNanos = System.nanoTime();
+                lastDetections = detector.detect(frameMat);
+                if (metrics != null) {
+                    metrics.recordDetection(detectNanos);
+                }
+                frame.setDetections(lastDetections);
+            }
+            long drawNanos = System.nanoTime();
+            TrafficSignDetector.drawTrafficSigns(frameMat, frame.getDetections(), color);
+            long encodeNanos = System.nanoTime();
+            videoWriter.write(frameMat);
+            if (metrics != null) {
+                metrics.record(PipelineMetrics.Stage.DRAW, encodeNanos - drawNanos);
+                metrics.record(PipelineMetrics.Stage.ENCODE, System.nanoTime() - encodeNanos);
+            }
+            listener.frameProcessed(frame, System.nanoTime() - frame.getCreatedNanos());
+            startNanos = System.nanoTime();
+        }
+
+        if (tracker != null) {
+            tracker.release();
+        }
+        if (motionGate != null) {
+            System.out.println("Segment " + segment.getIndex() + ": " + motionGate.report());
+            motionGate.release();
+        }
+        frameMat.release();
+        videoCapture.release();
+        videoWriter.release();
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Concatenates the processed segments into the result video.
+     * The segments are copied without re-encoding with the ffmpeg concat demuxer. If ffmpeg is not
+     * available, the segments are decoded and written again with a VideoWriter.
+     *
+     * @param segments   the processed segments, in order
+     * @param resultPath path of the result video
+     * @return true if the result video was written
+     */
+    public static boolean mergeSegments(List<VideoSegment> segments, String resultPath) {
+        if (concatWithFfmpeg(segments, resultPath)) {
+            return true;
+        }
+        System.out.println("\nffmpeg is not available, re-encoding the segments of " + resultPath);
+        return concatWithVideoWriter(segments, resultPath);
+    }
+
+    /**
+     * Concatenates the segments with the ffmpeg concat demuxer, copying the streams.
+     *
+     * @param segments   the processed segments, in order
+     * @param resultPath path of the result video
+     * @return true if ffmpeg wrote the result video
+     */
+    private static boolean concatWithFfmpeg(List<VideoSegment> segments, String resultPath) {
+        Path listFile = null;
+        try {
+            listFile = Files.createTempFile("segments", ".txt");
+            List<String> lines = new ArrayList<>();
+            for (VideoSegment segment : segments) {
+                String path = new File(segment.getSegmentPath()).getAbsolutePath();
+                lines.add("file '" + path.replace("'", "'\\''") + "'");
+            }
+            Files.write(listFile, lines, StandardCharsets.UTF_8);
+
+            Process process = new ProcessBuilder("ffmpeg", "-y", "-loglevel", "error", "-f", "concat", "-safe", "0",
+                    "-i", listFile.toString(), "-c", "copy", resultPath)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (listFile != null) {
+                listFile.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Concatenates the segments by decoding them and writing every frame to a new video.
+     *
+     * @param segments   the processed segments, in order
+     * @param resultPath path of the result video
+     * @return true if the result video was written
+     */
+    private static boolean concatWithVideoWriter(List<VideoSegment> segments, String resultPath) {
+        VideoWriter videoWriter = null;
+        Mat frameMat = new Mat();
+        for (VideoSegment segment : segments) {
+            VideoCapture videoCapture = new VideoCapture(segment.getSegmentPath());
+            if (!videoCapture.isOpened()) {
+                System.out.println("\nCould not open segment: " + segment.getSegmentPath());
+                continue;
+            }
+            if (videoWriter == null) {
+                int frameWidth = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH);
+                int frameHeight = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+                double frameRate = videoCapture.get(Videoio.CAP_PROP_FPS);
+                videoWriter = new VideoWriter(resultPath, VideoWriter.fourcc('X', '2', '6', '4'), frameRate, new Size(frameWidth, frameHeight), true);
+                if (!videoWriter.isOpened()) {
+                    System.out.println("\nCould not create video writer");
+                    videoCapture.release();
+                    frameMat.release();
+                    return false;
+                }
+            }
+            while (videoCapture.read(frameMat)) {
+                videoWriter.write(frameMat);
+            }
+            videoCapture.release();
+        }
+        frameMat.release();
+        if (videoWriter == null) {
+            return false;
+        }
+        videoWriter.release();
+        return true;
+    }
+
+    /**
+     * Deletes the processed segments and their directory.
+     *
+     * @param segments   the processed segments
+     * @param segmentDir the directory of the segments
+     */
+    static void deleteSegments(List<VideoSegment> segments, Path segmentDir) {
+        for (VideoSegment segment : segments) {
+            new File(segment.getSegmentPath()).delete();
+        }
+        segmentDir.toFile().delete();
+    }
+}
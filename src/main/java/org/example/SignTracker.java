@@ -0,0 +1,329 @@
+package org.example;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SignTracker class is responsible for following detected traffic signs between keyframes of a video.
+ * The cascade only runs on keyframes; in between, every box is followed by a cheap tracker inside a
+ * local search window, either template matching or sparse optical flow. When a track loses confidence,
+ * the frame is detected again right away. Boxes keep the same track identifier while they are followed.
+ * A tracker handles one video, in frame order, from a single thread.
+ */
+public class SignTracker {
+    private static final double MIN_IOU = 0.3; // Overlap needed to match a detection with a track
+    private static final double SEARCH_MARGIN = 0.5; // Search window margin, relative to the box size
+    private static final int MIN_SEARCH_MARGIN = 16; // Smallest search window margin in pixels
+    private static final int FLOW_GRID = 4; // Points per side of the optical flow grid
+
+    /**
+     * Method used to follow the boxes between keyframes.
+     */
+    public enum Method {
+        TEMPLATE, FLOW
+    }
+
+    /**
+     * A traffic sign followed across frames.
+     */
+    private static class Track {
+        private final int id;
+        private final String label;
+        private Rect rect;
+        private Mat template;
+
+        private Track(int id, String label, Rect rect) {
+            this.id = id;
+            this.label = label;
+            this.rect = rect;
+        }
+    }
+
+    private final int keyframeInterval; // Frames between two full detections
+    private final Method method; // Method used to follow the boxes
+    private final double minConfidence; // Confidence under which the frame is detected again
+    private final List<Track> tracks = new ArrayList<>(); // Tracks followed in the current frame
+    private int nextTrackId = 1; // Identifier of the next new track
+    private int lastKeyframe = -1; // Index of the last detected frame
+    private int redetections; // Keyframes added because a track lost confidence
+    private Mat gray = new Mat(); // Grayscale current frame
+    private Mat previousGray = new Mat(); // Grayscale previous frame, used by optical flow
+    private final Mat matchResult = new Mat(); // Reused template matching result
+
+    /**
+     * Creates a tracker.
+     *
+     * @param keyframeInterval frames between two full detections
+     * @param method           method used to follow the boxes
+     * @param minConfidence    confidence, between 0 and 1, under which the frame is detected again
+     */
+    public SignTracker(int keyframeInterval, Method method, double minConfidence) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.method = method;
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * Creates a tracker from the "tracker.interval", "tracker.method" and "tracker.confidence" properties.
+     *
+     * @return the tracker, or null if the keyframe interval is 1 and tracking is disabled
+     */
+    public static SignTracker fromProperties() {
+        int interval = Integer.getInteger("tracker.interval", 1);
+        if (interval <= 1) {
+            return null;
+        }
+        Method method = Method.valueOf(System.getProperty("tracker.method", "template").toUpperCase(Locale.ROOT));
+        double confidence = Double.parseDouble(System.getProperty("tracker.confidence", "0.6"));
+        return new SignTracker(interval, method, confidence);
+    }
+
+    /**
+     * Gets the number of frames between two full detections.
+     *
+     * @return the keyframe interval
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Gets the number of keyframes added because a track lost confidence.
+     *
+     * @return the number of early detections
+     */
+    public int getRedetections() {
+        return redetections;
+    }
+
+    /**
+     * Checks if a frame is a scheduled keyframe.
+     *
+     * @param index the index of the frame in the video
+     * @return true if the frame must be fully detected
+     */
+    public boolean isKeyframe(int index) {
+        return index % keyframeInterval == 0;
+    }
+
+    /**
+     * Gets the tracked traffic signs of the next frame and stores them in the frame.
+     * A frame with a pending detection, or a frame due for detection, is detected and its boxes become the
+     * new tracks; other frames are tracked, and detected with the detector if a track loses confidence.
+     *
+     * @param frame    the next frame of the video
+     * @param detector detector used for keyframes without a pending detection
+     * @return the traffic signs with their track identifiers
+     * @throws InterruptedException if the thread is interrupted while waiting for a detection
+     */
+    public List<Detection> process(VideoFrame frame, FrameDetector detector) throws InterruptedException {
+        Mat image = frame.getMat();
+        Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+
+        List<Detection> detections;
+        if (frame.isDetectionPending()) {
+            detections = updateTracks(frame.getIndex(), frame.awaitDetections());
+        } else if (lastKeyframe < 0 || frame.getIndex() - lastKeyframe >= keyframeInterval) {
+            detections = updateTracks(frame.getIndex(), detector.detect(image));
+        } else if (!followTracks()) {
+            redetections++;
+            detections = updateTracks(frame.getIndex(), detector.detect(image));
+        } else {
+            detections = currentDetections();
+        }
+
+        // Keep this frame for the optical flow of the next one
+        Mat swap = previousGray;
+        previousGray = gray;
+        gray = swap;
+
+        frame.setDetections(detections);
+        return detections;
+    }
+
+    /**
+     * Replaces the tracks with the detections of a keyframe, keeping the identifier of the
+     * tracks that overlap a detection.
+     *
+     * @param index      the index of the keyframe
+     * @param detections the detections of the keyframe
+     * @return the detections with their track identifiers
+     */
+    private List<Detection> updateTracks(int index, List<Detection> detections) {
+        lastKeyframe = index;
+        List<Track> previousTracks = new ArrayList<>(tracks);
+        tracks.clear();
+        for (Detection detection : detections) {
+            Rect rect = clip(detection.getRect());
+            if (rect.width <= 0 || rect.height <= 0) {
+                continue;
+            }
+
+            // Find the previous track that overlaps the detection the most
+            Track match = null;
+            double bestIou = MIN_IOU;
+            for (Track track : previousTracks) {
+                double iou = Regions.intersectionOverUnion(track.rect, rect);
+                if (iou >= bestIou && track.label.equals(detection.getLabel())) {
+                    match = track;
+                    bestIou = iou;
+                }
+            }
+            int id;
+            if (match != null) {
+                previousTracks.remove(match);
+                match.template.release();
+                id = match.id;
+            } else {
+                id = nextTrackId++;
+            }
+
+            Track track = new Track(id, detection.getLabel(), rect);
+            track.template = gray.submat(rect).clone();
+            tracks.add(track);
+        }
+
+        // Tracks not seen by the detector are dropped
+        for (Track track : previousTracks) {
+            track.template.release();
+        }
+        return currentDetections();
+    }
+
+    /**
+     * Moves every track to its position in the current frame.
+     *
+     * @return false if a track lost confidence and the frame must be detected again
+     */
+    private boolean followTracks() {
+        for (Track track : tracks) {
+            double confidence = method == Method.TEMPLATE ? matchTemplate(track) : followFlow(track);
+            if (confidence < minConfidence) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the track template in a window around its last position.
+     *
+     * @param track the track to move
+     * @return the normalized correlation of the best match
+     */
+    private double matchTemplate(Track track) {
+        int margin = Math.max(MIN_SEARCH_MARGIN, (int) (Math.max(track.rect.width, track.rect.height) * SEARCH_MARGIN));
+        Rect window = Regions.pad(track.rect, margin, gray.cols(), gray.rows());
+        if (window.width < track.template.cols() || window.height < track.template.rows()) {
+            return 0;
+        }
+        Mat search = gray.submat(window);
+        Imgproc.matchTemplate(search, track.template, matchResult, Imgproc.TM_CCOEFF_NORMED);
+        search.release();
+        Core.MinMaxLocResult best = Core.minMaxLoc(matchResult);
+        track.rect = new Rect(window.x + (int) best.maxLoc.x, window.y + (int) best.maxLoc.y, track.rect.width, track.rect.height);
+        return best.maxVal;
+    }
+
+    /**
+     * Moves a track by the median optical flow of a grid of points inside its box.
+     *
+     * @param track the track to move
+     * @return the share of grid points that were followed
+     */
+    private double followFlow(Track track) {
+        if (previousGray.empty()) {
+            return 0;
+        }
+        Point[] points = new Point[FLOW_GRID * FLOW_GRID];
+        for (int i = 0; i < FLOW_GRID; i++) {
+            for (int j = 0; j < FLOW_GRID; j++) {
+                points[i * FLOW_GRID + j] = new Point(track.rect.x + track.rect.width * (j + 0.5) / FLOW_GRID,
+                        track.rect.y + track.rect.height * (i + 0.5) / FLOW_GRID);
+            }
+        }
+        MatOfPoint2f previousPoints = new MatOfPoint2f(points);
+        MatOfPoint2f nextPoints = new MatOfPoint2f();
+        MatOfByte status = new MatOfByte();
+        MatOfFloat error = new MatOfFloat();
+        Video.calcOpticalFlowPyrLK(previousGray, gray, previousPoints, nextPoints, status, error);
+
+        Point[] moved = nextPoints.toArray();
+        byte[] found = status.toArray();
+        double[] dx = new double[points.length];
+        double[] dy = new double[points.length];
+        int count = 0;
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] == 1) {
+                dx[count] = moved[i].x - points[i].x;
+                dy[count] = moved[i].y - points[i].y;
+                count++;
+            }
+        }
+        previousPoints.release();
+        nextPoints.release();
+        status.release();
+        error.release();
+        if (count == 0) {
+            return 0;
+        }
+
+        Arrays.sort(dx, 0, count);
+        Arrays.sort(dy, 0, count);
+        Rect rect = new Rect(track.rect.x + (int) Math.round(dx[count / 2]), track.rect.y + (int) Math.round(dy[count / 2]),
+                track.rect.width, track.rect.height);
+        track.rect = clip(rect);
+        return track.rect.width > 0 && track.rect.height > 0 ? (double) count / points.length : 0;
+    }
+
+    /**
+     * Gets the detections of the current tracks.
+     *
+     * @return the tracked traffic signs
+     */
+    private List<Detection> currentDetections() {
+        List<Detection> detections = new ArrayList<>();
+        for (Track track : tracks) {
+            detections.add(new Detection(track.label, track.rect, track.id));
+        }
+        return detections;
+    }
+
+    /**
+     * Clips a rectangle to the current frame.
+     *
+     * @param rect the rectangle
+     * @return the clipped rectangle
+     */
+    private Rect clip(Rect rect) {
+        return Regions.pad(rect, 0, gray.cols(), gray.rows());
+    }
+
+    /**
+     * Releases the templates and buffers of the tracker.
+     */
+    public void release() {
+        for (Track track : tracks) {
+            track.template.release();
+        }
+        tracks.clear();
+        gray.release();
+        previousGray.release();
+        matchResult.release();
+    }
+}
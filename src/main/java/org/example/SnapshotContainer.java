@@ -0,0 +1,123 @@
+package org.example;
+
+import org.opencv.core.Rect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SnapshotContainer class is responsible for appending encoded snapshots to a single file.
+ * Thousands of small image files are slow to create and delete, so the images are appended one after
+ * the other through a FileChannel and an index is written at the end of the file on close.
+ * <p>
+ * Layout: a header (magic, version), the encoded images, the index (per entry: frame index, timestamp,
+ * offset, length and the labelled boxes) and a footer (index offset, entry count, magic).
+ * The container is read back with SnapshotReader.
+ */
+public class SnapshotContainer implements AutoCloseable {
+    static final int MAGIC = 0x534E4150; // "SNAP"
+    static final int VERSION = 1; // Version of the layout
+    static final int HEADER_SIZE = 8; // Magic and version
+    static final int FOOTER_SIZE = 16; // Index offset, entry count and magic
+
+    private final FileChannel channel; // Channel appending to the container
+    private final List<SnapshotEntry> entries = new ArrayList<>(); // Index of the appended images
+    private long position = HEADER_SIZE; // Offset of the next image
+
+    /**
+     * Creates a container, replacing any existing file.
+     *
+     * @param path path of the container
+     * @throws IOException if the file cannot be created
+     */
+    public SnapshotContainer(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        writeFully(header);
+    }
+
+    /**
+     * Appends an encoded image.
+     *
+     * @param frameIndex      position of the frame in the video
+     * @param timestampMillis position of the frame in the video, in milliseconds
+     * @param detections      traffic signs shown by the image, in frame coordinates
+     * @param image           the encoded image
+     * @return the index entry of the image
+     * @throws IOException if the image cannot be written
+     */
+    public SnapshotEntry append(int frameIndex, long timestampMillis, List<Detection> detections, byte[] image)
+            throws IOException {
+        writeFully(ByteBuffer.wrap(image));
+        SnapshotEntry entry = new SnapshotEntry(frameIndex, timestampMillis, List.copyOf(detections), position, image.length);
+        entries.add(entry);
+        position += image.length;
+        return entry;
+    }
+
+    /**
+     * Gets the number of images appended so far.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the index and the footer, then closes the file.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(bytes);
+            for (SnapshotEntry entry : entries) {
+                index.writeInt(entry.getFrameIndex());
+                index.writeLong(entry.getTimestampMillis());
+                index.writeLong(entry.getOffset());
+                index.writeInt(entry.getLength());
+                index.writeShort(entry.getDetections().size());
+                for (Detection detection : entry.getDetections()) {
+                    Rect rect = detection.getRect();
+                    index.writeUTF(detection.getLabel());
+                    index.writeInt(rect.x);
+                    index.writeInt(rect.y);
+                    index.writeInt(rect.width);
+                    index.writeInt(rect.height);
+                }
+            }
+            index.flush();
+            writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).putLong(position).putInt(entries.size()).putInt(MAGIC);
+            footer.flip();
+            writeFully(footer);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes a whole buffer at the end of the container.
+     *
+     * @param buffer the bytes to write
+     * @throws IOException if the bytes cannot be written
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
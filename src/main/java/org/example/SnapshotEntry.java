@@ -0,0 +1,77 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * SnapshotEntry class is responsible for describing one image stored in a snapshot container:
+ * the frame it comes from, its timestamp, the traffic signs it shows and where its bytes are.
+ */
+public class SnapshotEntry {
+    private final int frameIndex; // Position of the frame in the video
+    private final long timestampMillis; // Position of the frame in the video, in milliseconds
+    private final List<Detection> detections; // Traffic signs shown by the image, in frame coordinates
+    private final long offset; // Position of the encoded image in the container
+    private final int length; // Size of the encoded image in bytes
+
+    /**
+     * Creates an index entry.
+     *
+     * @param frameIndex      position of the frame in the video
+     * @param timestampMillis position of the frame in the video, in milliseconds
+     * @param detections      traffic signs shown by the image, in frame coordinates
+     * @param offset          position of the encoded image in the container
+     * @param length          size of the encoded image in bytes
+     */
+    public SnapshotEntry(int frameIndex, long timestampMillis, List<Detection> detections, long offset, int length) {
+        this.frameIndex = frameIndex;
+        this.timestampMillis = timestampMillis;
+        this.detections = detections;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Gets the position of the frame in the video.
+     *
+     * @return the frame index
+     */
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * Gets the position of the frame in the video, in milliseconds.
+     *
+     * @return the timestamp in milliseconds
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Gets the traffic signs shown by the image, in frame coordinates.
+     *
+     * @return the detections
+     */
+    public List<Detection> getDetections() {
+        return detections;
+    }
+
+    /**
+     * Gets the position of the encoded image in the container.
+     *
+     * @return the offset in bytes
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the size of the encoded image.
+     *
+     * @return the length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+}
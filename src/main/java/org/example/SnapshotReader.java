@@ -0,0 +1,197 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SnapshotReader class is responsible for random access to the images of a snapshot container.
+ * The index is loaded when the container is opened and each image is read with a single positioned
+ * read, so extracting one image does not scan the file.
+ */
+public class SnapshotReader implements AutoCloseable {
+    private final FileChannel channel; // Channel reading the container
+    private final List<SnapshotEntry> entries; // Index of the container, in the order the images were appended
+
+    /**
+     * Opens a container and loads its index.
+     *
+     * @param path path of the container
+     * @throws IOException if the file cannot be read or is not a complete container
+     */
+    public SnapshotReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readFully(0, SnapshotContainer.HEADER_SIZE);
+            long size = channel.size();
+            if (header.getInt() != SnapshotContainer.MAGIC || header.getInt() != SnapshotContainer.VERSION
+                    || size < SnapshotContainer.HEADER_SIZE + SnapshotContainer.FOOTER_SIZE) {
+                throw new IOException("Not a snapshot container: " + path);
+            }
+            ByteBuffer footer = readFully(size - SnapshotContainer.FOOTER_SIZE, SnapshotContainer.FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int count = footer.getInt();
+            if (footer.getInt() != SnapshotContainer.MAGIC) {
+                throw new IOException("Snapshot container was not closed: " + path);
+            }
+            ByteBuffer index = readFully(indexOffset, (int) (size - SnapshotContainer.FOOTER_SIZE - indexOffset));
+            entries = readIndex(new DataInputStream(new ByteArrayInputStream(index.array())), count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the entries of the index.
+     *
+     * @param index the index bytes
+     * @param count the number of entries
+     * @return the entries
+     * @throws IOException if the index is truncated
+     */
+    private static List<SnapshotEntry> readIndex(DataInputStream index, int count) throws IOException {
+        List<SnapshotEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int frameIndex = index.readInt();
+            long timestampMillis = index.readLong();
+            long offset = index.readLong();
+            int length = index.readInt();
+            int boxes = index.readShort();
+            List<Detection> detections = new ArrayList<>(boxes);
+            for (int j = 0; j < boxes; j++) {
+                String label = index.readUTF();
+                detections.add(new Detection(label, new Rect(index.readInt(), index.readInt(), index.readInt(), index.readInt())));
+            }
+            entries.add(new SnapshotEntry(frameIndex, timestampMillis, detections, offset, length));
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the index of the container.
+     *
+     * @return the entries, in the order the images were appended
+     */
+    public List<SnapshotEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets the entries of a range of frames.
+     *
+     * @param fromFrame first frame index, inclusive
+     * @param toFrame   last frame index, inclusive
+     * @return the entries of the frames in the range
+     */
+    public List<SnapshotEntry> find(int fromFrame, int toFrame) {
+        List<SnapshotEntry> found = new ArrayList<>();
+        for (SnapshotEntry entry : entries) {
+            if (entry.getFrameIndex() >= fromFrame && entry.getFrameIndex() <= toFrame) {
+                found.add(entry);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads the encoded bytes of an image.
+     *
+     * @param entry the entry of the image
+     * @return the encoded image
+     * @throws IOException if the image cannot be read
+     */
+    public byte[] read(SnapshotEntry entry) throws IOException {
+        return readFully(entry.getOffset(), entry.getLength()).array();
+    }
+
+    /**
+     * Reads and decodes an image.
+     *
+     * @param entry the entry of the image
+     * @return Mat object representing the image, to be released by the caller
+     * @throws IOException if the image cannot be read
+     */
+    public Mat decode(SnapshotEntry entry) throws IOException {
+        MatOfByte bytes = new MatOfByte(read(entry));
+        try {
+            return Imgcodecs.imdecode(bytes, Imgcodecs.IMREAD_COLOR);
+        } finally {
+            bytes.release();
+        }
+    }
+
+    /**
+     * Extracts the images of a range of frames as separate files, named after their frame index.
+     *
+     * @param outputDir directory where the images are written
+     * @param fromFrame first frame index, inclusive
+     * @param toFrame   last frame index, inclusive
+     * @return the number of extracted images
+     * @throws IOException if an image cannot be read or written
+     */
+    public int export(Path outputDir, int fromFrame, int toFrame) throws IOException {
+        Files.createDirectories(outputDir);
+        int exported = 0;
+        int previousFrame = -1;
+        int part = 0;
+        for (SnapshotEntry entry : find(fromFrame, toFrame)) {
+            byte[] image = read(entry);
+            // Crops of the same frame are numbered after the frame index
+            part = entry.getFrameIndex() == previousFrame ? part + 1 : 0;
+            previousFrame = entry.getFrameIndex();
+            String fileName = String.format(Locale.ROOT, "frame_%06d_%d.%s", entry.getFrameIndex(), part, extensionOf(image));
+            Files.write(outputDir.resolve(fileName), image);
+            exported++;
+        }
+        return exported;
+    }
+
+    /**
+     * Guesses the file extension of an encoded image from its first bytes.
+     *
+     * @param image the encoded image
+     * @return "jpg" for JPEG data, "png" otherwise
+     */
+    private static String extensionOf(byte[] image) {
+        return image.length > 1 && (image[0] & 0xFF) == 0xFF && (image[1] & 0xFF) == 0xD8 ? "jpg" : "png";
+    }
+
+    /**
+     * Reads bytes at a position of the container.
+     *
+     * @param position position of the first byte
+     * @param length   number of bytes
+     * @return a buffer holding the bytes, ready to be read
+     * @throws IOException if the container ends before the bytes
+     */
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Snapshot container is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
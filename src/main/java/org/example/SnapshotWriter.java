@@ -0,0 +1,297 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnapshotWriter class is responsible for saving the frames with traffic signs in the background.
+ * Encoding a full frame often costs more than detecting it, so the frames are copied into a bounded
+ * queue and written by a separate thread; a full queue blocks the caller instead of dropping snapshots.
+ * The writer can save only the cropped sign regions, use JPEG or PNG with a compression level, and skip
+ * consecutive frames that show the same signs at nearly the same place. Instead of one file per image,
+ * the snapshots can be appended to a single SnapshotContainer with an index of their frames and boxes.
+ */
+public class SnapshotWriter {
+    private static final int QUEUE_CAPACITY = 16; // Maximum number of snapshots waiting to be written
+    private static final Snapshot END = new Snapshot(-1, -1, -1, List.of(), List.of()); // Stops the writer thread
+    static final String CONTAINER_NAME = "snapshots.snap"; // File name of the container in the snapshot folder
+
+    private final String folder; // Folder where the snapshots are saved
+    private final boolean jpeg; // True to write JPEG files, false to write PNG files
+    private final int quality; // JPEG quality (0-100) or PNG compression level (0-9), or -1 for the default
+    private final boolean cropOnly; // True to save only the regions of the traffic signs
+    private final double duplicateOverlap; // Overlap above which consecutive snapshots are duplicates, or 0
+    private final boolean container; // True to append the snapshots to a single container file
+    private final BlockingQueue<Snapshot> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread; // Thread writing the snapshots
+    private volatile PipelineMetrics metrics; // Receives the time spent writing each snapshot, or null
+    private List<Detection> lastDetections = List.of(); // Detections of the last frame with traffic signs
+    private int snapshotNumber = 0; // Number of the next snapshot, used in the file names
+    private int skipped = 0; // Number of frames skipped as duplicates
+
+    /**
+     * Images of one frame waiting to be written.
+     */
+    private static class Snapshot {
+        private final int number;
+        private final int frameIndex;
+        private final long timestampMillis;
+        private final List<Mat> images;
+        private final List<List<Detection>> boxes; // Traffic signs shown by each image
+
+        private Snapshot(int number, int frameIndex, long timestampMillis, List<Mat> images, List<List<Detection>> boxes) {
+            this.number = number;
+            this.frameIndex = frameIndex;
+            this.timestampMillis = timestampMillis;
+            this.images = images;
+            this.boxes = boxes;
+        }
+    }
+
+    /**
+     * Creates a snapshot writer configured by the "snapshot.format" (png or jpg), "snapshot.quality",
+     * "snapshot.crop", "snapshot.dedup" (overlap between 0 and 1, 0 to keep every frame) and
+     * "snapshot.container" (true to write a single container file) properties.
+     *
+     * @param folder      folder where the snapshots are saved, created if missing
+     * @param clearFolder true to delete the previous snapshots of the folder first, on the writer thread
+     */
+    public SnapshotWriter(String folder, boolean clearFolder) {
+        this(folder, clearFolder, "jpg".equalsIgnoreCase(System.getProperty("snapshot.format", "png"))
+                        || "jpeg".equalsIgnoreCase(System.getProperty("snapshot.format", "png")),
+                Integer.getInteger("snapshot.quality", -1), Boolean.getBoolean("snapshot.crop"),
+                Double.parseDouble(System.getProperty("snapshot.dedup", "0")), Boolean.getBoolean("snapshot.container"));
+    }
+
+    /**
+     * Creates a snapshot writer.
+     *
+     * @param folder           folder where the snapshots are saved, created if missing
+     * @param clearFolder      true to delete the previous snapshots of the folder first, on the writer thread
+     * @param jpeg             true to write JPEG files, false to write PNG files
+     * @param quality          JPEG quality (0-100) or PNG compression level (0-9), or -1 for the default
+     * @param cropOnly         true to save only the regions of the traffic signs
+     * @param duplicateOverlap overlap above which a frame repeats the previous one and is skipped, or 0 to keep all
+     * @param container        true to append the snapshots to a single container file in the folder
+     */
+    public SnapshotWriter(String folder, boolean clearFolder, boolean jpeg, int quality, boolean cropOnly,
+                          double duplicateOverlap, boolean container) {
+        this.folder = folder;
+        this.jpeg = jpeg;
+        this.quality = quality;
+        this.cropOnly = cropOnly;
+        this.duplicateOverlap = duplicateOverlap;
+        this.container = container;
+        this.thread = new Thread(() -> run(clearFolder), "snapshot-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a snapshot of a frame with traffic signs. The frame is copied, so the caller may release it.
+     * Blocks while the queue is full.
+     *
+     * @param videoFrame the highlighted frame
+     * @param detections the traffic signs detected in the frame
+     * @throws InterruptedException if the thread is interrupted while waiting for room in the queue
+     */
+    public void submit(VideoFrame videoFrame, List<Detection> detections) throws InterruptedException {
+        if (detections.isEmpty()) {
+            // The next frame with traffic signs is not a consecutive duplicate
+            lastDetections = List.of();
+            return;
+        }
+        if (isDuplicate(detections)) {
+            skipped++;
+            return;
+        }
+        lastDetections = detections;
+
+        Mat frame = videoFrame.getMat();
+        List<Mat> images = new ArrayList<>();
+        List<List<Detection>> boxes = new ArrayList<>();
+        if (cropOnly) {
+            for (Detection detection : detections) {
+                Rect rect = Regions.pad(detection.getRect(), 0, frame.cols(), frame.rows());
+                if (rect.width > 0 && rect.height > 0) {
+                    images.add(frame.submat(rect).clone());
+                    boxes.add(List.of(detection));
+                }
+            }
+        } else {
+            images.add(frame.clone());
+            boxes.add(detections);
+        }
+        Snapshot snapshot = new Snapshot(snapshotNumber++, videoFrame.getIndex(), videoFrame.getTimestampMillis(), images, boxes);
+        while (!queue.offer(snapshot, 100, TimeUnit.MILLISECONDS)) {
+            // Do not wait forever if the writer thread stopped on an error
+            if (!thread.isAlive()) {
+                images.forEach(Mat::release);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks if the detections repeat those of the previous frame: same labels, each box overlapping its
+     * counterpart more than the duplicate overlap.
+     *
+     * @param detections the traffic signs detected in the frame
+     * @return true if the frame should be skipped
+     */
+    private boolean isDuplicate(List<Detection> detections) {
+        if (duplicateOverlap <= 0 || detections.size() != lastDetections.size()) {
+            return false;
+        }
+        for (Detection detection : detections) {
+            boolean matched = false;
+            for (Detection previous : lastDetections) {
+                if (previous.getLabel().equals(detection.getLabel())
+                        && Regions.intersectionOverUnion(previous.getRect(), detection.getRect()) >= duplicateOverlap) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writer thread: clears the folder if asked, then writes the queued snapshots until the end marker.
+     *
+     * @param clearFolder true to delete the previous snapshots first
+     */
+    private void run(boolean clearFolder) {
+        File directory = new File(folder);
+        if (clearFolder && directory.isDirectory()) {
+            FileProcessor.clearFolder(folder);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.out.println("\nCould not create snapshot folder: " + folder);
+        }
+
+        String extension = jpeg ? "jpg" : "png";
+        MatOfInt params = quality < 0 ? new MatOfInt()
+                : new MatOfInt(jpeg ? Imgcodecs.IMWRITE_JPEG_QUALITY : Imgcodecs.IMWRITE_PNG_COMPRESSION, quality);
+        SnapshotContainer snapshotContainer = null;
+        try {
+            if (container) {
+                snapshotContainer = new SnapshotContainer(Paths.get(folder, CONTAINER_NAME));
+            }
+            Snapshot snapshot;
+            while ((snapshot = queue.take()) != END) {
+                long startNanos = System.nanoTime();
+                for (int i = 0; i < snapshot.images.size(); i++) {
+                    Mat image = snapshot.images.get(i);
+                    if (snapshotContainer != null) {
+                        append(snapshotContainer, snapshot, i, "." + extension, params);
+                    } else {
+                        String fileName = cropOnly
+                                ? String.format(Locale.ROOT, "%s/frame_%03d_%d.%s", folder, snapshot.number, i, extension)
+                                : String.format(Locale.ROOT, "%s/frame_%03d.%s", folder, snapshot.number, extension);
+                        if (!Imgcodecs.imwrite(fileName, image, params)) {
+                            System.out.println("\nCould not write snapshot: " + fileName);
+                        }
+                    }
+                    image.release();
+                }
+                PipelineMetrics runMetrics = metrics;
+                if (runMetrics != null) {
+                    runMetrics.record(PipelineMetrics.Stage.SNAPSHOT_WRITE, System.nanoTime() - startNanos);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("\nCould not write snapshot container: " + e.getMessage());
+        } finally {
+            params.release();
+            if (snapshotContainer != null) {
+                try {
+                    snapshotContainer.close();
+                } catch (IOException e) {
+                    System.out.println("\nCould not close snapshot container: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes one image of a snapshot and appends it to the container.
+     *
+     * @param snapshotContainer the container
+     * @param snapshot          the snapshot
+     * @param i                 position of the image in the snapshot
+     * @param extension         extension of the image format, with the dot
+     * @param params            encoding parameters
+     * @throws IOException if the image cannot be appended
+     */
+    private static void append(SnapshotContainer snapshotContainer, Snapshot snapshot, int i, String extension,
+                               MatOfInt params) throws IOException {
+        MatOfByte encoded = new MatOfByte();
+        try {
+            if (Imgcodecs.imencode(extension, snapshot.images.get(i), encoded, params)) {
+                snapshotContainer.append(snapshot.frameIndex, snapshot.timestampMillis, snapshot.boxes.get(i), encoded.toArray());
+            } else {
+                System.out.println("\nCould not encode snapshot of frame " + snapshot.frameIndex);
+            }
+        } finally {
+            encoded.release();
+        }
+    }
+
+    /**
+     * Records the time spent writing each snapshot in the metrics of a run.
+     *
+     * @param metrics the metrics of the run, or null to stop recording
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the number of snapshots waiting to be written.
+     *
+     * @return the number of queued snapshots
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of frames skipped as near duplicates of the previous one.
+     *
+     * @return the number of skipped frames
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Waits until every queued snapshot is written and stops the writer thread.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void close() throws InterruptedException {
+        if (thread.isAlive()) {
+            queue.put(END);
+        }
+        thread.join();
+    }
+}
@@ -0,0 +1,261 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StreamProcessor class is responsible for detecting traffic signs in a live feed with a bounded latency.
+ * A reader thread reads the frames as fast as the source gives them and keeps only the latest one: when the
+ * detector workers fall behind, the frame waiting for them is replaced and counted as dropped, so no backlog
+ * builds up ("latest frame wins"). Each worker owns its own detector and takes the latest frame when it is idle.
+ * <p>
+ * The detections of every detected frame are printed to the output as JSON lines in the format of DetectionLog.
+ * A result finishing after the result of a newer frame is not printed, so the lines are in frame order.
+ * The drop counts and the frame-to-detection latency are reported to the standard error every few seconds
+ * and at the end, so the output stays machine-readable.
+ */
+public class StreamProcessor {
+    private static final long REPORT_MILLIS = 5000; // Time between two status lines
+
+    private final FrameSource source; // Live source of the frames
+    private final int workerCount; // Number of detector workers
+    private final PrintStream output; // Receives the detections as JSON lines
+    private final MatPool framePool; // Buffers of the frames: one being read, one waiting and one per worker
+    private final LatencyHistogram latency = new LatencyHistogram(); // From reading a frame to printing its detections
+    private final AtomicLong framesRead = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong(); // Replaced by a newer frame before a worker took them
+    private final AtomicLong resultsLate = new AtomicLong(); // Detected after a newer frame was printed
+    private int lastPrinted = -1; // Index of the last printed frame, guarded by the output
+
+    private final Object slotLock = new Object(); // Guards the fields below
+    private VideoFrame latest; // Frame waiting for a worker, or null
+    private boolean ended = false; // True once the source has no more frames
+
+    /**
+     * Creates a stream processor.
+     *
+     * @param source      live source of the frames
+     * @param workerCount number of detector workers
+     * @param output      stream receiving the detections as JSON lines
+     */
+    public StreamProcessor(FrameSource source, int workerCount, PrintStream output) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workerCount);
+        }
+        this.source = source;
+        this.workerCount = workerCount;
+        this.output = output;
+        this.framePool = new MatPool(workerCount + 2);
+    }
+
+    /**
+     * Processes the stream until the source ends or the thread is interrupted, then prints the report.
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void run() throws InterruptedException {
+        Thread reader = new Thread(this::read, "stream-reader");
+        Thread[] workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::work, "stream-worker-" + i);
+            workers[i].start();
+        }
+        reader.setDaemon(true); // A blocked read of the source must not keep the program alive
+        reader.start();
+        // A camera feed is usually stopped with Ctrl+C, which must still report the stream
+        Thread reportOnExit = new Thread(() -> System.err.println(report()), "stream-report");
+        Runtime.getRuntime().addShutdownHook(reportOnExit);
+
+        try {
+            long nextReport = System.currentTimeMillis() + REPORT_MILLIS;
+            for (Thread worker : workers) {
+                while (worker.isAlive()) {
+                    worker.join(Math.max(1, nextReport - System.currentTimeMillis()));
+                    if (System.currentTimeMillis() >= nextReport) {
+                        System.err.println(statusLine());
+                        nextReport += REPORT_MILLIS;
+                    }
+                }
+            }
+        } finally {
+            endStream();
+            for (Thread worker : workers) {
+                worker.interrupt();
+                worker.join();
+            }
+            reader.interrupt();
+            try {
+                source.close();
+            } catch (IOException e) {
+                System.err.println("\nCould not close stream: " + e.getMessage());
+            }
+            VideoFrame left = take();
+            if (left != null) {
+                framePool.recycle(left.getMat());
+            }
+            framePool.clear();
+            boolean exiting = false;
+            try {
+                Runtime.getRuntime().removeShutdownHook(reportOnExit);
+            } catch (IllegalStateException e) {
+                // The program is exiting and the hook prints the report
+                exiting = true;
+            }
+            if (!exiting) {
+                System.err.println(report());
+            }
+        }
+    }
+
+    /**
+     * Reader thread: reads the frames and replaces the waiting frame with each new one.
+     */
+    private void read() {
+        long startNanos = System.nanoTime();
+        int index = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Mat frameMat = framePool.acquire();
+                if (!source.read(frameMat)) {
+                    framePool.recycle(frameMat);
+                    break;
+                }
+                VideoFrame frame = new VideoFrame(index++, frameMat);
+                frame.setTimestampMillis((System.nanoTime() - startNanos) / 1_000_000);
+                framesRead.incrementAndGet();
+                publish(frame);
+            }
+        } catch (IOException e) {
+            System.err.println("\nCould not read stream: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("\nStream reader failed: " + e.getMessage());
+        }
+        endStream();
+    }
+
+    /**
+     * Makes a frame the latest one, dropping the frame no worker took yet.
+     *
+     * @param frame the new frame
+     */
+    private void publish(VideoFrame frame) {
+        VideoFrame stale;
+        synchronized (slotLock) {
+            if (ended) {
+                stale = frame;
+            } else {
+                stale = latest;
+                latest = frame;
+                slotLock.notify();
+            }
+        }
+        if (stale != null) {
+            framesDropped.incrementAndGet();
+            framePool.recycle(stale.getMat());
+        }
+    }
+
+    /**
+     * Marks the end of the stream and wakes the idle workers. The waiting frame is still detected.
+     */
+    private void endStream() {
+        synchronized (slotLock) {
+            ended = true;
+            slotLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the latest frame.
+     *
+     * @return the frame, or null once the stream ended and no frame is waiting
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private VideoFrame take() throws InterruptedException {
+        synchronized (slotLock) {
+            while (latest == null && !ended) {
+                slotLock.wait();
+            }
+            VideoFrame frame = latest;
+            latest = null;
+            return frame;
+        }
+    }
+
+    /**
+     * Worker thread: detects the traffic signs of the latest frame whenever it is idle and prints them.
+     */
+    private void work() {
+        FrameDetector detector;
+        try {
+            detector = TrafficSignDetector.createDetector();
+        } catch (RuntimeException e) {
+            System.err.println("\nCould not create detector: " + e.getMessage());
+            return;
+        }
+        try {
+            VideoFrame frame;
+            while ((frame = take()) != null) {
+                try {
+                    print(frame, detector.detect(frame.getMat()));
+                } catch (RuntimeException e) {
+                    System.err.println("\nDetection failed on frame " + frame.getIndex() + ": " + e.getMessage());
+                } finally {
+                    framePool.recycle(frame.getMat());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints the detections of a frame, unless the detections of a newer frame were already printed.
+     *
+     * @param frame      the detected frame
+     * @param detections the traffic signs of the frame
+     */
+    private void print(VideoFrame frame, List<Detection> detections) {
+        synchronized (output) {
+            if (frame.getIndex() <= lastPrinted) {
+                resultsLate.incrementAndGet();
+                return;
+            }
+            lastPrinted = frame.getIndex();
+            // The JSON line already ends with a new line
+            output.print(DetectionLog.toJson(frame.getIndex(), frame.getTimestampMillis(), detections));
+            output.flush();
+        }
+        latency.record(System.nanoTime() - frame.getCreatedNanos());
+    }
+
+    /**
+     * Describes the progress of the stream in one line.
+     *
+     * @return the status line
+     */
+    public String statusLine() {
+        return String.format(Locale.ROOT, "Stream: %d frames read, %d detected, %d dropped, %d late, latency p50 %.1f ms, p99 %.1f ms",
+                framesRead.get(), latency.count(), framesDropped.get(), resultsLate.get(),
+                latency.percentileMillis(50), latency.percentileMillis(99));
+    }
+
+    /**
+     * Describes the whole stream: frame counts, share of dropped frames and latency percentiles.
+     *
+     * @return the report
+     */
+    public String report() {
+        long read = framesRead.get();
+        double droppedShare = read == 0 ? 0 : 100.0 * (framesDropped.get() + resultsLate.get()) / read;
+        return String.format(Locale.ROOT, "Stream report: %d frames read, %d detected, %d dropped as stale, %d late (%.1f%% not detected)%n"
+                        + "  frame-to-detection latency: mean %.1f ms, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+                read, latency.count(), framesDropped.get(), resultsLate.get(), droppedShare, latency.meanMillis(),
+                latency.percentileMillis(50), latency.percentileMillis(95), latency.percentileMillis(99), latency.maxMillis());
+    }
+}
@@ -0,0 +1,135 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * TiledDetector class is responsible for lowering the detection latency of a single large frame.
+ * The frame is split into overlapping tiles that are detected concurrently with fork/join, each
+ * worker thread using its own detector, and the duplicate boxes found on both sides of a tile seam
+ * are merged with non-maximum suppression. Signs larger than the overlap that cross a seam may be
+ * found only partially.
+ */
+public class TiledDetector implements FrameDetector {
+    private static final int MIN_TILE_SIDE = 256; // Frames are not split into tiles smaller than this
+    private static final double OVERLAP = 0.25; // Overlap between tiles, relative to the tile side
+    private static final int MIN_OVERLAP = 48; // Smallest overlap between tiles in pixels
+    private static final double NMS_THRESHOLD = 0.3; // Overlap above which two boxes are duplicates
+
+    private final ForkJoinPool pool; // Workers detecting the tiles
+    private final ThreadLocal<FrameDetector> detectors; // Detector of each worker thread
+
+    /**
+     * Creates a tiled detector with one worker per available processor.
+     *
+     * @param detectorFactory factory that creates the detector of each worker thread
+     */
+    public TiledDetector(Supplier<FrameDetector> detectorFactory) {
+        this(Runtime.getRuntime().availableProcessors(), detectorFactory);
+    }
+
+    /**
+     * Creates a tiled detector.
+     *
+     * @param parallelism     number of tiles detected at the same time
+     * @param detectorFactory factory that creates the detector of each worker thread
+     */
+    public TiledDetector(int parallelism, Supplier<FrameDetector> detectorFactory) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.detectors = ThreadLocal.withInitial(detectorFactory);
+    }
+
+    /**
+     * Checks if the tiled mode is enabled by the "detector.tiled" property.
+     *
+     * @return true if single images are detected in tiles
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("detector.tiled");
+    }
+
+    /**
+     * Detection of a range of tiles, split in halves until a single tile remains.
+     */
+    private class TileTask extends RecursiveTask<List<Detection>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Mat image;
+        private final List<Rect> tiles;
+        private final int from;
+        private final int to;
+
+        private TileTask(Mat image, List<Rect> tiles, int from, int to) {
+            this.image = image;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Detection> compute() {
+            if (to - from == 1) {
+                return Regions.detectInRegions(detectors.get(), image, tiles.subList(from, to));
+            }
+            int middle = (from + to) >>> 1;
+            TileTask left = new TileTask(image, tiles, from, middle);
+            left.fork();
+            List<Detection> detections = new ArrayList<>(new TileTask(image, tiles, middle, to).compute());
+            detections.addAll(left.join());
+            return detections;
+        }
+    }
+
+    @Override
+    public List<Detection> detect(Mat image) {
+        List<Rect> tiles = planTiles(image.cols(), image.rows(), pool.getParallelism());
+        if (tiles.size() == 1) {
+            return detectors.get().detect(image);
+        }
+        List<Detection> detections = pool.invoke(new TileTask(image, tiles, 0, tiles.size()));
+        return Regions.suppressOverlaps(detections, NMS_THRESHOLD);
+    }
+
+    /**
+     * Splits a frame into a grid of overlapping tiles, about as many as the workers.
+     *
+     * @param width     width of the frame
+     * @param height    height of the frame
+     * @param tileCount wanted number of tiles
+     * @return the tiles covering the frame
+     */
+    static List<Rect> planTiles(int width, int height, int tileCount) {
+        // Choose a grid whose cells are close to square
+        int columns = Math.max(1, (int) Math.round(Math.sqrt(tileCount * (double) width / height)));
+        int rows = Math.max(1, (int) Math.round((double) tileCount / columns));
+        columns = Math.max(1, Math.min(columns, width / MIN_TILE_SIDE));
+        rows = Math.max(1, Math.min(rows, height / MIN_TILE_SIDE));
+
+        int cellWidth = (width + columns - 1) / columns;
+        int cellHeight = (height + rows - 1) / rows;
+        int overlap = Math.max(MIN_OVERLAP, (int) (Math.max(cellWidth, cellHeight) * OVERLAP));
+
+        List<Rect> tiles = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                Rect cell = new Rect(column * cellWidth, row * cellHeight, cellWidth, cellHeight);
+                // Each tile reaches half the overlap into its neighbours
+                tiles.add(Regions.pad(cell, columns * rows == 1 ? 0 : overlap / 2, width, height));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -9,177 +9,711 @@ import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.VideoWriter;
 import org.opencv.videoio.Videoio;
 
-import javax.swing.*;
-import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * TrafficSignDetector class is responsible for detecting traffic signs in images and videos.
  * It uses a pre-trained Haar cascade classifier to detect traffic signs in images.
  * It highlights the detected traffic signs with a green rectangle.
+ * It does not use any AWT or Swing class, so it can run without a display.
  */
 public class TrafficSignDetector {
-    // Cascade classifier for traffic signs
-    private final static CascadeClassifier cascade = new CascadeClassifier("cascades/haarcascade_traffic_signs.xml");
+    // Path to the cascade classifier for traffic signs
+    public final static String CASCADE_PATH = "cascades/haarcascade_traffic_signs.xml";
+    // Cascades of the multi-cascade ensemble, or null to use the traffic signs cascade only
+    private final static String ENSEMBLE_CASCADES = System.getProperty("detector.cascades");
+    private static DetectionConfig detectionConfig; // Parameters of the detection
+    private static FrameDetector imageDetector; // Detector used for single images
+    private static DetectorPool detectorPool; // Workers used to detect traffic signs in videos
     private final static Scalar color = new Scalar(0, 255, 0); // Color green
-    private final static JPanel containerPanel = new JPanel(new GridBagLayout()); // JPanel container for labels
-    private final static JPanel labelsPanel = new JPanel(); // JPanel for labels
-    private static JLabel processingLabel; // JLabel for processing message
-    private static JLabel timeLabel; // JLabel for estimated time
+    // Names of the files of a result cache entry
+    private final static String CACHED_RESULT = "result";
+    private final static String CACHED_DETECTIONS = "detections.jsonl";
+    private final static String CACHED_FRAMES = "frames.list"; // Names of the cached snapshots of a video
+    private final static String CACHED_FRAME_PREFIX = "frame-"; // Prefix of the cached snapshots in an entry
 
     /**
      * Detects traffic signs in an image and highlights them with a green rectangle.
      *
      * @param imagePath path to the image
-     * @return Mat object representing the image with highlighted traffic signs
+     * @return Mat object representing the image with highlighted traffic signs, to be released with NativeMemory.release
      */
     public static Mat detectTrafficSigns(String imagePath) {
         // Maintain the format of the image
-        String resultImagePath = FileProcessor.maintainFormat(imagePath);
+        return detectTrafficSigns(imagePath, FileProcessor.maintainFormat(imagePath), getImageDetector());
+    }
+
+    /**
+     * Detects traffic signs in an image with the given detector and saves the highlighted image.
+     * The detections are also written to a sidecar file when a detection log is requested; in the
+     * detections-only mode the highlighted image is not saved. Images already in the result cache are
+     * not detected again.
+     *
+     * @param imagePath       path to the image
+     * @param resultImagePath path of the result image
+     * @param detector        detector owned by the calling thread
+     * @return Mat object representing the image with highlighted traffic signs, to be released with
+     * NativeMemory.release, or null if the image cannot be loaded
+     */
+    public static Mat detectTrafficSigns(String imagePath, String resultImagePath, FrameDetector detector) {
+        ResultCache cache = ResultCache.getDefault();
+        String cacheKey = cacheKey(cache, imagePath, "image");
+        if (cacheKey != null) {
+            Path entry = cache.lookup(cacheKey, CACHED_DETECTIONS);
+            if (entry != null) {
+                Mat cached = restoreImage(entry, imagePath, resultImagePath);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
 
-        Mat image = Imgcodecs.imread(imagePath);
+        Mat image = NativeMemory.track(Imgcodecs.imread(imagePath));
 
         if (image.empty()) {
             System.out.println("\nCould not load image: " + imagePath);
+            NativeMemory.release(image);
             return null;
         }
 
-        // Highlight traffic signs in the image
-        highlightTrafficSigns(image, cascade, color);
+        // Highlight traffic signs in the image, searching only its region mask
+        List<Detection> detections;
+        RegionMask previousMask = RegionMask.select(imagePath);
+        try {
+            detections = detector.detect(image);
+        } finally {
+            RegionMask.setCurrent(previousMask);
+        }
+        drawTrafficSigns(image, detections, color);
+        writeImageDetectionLog(resultImagePath, detections);
 
         // Save the image with highlighted traffic signs
-        Imgcodecs.imwrite(resultImagePath, image);
+        if (!DetectionLog.isDetectionsOnly()) {
+            Imgcodecs.imwrite(resultImagePath, image);
+        }
 
+        if (cacheKey != null) {
+            storeImage(cache, cacheKey, detections, resultImagePath);
+        }
         return image;
     }
 
     /**
-     * Adds labels on the interface to inform the user about the processing of the video.
+     * Writes the detections of an image to its detection log, if one is requested.
      *
-     * @param frame JFrame object representing the main frame
-     * @param estimatedTimeText estimated time to process the video
+     * @param resultImagePath path of the result image
+     * @param detections      the traffic signs detected in the image
      */
-    public static void addLabelsOnInterface(JFrame frame, String estimatedTimeText) {
-        SwingUtilities.invokeLater(() -> {
-            // Processing label
-            processingLabel = new JLabel("Processing video... It may take a while.");
-            processingLabel.setFont(new Font("Arial", Font.PLAIN, 20));
-            processingLabel.setHorizontalAlignment(SwingConstants.CENTER);
+    private static void writeImageDetectionLog(String resultImagePath, List<Detection> detections) {
+        DetectionLog detectionLog = DetectionLog.create(resultImagePath);
+        if (detectionLog != null) {
+            try {
+                detectionLog.write(0, 0, detections);
+            } catch (IOException e) {
+                System.out.println("\nCould not write detection log: " + e.getMessage());
+            }
+            closeDetectionLog(detectionLog);
+        }
+    }
+
+    /**
+     * Checks if an image is in the result cache, so its result is available without detecting it.
+     *
+     * @param imagePath path to the image
+     * @return true if the image is cached with the current detection parameters
+     */
+    public static boolean isImageCached(String imagePath) {
+        ResultCache cache = ResultCache.getDefault();
+        String cacheKey = cacheKey(cache, imagePath, "image");
+        return cacheKey != null && cache.contains(cacheKey);
+    }
+
+    /**
+     * Computes the result cache key of an input.
+     *
+     * @param cache     the result cache, or null if it is disabled
+     * @param inputPath path to the image or video
+     * @param kind      kind of result
+     * @return the key, or null if the cache is disabled, the input cannot be read or its detections are
+     * not reproducible
+     */
+    private static String cacheKey(ResultCache cache, String inputPath, String kind) {
+        if (cache == null) {
+            return null;
+        }
+        // An adaptive region mask searches where the previous inputs had signs
+        RegionMask mask = RegionMask.forSource(inputPath);
+        if (mask != null && mask.isAdaptive()) {
+            return null;
+        }
+        try {
+            return cache.key(Paths.get(inputPath), kind);
+        } catch (IOException e) {
+            // The input is reported as unreadable when it is processed
+            return null;
+        }
+    }
 
-            // Estimated time label
-            timeLabel = new JLabel(estimatedTimeText);
-            timeLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+    /**
+     * Restores the result of a cached image: the rendered image when it was cached, otherwise the
+     * image highlighted again with the cached detections.
+     *
+     * @param entry           folder of the cache entry
+     * @param imagePath       path to the image
+     * @param resultImagePath path of the result image
+     * @return Mat object representing the image with highlighted traffic signs, or null if the entry cannot be read
+     */
+    private static Mat restoreImage(Path entry, String imagePath, String resultImagePath) {
+        List<Detection> detections;
+        try {
+            List<DetectionRecord> records = new DetectionLogReader(entry.resolve(CACHED_DETECTIONS)).readAll();
+            detections = records.isEmpty() ? List.of() : records.get(0).getDetections();
+        } catch (IOException e) {
+            return null;
+        }
 
-            // Labels panel
-            labelsPanel.setLayout(new BoxLayout(labelsPanel, BoxLayout.Y_AXIS));
-            labelsPanel.add(processingLabel);
-            labelsPanel.add(timeLabel);
-            labelsPanel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            labelsPanel.setAlignmentY(Component.CENTER_ALIGNMENT);
+        boolean detectionsOnly = DetectionLog.isDetectionsOnly();
+        if (!detectionsOnly && ResultCache.restore(entry, CACHED_RESULT, Paths.get(resultImagePath))) {
+            Mat image = NativeMemory.track(Imgcodecs.imread(resultImagePath));
+            if (!image.empty()) {
+                writeImageDetectionLog(resultImagePath, detections);
+                return image;
+            }
+            NativeMemory.release(image);
+        }
 
-            // Container panel
-            containerPanel.add(labelsPanel);
-            frame.add(containerPanel, BorderLayout.CENTER);
+        Mat image = NativeMemory.track(Imgcodecs.imread(imagePath));
+        if (image.empty()) {
+            NativeMemory.release(image);
+            return null;
+        }
+        // Highlight the image again with the cached detections
+        drawTrafficSigns(image, detections, color);
+        if (!detectionsOnly) {
+            Imgcodecs.imwrite(resultImagePath, image);
+        }
+        writeImageDetectionLog(resultImagePath, detections);
+        return image;
+    }
 
-            frame.revalidate();
-            frame.repaint();
-        });
+    /**
+     * Stores the detections of an image, and its rendered result when enabled, in the result cache.
+     *
+     * @param cache           the result cache
+     * @param cacheKey        the key of the image
+     * @param detections      the traffic signs detected in the image
+     * @param resultImagePath path of the result image
+     */
+    private static void storeImage(ResultCache cache, String cacheKey, List<Detection> detections, String resultImagePath) {
+        Path detectionsFile = null;
+        try {
+            detectionsFile = Files.createTempFile("detections", ".jsonl");
+            Files.writeString(detectionsFile, detections.isEmpty() ? "" : DetectionLog.toJson(0, 0, detections));
+            Map<String, Path> files = new HashMap<>();
+            files.put(CACHED_DETECTIONS, detectionsFile);
+            if (ResultCache.storesRenderedResults() && !DetectionLog.isDetectionsOnly()) {
+                files.put(CACHED_RESULT, Paths.get(resultImagePath));
+            }
+            cache.store(cacheKey, files);
+        } catch (IOException e) {
+            System.out.println("\nCould not store result in cache: " + e.getMessage());
+        } finally {
+            if (detectionsFile != null) {
+                detectionsFile.toFile().delete();
+            }
+        }
     }
 
     /**
-     * Detects traffic signs in a video and highlights them with a green rectangle.
+     * Detects traffic signs in a video and writes the result video next to the working directory,
+     * saving the frames with traffic signs in the frames folder.
      *
      * @param videoPath path to the video
-     * @param progressBar JProgressBar object representing the progress bar
-     * @param frame JFrame object representing the main frame
-     */
-    public static void detectTrafficSignsInVideo(String videoPath, JProgressBar progressBar, JFrame frame) {
-        // Clear the frames folder
-        FileProcessor.clearFolder("frames");
-
-        // Estimated time to process the video
-        String estimatedTimeText;
-        if (videoPath.contains("/phone")) {
-            estimatedTimeText = "Estimated time: ~2-3 minutes";
-        } else if (videoPath.contains("/videos")) {
-            estimatedTimeText = "Estimated time: ~1 minute";
-        } else {
-            estimatedTimeText = "Estimated time: unknown";
+     * @param listener  listener notified of the progress of the video
+     * @return path of the result video, or null if the video could not be processed
+     */
+    public static String detectTrafficSignsInVideo(String videoPath, ProcessingListener listener) {
+        // Maintain the format of the video
+        return detectTrafficSignsInVideo(videoPath, FileProcessor.maintainFormat(videoPath), "frames", listener);
+    }
+
+    /**
+     * Detects traffic signs in a video and writes the result video.
+     * Long videos are processed as parallel segments when the "video.segments" property is greater than 1;
+     * in that case no frames are saved and no detection log is written. What is encoded depends on the
+     * VideoOutput mode: in the clips mode the path of the clip manifest is returned, and when no video is
+     * encoded the path of the detection log is returned, or the path of the video if no log is written.
+     * Videos already in the result cache are restored from it without being processed, except in the clips mode;
+     * their saved frames are restored to the frames folder too.
+     *
+     * @param videoPath       path to the video
+     * @param resultVideoPath path of the result video
+     * @param framesFolder    folder where the frames with traffic signs are saved in the background after its previous
+     *                        content is deleted, or null to not save them
+     * @param listener        listener notified of the progress of the video
+     * @return path of the result video, clip manifest or detection log, or null if the video could not be processed
+     */
+    public static String detectTrafficSignsInVideo(String videoPath, String resultVideoPath, String framesFolder,
+                                                   ProcessingListener listener) {
+        ResultCache cache = ResultCache.getDefault();
+        // The clips are not cached
+        String cacheKey = VideoOutput.mode() == VideoOutput.Mode.CLIPS ? null : cacheKey(cache, videoPath, "video");
+        if (cacheKey != null) {
+            String restored = restoreVideo(cache, cacheKey, resultVideoPath, framesFolder);
+            if (restored != null) {
+                listener.progressChanged(100);
+                System.out.println(ResultCache.report());
+                return restored;
+            }
+        }
+
+        // The pipeline, segment and detector threads search the region mask of the video
+        RegionMask previousMask = RegionMask.select(videoPath);
+        String written;
+        try {
+            written = processVideo(videoPath, resultVideoPath, framesFolder, listener);
+        } finally {
+            RegionMask.setCurrent(previousMask);
+        }
+        // An interrupted run leaves a partial result that must not be reused
+        if (written != null && cacheKey != null && !Thread.currentThread().isInterrupted()) {
+            storeVideo(cache, cacheKey, resultVideoPath, framesFolder);
+        }
+        if (cache != null) {
+            System.out.println(ResultCache.report());
+        }
+        return written;
+    }
+
+    /**
+     * Restores the result video, or the detection log in the detections-only mode, of a cached video,
+     * and its saved frames.
+     *
+     * @param cache           the result cache
+     * @param cacheKey        the key of the video
+     * @param resultVideoPath path of the result video
+     * @param framesFolder    folder where the frames with traffic signs are restored, or null to not restore them
+     * @return path of the restored result, or null if the video is not cached with the needed files
+     */
+    private static String restoreVideo(ResultCache cache, String cacheKey, String resultVideoPath, String framesFolder) {
+        Path detectionLogPath = DetectionLog.pathFor(resultVideoPath);
+        boolean writesVideo = VideoOutput.writesVideo();
+        if (detectionLogPath == null && !writesVideo) {
+            // Nothing is written, so nothing can be restored
+            return null;
+        }
+        List<String> requiredFiles = new ArrayList<>();
+        if (writesVideo) {
+            requiredFiles.add(CACHED_RESULT);
+        }
+        if (detectionLogPath != null) {
+            requiredFiles.add("detections");
+            requiredFiles.add("detections.idx");
+        }
+        if (framesFolder != null) {
+            // A video cached without its frames would leave the frames of the previous video in the folder
+            requiredFiles.add(CACHED_FRAMES);
+        }
+        Path entry = cache.lookup(cacheKey, requiredFiles.toArray(new String[0]));
+        if (entry == null) {
+            return null;
+        }
+        if (detectionLogPath != null && !(ResultCache.restore(entry, "detections", detectionLogPath)
+                && ResultCache.restore(entry, "detections.idx", DetectionLog.indexPathOf(detectionLogPath)))) {
+            return null;
+        }
+        if (framesFolder != null && !restoreFrames(entry, Paths.get(framesFolder))) {
+            return null;
+        }
+        if (!writesVideo) {
+            return detectionLogPath.toString();
+        }
+        return ResultCache.restore(entry, CACHED_RESULT, Paths.get(resultVideoPath)) ? resultVideoPath : null;
+    }
+
+    /**
+     * Replaces the content of the frames folder with the cached frames of a video.
+     *
+     * @param entry        folder of the cache entry
+     * @param framesFolder folder of the frames with traffic signs
+     * @return true if every frame was restored
+     */
+    private static boolean restoreFrames(Path entry, Path framesFolder) {
+        List<String> names;
+        try {
+            names = Files.readAllLines(entry.resolve(CACHED_FRAMES));
+            Files.createDirectories(framesFolder);
+        } catch (IOException e) {
+            return false;
         }
+        FileProcessor.clearFolder(framesFolder.toString());
+        for (String name : names) {
+            if (!name.isEmpty() && !ResultCache.restore(entry, CACHED_FRAME_PREFIX + name, framesFolder.resolve(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        // Add labels on the interface
-        SwingUtilities.invokeLater(() -> addLabelsOnInterface(frame, estimatedTimeText));
+    /**
+     * Stores the result video, when enabled, the detection log and the saved frames of a video in the result cache.
+     *
+     * @param cache           the result cache
+     * @param cacheKey        the key of the video
+     * @param resultVideoPath path of the result video
+     * @param framesFolder    folder of the frames with traffic signs saved for the video, or null if none are saved
+     */
+    private static void storeVideo(ResultCache cache, String cacheKey, String resultVideoPath, String framesFolder) {
+        Map<String, Path> files = new HashMap<>();
+        if (ResultCache.storesRenderedResults() && VideoOutput.writesVideo()) {
+            files.put(CACHED_RESULT, Paths.get(resultVideoPath));
+        }
+        Path detectionLogPath = DetectionLog.pathFor(resultVideoPath);
+        if (detectionLogPath != null) {
+            files.put("detections", detectionLogPath);
+            files.put("detections.idx", DetectionLog.indexPathOf(detectionLogPath));
+        }
+        Path framesList = null;
+        try {
+            if (framesFolder != null) {
+                List<String> names = new ArrayList<>();
+                File[] frames = new File(framesFolder).listFiles(File::isFile);
+                if (frames != null) {
+                    for (File frame : frames) {
+                        names.add(frame.getName());
+                        files.put(CACHED_FRAME_PREFIX + frame.getName(), frame.toPath());
+                    }
+                }
+                framesList = Files.createTempFile("frames", ".list");
+                Files.write(framesList, names);
+                files.put(CACHED_FRAMES, framesList);
+            }
+            if (!files.isEmpty()) {
+                cache.store(cacheKey, files);
+            }
+        } catch (IOException e) {
+            System.out.println("\nCould not store result in cache: " + e.getMessage());
+        } finally {
+            if (framesList != null) {
+                framesList.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Detects traffic signs in a video and writes the result video, without using the result cache.
+     *
+     * @param videoPath       path to the video
+     * @param resultVideoPath path of the result video
+     * @param framesFolder    folder where the frames with traffic signs are saved, or null to not save them
+     * @param listener        listener notified of the progress of the video
+     * @return path of the result video, clip manifest or detection log, or null if the video could not be processed
+     */
+    private static String processVideo(String videoPath, String resultVideoPath, String framesFolder,
+                                       ProcessingListener listener) {
+        VideoOutput.Mode outputMode = VideoOutput.mode();
+        int segmentCount = SegmentedVideoProcessor.defaultSegmentCount();
+        // The segments are always encoded at full resolution
+        if (segmentCount > 1 && !DetectionLog.isEnabled() && outputMode == VideoOutput.Mode.FULL) {
+            try {
+                return SegmentedVideoProcessor.processVideo(videoPath, resultVideoPath, segmentCount,
+                        TrafficSignDetector::createDetector, color, listener);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.out.println("\nVideo processing interrupted: " + videoPath);
+                return null;
+            }
+        }
 
-        // Process the video
         VideoCapture videoCapture = new VideoCapture(videoPath);
         if (!videoCapture.isOpened()) {
             System.out.println("\nCould not open video: " + videoPath);
-            return;
+            return null;
         }
 
         // Get video properties
         int frameWidth = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH);
         int frameHeight = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
-        int frameRate = (int) videoCapture.get(Videoio.CAP_PROP_FPS);
+        double frameRate = videoCapture.get(Videoio.CAP_PROP_FPS);
         int totalFrames = (int) videoCapture.get(Videoio.CAP_PROP_FRAME_COUNT);
 
-        // Maintain the format of the video
-        String resultVideoPath = FileProcessor.maintainFormat(videoPath);
+        // Write the detections to a sidecar file when requested
+        DetectionLog detectionLog = DetectionLog.create(resultVideoPath);
+        boolean detectionsOnly = DetectionLog.isDetectionsOnly();
+        if (detectionsOnly && detectionLog == null) {
+            videoCapture.release();
+            return null;
+        }
 
-        // Create video writer
-        VideoWriter videoWriter = new VideoWriter(resultVideoPath, VideoWriter.fourcc('X', '2', '6', '4'), frameRate, new Size(frameWidth, frameHeight), true);
-        if (!videoWriter.isOpened()) {
-            System.out.println("\nCould not create video writer");
-            return;
+        // Create video writer, unless only clips or no video are written
+        VideoWriter videoWriter = null;
+        Size outputSize = VideoOutput.outputSize(frameWidth, frameHeight);
+        if (outputMode == VideoOutput.Mode.FULL || outputMode == VideoOutput.Mode.SCALED) {
+            videoWriter = VideoOutput.openWriter(resultVideoPath, frameRate, outputSize);
+            if (!videoWriter.isOpened()) {
+                System.out.println("\nCould not create video writer");
+                videoCapture.release();
+                if (detectionLog != null) {
+                    closeDetectionLog(detectionLog);
+                }
+                return null;
+            }
         }
 
-        Mat frameMat = new Mat();
+        // Save the frames with traffic signs on a writer thread, which also clears the old snapshots
+        SnapshotWriter snapshots = framesFolder != null ? new SnapshotWriter(framesFolder, true) : null;
+
+        // Process the frames in a decode -> detect -> encode pipeline
+        VideoPipeline pipeline = new VideoPipeline(videoCapture, videoWriter, getDetectorPool(), color, totalFrames, snapshots, listener);
+        // Detect only keyframes and track the boxes in between when enabled
+        SignTracker tracker = SignTracker.fromProperties();
+        pipeline.setTracker(tracker);
+        // Reuse the last detections on static frames when enabled
+        MotionGate motionGate = tracker == null ? MotionGate.fromProperties() : null;
+        pipeline.setMotionGate(motionGate);
+        pipeline.setDetectionLog(detectionLog);
+        if (outputSize.width != frameWidth) {
+            pipeline.setOutputSize(outputSize);
+        }
+        // Record the detections of the clips, which are encoded once the whole video is detected
+        ClipWriter clipWriter = outputMode == VideoOutput.Mode.CLIPS ? new ClipWriter(videoPath, resultVideoPath, frameRate) : null;
+        pipeline.setClipWriter(clipWriter);
+        // Measure the stages, the throughput and the time left
+        pipeline.setMetrics(new PipelineMetrics(videoPath, totalFrames));
+        try {
+            pipeline.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("\nVideo processing interrupted: " + videoPath);
+        } finally {
+            if (tracker != null) {
+                tracker.release();
+            }
+            if (motionGate != null) {
+                System.out.println(motionGate.report());
+                motionGate.release();
+            }
+            if (snapshots != null) {
+                closeSnapshots(snapshots);
+            }
+            if (detectionLog != null) {
+                closeDetectionLog(detectionLog);
+            }
+        }
 
-        // Variables when processing the video
-        int processedFrames = 0;
-        int percentage = 0;
-        int frameNumber = 0;
+        // Release the video capture and video writer
+        videoCapture.release();
+        if (videoWriter != null) {
+            videoWriter.release();
+        }
 
-        while (videoCapture.read(frameMat)) {
-            // Highlight traffic signs in the frame
-            int signs = highlightTrafficSigns(frameMat, cascade, color);
+        if (ColorPrefilter.isEnabled()) {
+            System.out.println(ColorPrefilter.report());
+        }
+        String maskReport = MaskedDetector.report();
+        if (maskReport != null) {
+            System.out.println(maskReport);
+        }
 
-            // Save the frame if traffic signs are detected
-            if (signs > 0) {
-                String frameFileName = String.format("frames/frame_%03d.png", frameNumber);
-                Imgcodecs.imwrite(frameFileName, frameMat);
-                // Increase the frame number
-                frameNumber++;
-            }
+        if (clipWriter != null) {
+            return Thread.currentThread().isInterrupted() ? null : clipWriter.write(color);
+        }
+        if (videoWriter == null) {
+            return detectionLog != null ? detectionLog.getPath().toString() : videoPath;
+        }
+        return resultVideoPath;
+    }
 
-            // Write the frame to the video
-            videoWriter.write(frameMat);
+    /**
+     * Flushes and closes a detection log.
+     *
+     * @param detectionLog the detection log
+     */
+    private static void closeDetectionLog(DetectionLog detectionLog) {
+        try {
+            detectionLog.close();
+        } catch (IOException e) {
+            System.out.println("\nCould not write detection log: " + e.getMessage());
+        }
+    }
 
-            // Update the progress bar
-            processedFrames++;
-            int newPercentage = (processedFrames * 100) / totalFrames;
-            if (newPercentage > percentage) {
-                SwingUtilities.invokeLater(() -> progressBar.setValue(newPercentage));
-                percentage = newPercentage;
+    /**
+     * Waits for the snapshot writer to save the queued frames.
+     *
+     * @param snapshots the snapshot writer of the video
+     */
+    private static void closeSnapshots(SnapshotWriter snapshots) {
+        try {
+            snapshots.close();
+            if (snapshots.getSkipped() > 0) {
+                System.out.println("Snapshots: skipped " + snapshots.getSkipped() + " duplicate frames");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        // Release the video capture and video writer
-        videoCapture.release();
-        videoWriter.release();
+    /**
+     * Gets the color of the rectangles around the traffic signs.
+     *
+     * @return the rectangle color
+     */
+    public static Scalar getColor() {
+        return color;
+    }
 
-        SwingUtilities.invokeLater(() -> {
-            // Remove labels and progress bar
-            progressBar.setValue(100);
-            labelsPanel.remove(processingLabel);
-            labelsPanel.remove(timeLabel);
-            containerPanel.remove(labelsPanel);
-            frame.remove(containerPanel);
-            frame.revalidate();
-            frame.repaint();
-        });
+    /**
+     * Gets the detector used for single images, creating it on first use.
+     *
+     * @return the image detector
+     */
+    private static synchronized FrameDetector getImageDetector() {
+        if (imageDetector == null) {
+            // Large photos are split into tiles detected on all cores when the tiled mode is enabled
+            imageDetector = TiledDetector.isEnabled() ? createTiledDetector(getDetectionConfig()) : createDetector();
+        }
+        return imageDetector;
+    }
 
-        // Play the result video
-        SwingUtilities.invokeLater(() -> VideoProcessor.playVideo(frame, resultVideoPath));
+    /**
+     * Gets the detection parameters, loading them from the config file on first use.
+     *
+     * @return the detection config
+     */
+    public static synchronized DetectionConfig getDetectionConfig() {
+        if (detectionConfig == null) {
+            detectionConfig = DetectionConfig.load();
+        }
+        return detectionConfig;
+    }
+
+    /**
+     * Sets the detection parameters. The detectors created before are discarded, so the next
+     * image and video use the new parameters. Must not be called while a video is being processed.
+     *
+     * @param config the detection config
+     */
+    public static synchronized void setDetectionConfig(DetectionConfig config) {
+        detectionConfig = config;
+        imageDetector = null;
+        if (detectorPool != null) {
+            detectorPool.close();
+            detectorPool = null;
+        }
+    }
+
+    /**
+     * Creates a new detector with the current detection parameters.
+     *
+     * @return the new detector
+     */
+    public static FrameDetector createDetector() {
+        return createDetector(getDetectionConfig());
+    }
+
+    /**
+     * Creates a new detector. A multi-cascade ensemble is created when the "detector.cascades" property
+     * lists the cascades to use (see EnsembleDetector.parseCascades), otherwise the cascade of the config is used,
+     * which is the traffic signs cascade by default.
+     * The detector is wrapped in a ColorPrefilter when the "detector.prefilter" property is true, searches only
+     * the region mask of the input when a mask file exists (see RegionMask), and frames wider than the detection
+     * width are downscaled first.
+     * Detectors are not thread-safe, so every thread must create its own.
+     *
+     * @param config the detection parameters
+     * @return the new detector
+     */
+    public static FrameDetector createDetector(DetectionConfig config) {
+        return scaled(masked(createBaseDetector(config)), config);
+    }
+
+    /**
+     * Creates a detector that splits large frames into tiles detected in parallel, for the lowest latency
+     * on a single image. Each tile worker has its own detector.
+     *
+     * @param config the detection parameters
+     * @return the new tiled detector
+     */
+    public static FrameDetector createTiledDetector(DetectionConfig config) {
+        return scaled(masked(new TiledDetector(() -> createBaseDetector(config))), config);
+    }
+
+    /**
+     * Creates the cascade or ensemble detector, behind the color prefilter when it is enabled.
+     *
+     * @param config the detection parameters
+     * @return the new detector
+     */
+    private static FrameDetector createBaseDetector(DetectionConfig config) {
+        FrameDetector detector;
+        if (ENSEMBLE_CASCADES != null) {
+            detector = new EnsembleDetector(EnsembleDetector.parseCascades(ENSEMBLE_CASCADES), config);
+        } else {
+            detector = new CascadeDetector(cascadePathOf(config), config);
+        }
+        // Only search around red, blue and yellow blobs when the prefilter is enabled
+        if (ColorPrefilter.isEnabled()) {
+            detector = new ColorPrefilter(detector);
+        }
+        return detector;
+    }
+
+    /**
+     * Gets the cascade used by the single cascade detector.
+     *
+     * @param config the detection parameters
+     * @return the cascade of the config, or the traffic signs cascade
+     */
+    public static String cascadePathOf(DetectionConfig config) {
+        return config.getCascade() != null ? config.getCascade() : CASCADE_PATH;
+    }
+
+    /**
+     * Makes a detector search only the region mask of the current input, when masking is enabled.
+     *
+     * @param detector the detector
+     * @return the wrapped detector
+     */
+    private static FrameDetector masked(FrameDetector detector) {
+        if (RegionMask.isEnabled()) {
+            return new MaskedDetector(detector);
+        }
+        return detector;
+    }
+
+    /**
+     * Makes a detector run on a downscaled copy of the frames wider than the detection width.
+     *
+     * @param detector the detector
+     * @param config   the detection parameters
+     * @return the wrapped detector
+     */
+    private static FrameDetector scaled(FrameDetector detector, DetectionConfig config) {
+        if (config.getDetectionWidth() > 0) {
+            return new ScaledDetector(detector, config.getDetectionWidth());
+        }
+        return detector;
+    }
+
+    /**
+     * Gets the pool of detection workers, creating it on first use.
+     * Each worker loads its own cascade classifiers from the same XML files.
+     *
+     * @return the detector pool
+     */
+    public static synchronized DetectorPool getDetectorPool() {
+        if (detectorPool == null) {
+            detectorPool = new DetectorPool(TrafficSignDetector::createDetector);
+        }
+        return detectorPool;
     }
 
     /**
@@ -191,16 +725,55 @@ public class TrafficSignDetector {
      * @return number of traffic signs detected
      */
     public static int highlightTrafficSigns(Mat image, CascadeClassifier cascade, Scalar color) {
-        MatOfRect trafficSigns = new MatOfRect();
-        // Detect traffic signs in the image
-        cascade.detectMultiScale(image, trafficSigns);
+        try (MatScope scope = new MatScope()) {
+            MatOfRect trafficSigns = scope.track(new MatOfRect());
+            // Detect traffic signs in the image
+            cascade.detectMultiScale(image, trafficSigns);
+
+            // Highlight traffic signs with a green rectangle
+            Rect[] rects = trafficSigns.toArray();
+            for (Rect rect : rects) {
+                drawRectangle(image, rect, color);
+            }
+
+            // Return the number of traffic signs detected
+            return rects.length;
+        }
+    }
 
-        // Highlight traffic signs with a green rectangle
-        for (Rect rect : trafficSigns.toArray()) {
-            Imgproc.rectangle(image, new Point(rect.x, rect.y), new Point(rect.x + rect.width, rect.y + rect.height), color, 4);
+    /**
+     * Highlights already detected traffic signs in an image.
+     * When the multi-cascade ensemble is used, the class label is written above each rectangle,
+     * and tracked traffic signs get their track identifier.
+     *
+     * @param image      Mat object representing the image
+     * @param detections the detected traffic signs
+     * @param color      Scalar object representing the color of the rectangle
+     */
+    public static void drawTrafficSigns(Mat image, List<Detection> detections, Scalar color) {
+        for (Detection detection : detections) {
+            Rect rect = detection.getRect();
+            drawRectangle(image, rect, color);
+
+            // Class label of the ensemble and track identifier of the tracking mode
+            String text = ENSEMBLE_CASCADES != null ? detection.getLabel() : "";
+            if (detection.getTrackId() >= 0) {
+                text = (text + " #" + detection.getTrackId()).trim();
+            }
+            if (!text.isEmpty()) {
+                Imgproc.putText(image, text, new Point(rect.x, Math.max(rect.y - 8, 16)), Imgproc.FONT_HERSHEY_SIMPLEX, 0.8, color, 2);
+            }
         }
+    }
 
-        // Return the number of traffic signs detected
-        return trafficSigns.toArray().length;
+    /**
+     * Draws the rectangle of a traffic sign.
+     *
+     * @param image Mat object representing the image
+     * @param rect  Rect object representing the traffic sign
+     * @param color Scalar object representing the color of the rectangle
+     */
+    private static void drawRectangle(Mat image, Rect rect, Scalar color) {
+        Imgproc.rectangle(image, new Point(rect.x, rect.y), new Point(rect.x + rect.width, rect.y + rect.height), color, 4);
     }
 }
\ No newline at end of file
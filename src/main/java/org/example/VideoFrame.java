@@ -0,0 +1,169 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * VideoFrame class is responsible for carrying a decoded frame through the stages of the video pipeline.
+ */
+public class VideoFrame {
+    // Marker frame sent through the queues when the end of the video is reached
+    static final VideoFrame END = new VideoFrame(-1, null);
+
+    private final int index; // Position of the frame in the video
+    private final Mat mat; // Mat object holding the frame pixels
+    private final long createdNanos = System.nanoTime(); // Time when the frame was decoded
+    private long timestampMillis = -1; // Position of the frame in the video in milliseconds, or -1 if unknown
+    private Future<List<Detection>> pendingDetections; // Detection result that may still be running
+    private List<Detection> detections = List.of(); // Traffic signs detected in the frame
+
+    /**
+     * Creates a frame for the video pipeline.
+     *
+     * @param index position of the frame in the video
+     * @param mat   Mat object holding the frame pixels
+     */
+    public VideoFrame(int index, Mat mat) {
+        this.index = index;
+        this.mat = mat;
+    }
+
+    /**
+     * Gets the position of the frame in the video.
+     *
+     * @return the frame index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the Mat object holding the frame pixels.
+     *
+     * @return the frame Mat
+     */
+    public Mat getMat() {
+        return mat;
+    }
+
+    /**
+     * Gets the time when the frame was decoded, as given by System.nanoTime.
+     *
+     * @return the decoding time in nanoseconds
+     */
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    /**
+     * Gets the position of the frame in the video.
+     *
+     * @return the timestamp in milliseconds, or -1 if unknown
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Sets the position of the frame in the video.
+     *
+     * @param timestampMillis the timestamp in milliseconds
+     */
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+    }
+
+    /**
+     * Gets the traffic signs detected in the frame.
+     *
+     * @return the detected traffic signs
+     */
+    public List<Detection> getDetections() {
+        return detections;
+    }
+
+    /**
+     * Sets the traffic signs detected in the frame.
+     *
+     * @param detections the detected traffic signs
+     */
+    public void setDetections(List<Detection> detections) {
+        this.detections = detections;
+        this.pendingDetections = null;
+    }
+
+    /**
+     * Sets the detection result that is still being computed for the frame.
+     *
+     * @param pendingDetections future that completes with the detected traffic signs
+     */
+    public void setPendingDetections(Future<List<Detection>> pendingDetections) {
+        this.pendingDetections = pendingDetections;
+    }
+
+    /**
+     * Checks if a detection result was submitted for the frame and not collected yet.
+     *
+     * @return true if a detection result is pending
+     */
+    public boolean isDetectionPending() {
+        return pendingDetections != null;
+    }
+
+    /**
+     * Waits for the pending detection result of the frame, if any.
+     *
+     * @return the detected traffic signs
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public List<Detection> awaitDetections() throws InterruptedException {
+        if (pendingDetections != null) {
+            try {
+                setDetections(pendingDetections.get());
+            } catch (ExecutionException e) {
+                System.out.println("\nDetection failed on frame " + index + ": " + e.getCause().getMessage());
+                setDetections(List.of());
+            }
+        }
+        return detections;
+    }
+
+    /**
+     * Waits for the pending detection result of a frame that is discarded, so the detector pool no longer
+     * reads its pixels when it is released. The result and its failure are ignored, and an interrupt is only
+     * restored once the result is available.
+     */
+    public void awaitDiscarded() {
+        if (pendingDetections == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pendingDetections.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+        pendingDetections = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks if this frame marks the end of the video.
+     *
+     * @return true if this is the end marker
+     */
+    public boolean isEnd() {
+        return this == END;
+    }
+}
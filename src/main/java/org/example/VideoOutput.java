@@ -0,0 +1,102 @@
+package org.example;
+
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoWriter;
+
+import java.util.Locale;
+
+/**
+ * VideoOutput class is responsible for choosing what is encoded from a processed video.
+ * The "video.output" property selects one of the modes:
+ * <ul>
+ *   <li>full: every frame at full resolution (default)</li>
+ *   <li>scaled: every frame downscaled to "video.outputWidth" pixels (640 by default)</li>
+ *   <li>clips: only clips around the detections, written by a ClipWriter with a manifest</li>
+ *   <li>none: no video; the detections and snapshots are still written when requested</li>
+ * </ul>
+ * The detections-only mode of DetectionLog implies none.
+ */
+public class VideoOutput {
+    private static final int DEFAULT_SCALED_WIDTH = 640; // Width of the scaled render
+
+    /**
+     * Output modes of a processed video.
+     */
+    public enum Mode {
+        FULL,
+        SCALED,
+        CLIPS,
+        NONE
+    }
+
+    /**
+     * Gets the output mode from the "video.output" and "detections.only" properties.
+     *
+     * @return the output mode, full if the property is not set or not valid
+     */
+    public static Mode mode() {
+        if (DetectionLog.isDetectionsOnly()) {
+            return Mode.NONE;
+        }
+        String value = System.getProperty("video.output", "full");
+        try {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.out.println("\nUnknown video output " + value + ", writing the full video");
+            return Mode.FULL;
+        }
+    }
+
+    /**
+     * Checks if the whole video is encoded, at full or reduced resolution.
+     *
+     * @return true in the full and scaled modes
+     */
+    public static boolean writesVideo() {
+        Mode mode = mode();
+        return mode == Mode.FULL || mode == Mode.SCALED;
+    }
+
+    /**
+     * Gets the width of the encoded frames, from the "video.outputWidth" property. It applies to the scaled
+     * render, and to the clips when it is set.
+     *
+     * @return the width in pixels, or 0 to keep the width of the video
+     */
+    public static int outputWidth() {
+        Mode mode = mode();
+        if (mode == Mode.SCALED) {
+            return Math.max(1, Integer.getInteger("video.outputWidth", DEFAULT_SCALED_WIDTH));
+        }
+        return mode == Mode.CLIPS ? Math.max(0, Integer.getInteger("video.outputWidth", 0)) : 0;
+    }
+
+    /**
+     * Gets the size of the encoded frames. Frames are only downscaled, never enlarged.
+     *
+     * @param frameWidth  width of the video
+     * @param frameHeight height of the video
+     * @return the size of the encoded frames
+     */
+    public static Size outputSize(int frameWidth, int frameHeight) {
+        int width = outputWidth();
+        if (width == 0 || width >= frameWidth) {
+            return new Size(frameWidth, frameHeight);
+        }
+        // Encoders need even dimensions
+        int height = (int) Math.round((double) frameHeight * width / frameWidth) & ~1;
+        return new Size(width & ~1, Math.max(2, height));
+    }
+
+    /**
+     * Opens a writer encoding frames of the given size with X264.
+     *
+     * @param path      path of the video file
+     * @param frameRate frame rate of the video
+     * @param size      size of the frames
+     * @return the writer, which may not be opened
+     */
+    public static VideoWriter openWriter(String path, double frameRate, Size size) {
+        return new VideoWriter(path, VideoWriter.fourcc('X', '2', '6', '4'), frameRate, size, true);
+    }
+}
@@ -0,0 +1,370 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * VideoPipeline class is responsible for processing a video in pipelined stages.
+ * A decoder, a detector and an encoder thread are connected by bounded queues, so the
+ * stages work on different frames at the same time and the total time is close to the
+ * time of the slowest stage. A full queue blocks the stage before it (backpressure), and
+ * every stage handles frames in the order they were decoded. The detector stage hands the
+ * frames to a DetectorPool, so detection itself runs on all the workers of the pool.
+ * When metrics are set, every stage records its latency and the queues are sampled while the pipeline runs.
+ * The encoder stage can write a downscaled render, or only record the detections for a ClipWriter.
+ */
+public class VideoPipeline {
+    private static final int QUEUE_CAPACITY = 8; // Maximum number of frames waiting between two stages
+
+    private final VideoCapture videoCapture; // Source of the frames
+    private final VideoWriter videoWriter; // Destination of the highlighted frames
+    private final DetectorPool detectorPool; // Workers used by the detector stage
+    private final Scalar color; // Color of the rectangles around the traffic signs
+    private final int totalFrames; // Number of frames reported by the video
+    private final SnapshotWriter snapshots; // Saves the frames with traffic signs in the background, or null
+    private final ProcessingListener listener; // Notified of the progress and of every processed frame
+    private SignTracker tracker; // Follows the boxes between keyframes, or null to detect every frame
+    private MotionGate motionGate; // Reuses the last detections on static frames, or null
+    private DetectionLog detectionLog; // Sidecar file receiving the detections of every frame, or null
+    private PipelineMetrics metrics; // Receives the latency of every stage, or null
+    private Size outputSize; // Size of the encoded frames when they are downscaled, or null
+    private ClipWriter clipWriter; // Records the detections of the clips, or null
+    private final Mat scaledFrame = new Mat(); // Reused downscaled frame of the encoder stage
+
+    private final BlockingQueue<VideoFrame> decodedFrames = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<VideoFrame> detectedFrames; // Frames whose detection was submitted, in order
+    private final MatPool framePool; // Frame buffers recycled by the encoder stage and reused by the decoder stage
+
+    /**
+     * Creates a pipeline that reads frames from a video, highlights traffic signs and writes the result.
+     *
+     * @param videoCapture     VideoCapture object to read the frames from
+     * @param videoWriter      VideoWriter object to write the frames to, or null to not encode a result video
+     * @param detectorPool     DetectorPool object used to detect traffic signs
+     * @param color            Scalar object representing the color of the rectangles
+     * @param totalFrames      number of frames in the video
+     * @param snapshots        writer of the frames with traffic signs, or null to not save them
+     * @param listener         listener notified of the progress and of every processed frame
+     */
+    public VideoPipeline(VideoCapture videoCapture, VideoWriter videoWriter, DetectorPool detectorPool, Scalar color,
+                         int totalFrames, SnapshotWriter snapshots, ProcessingListener listener) {
+        this.videoCapture = videoCapture;
+        this.videoWriter = videoWriter;
+        this.detectorPool = detectorPool;
+        this.color = color;
+        this.totalFrames = totalFrames;
+        this.snapshots = snapshots;
+        this.listener = listener;
+        // Keep enough frames in flight for every worker to stay busy
+        this.detectedFrames = new ArrayBlockingQueue<>(Math.max(QUEUE_CAPACITY, 2 * detectorPool.size()));
+        // Enough buffers for every frame in flight
+        this.framePool = new MatPool(QUEUE_CAPACITY + detectedFrames.remainingCapacity() + 2);
+    }
+
+    /**
+     * Enables the detect-then-track mode: only keyframes are sent to the detector pool and the boxes
+     * of the other frames are followed by the tracker in the encoder stage.
+     *
+     * @param tracker the tracker of this video, or null to detect every frame
+     */
+    public void setTracker(SignTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Enables motion gating: frames that did not change since the last detected frame reuse its detections
+     * instead of being sent to the detector pool. Gating is not applied in detect-then-track mode.
+     *
+     * @param motionGate the motion gate of this video, or null to detect every frame
+     */
+    public void setMotionGate(MotionGate motionGate) {
+        this.motionGate = motionGate;
+    }
+
+    /**
+     * Writes the detections of every frame to a sidecar file in the encoder stage.
+     *
+     * @param detectionLog the detection log of this video, or null to not write one
+     */
+    public void setDetectionLog(DetectionLog detectionLog) {
+        this.detectionLog = detectionLog;
+    }
+
+    /**
+     * Downscales the frames before they are encoded. The detections and snapshots keep the full resolution.
+     *
+     * @param outputSize the size of the encoded frames, or null to encode them at full resolution
+     */
+    public void setOutputSize(Size outputSize) {
+        this.outputSize = outputSize;
+    }
+
+    /**
+     * Records the detections of every frame for the clips written after the pipeline ends.
+     *
+     * @param clipWriter the clip writer of this video, or null to not write clips
+     */
+    public void setClipWriter(ClipWriter clipWriter) {
+        this.clipWriter = clipWriter;
+    }
+
+    /**
+     * Measures the stages and queues of the pipeline while it runs, and prints their report at the end.
+     *
+     * @param metrics the metrics of this video, or null to not measure the pipeline
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the pipeline until every frame of the video is written.
+     * The decoder and detector stages run on their own threads and the encoder stage runs on the calling thread.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting for frames
+     */
+    public void run() throws InterruptedException {
+        if (metrics != null) {
+            metrics.watchQueue("decoded", decodedFrames::size);
+            metrics.watchQueue("detecting", detectedFrames::size);
+            metrics.watchQueue("detector-jobs", detectorPool::pendingJobs);
+            if (snapshots != null) {
+                metrics.watchQueue("snapshots", snapshots::queueDepth);
+                snapshots.setMetrics(metrics);
+            }
+            metrics.start(listener);
+        }
+        Thread decoder = new Thread(this::decode, "pipeline-decoder");
+        Thread detector = new Thread(this::detect, "pipeline-detector");
+        decoder.start();
+        detector.start();
+
+        try {
+            encode();
+        } finally {
+            // Stop the other stages if the encoder stage ends early
+            decoder.interrupt();
+            detector.interrupt();
+            decoder.join();
+            detector.join();
+            // Free the frames left in the queues by an early end, once the detector pool is done with them,
+            // then the recycled buffers
+            releaseFrames(decodedFrames);
+            releaseFrames(detectedFrames);
+            framePool.clear();
+            scaledFrame.release();
+            if (metrics != null) {
+                metrics.finish();
+            }
+        }
+    }
+
+    /**
+     * Releases the frames left in a queue, after waiting for their detections still queued or running
+     * on the detector pool.
+     *
+     * @param queue the queue
+     */
+    private static void releaseFrames(BlockingQueue<VideoFrame> queue) {
+        VideoFrame frame;
+        while ((frame = queue.poll()) != null) {
+            releaseFrame(frame);
+        }
+    }
+
+    /**
+     * Releases a frame that is not encoded, after waiting for its detection still queued or running
+     * on the detector pool.
+     *
+     * @param frame the frame, or the end marker
+     */
+    private static void releaseFrame(VideoFrame frame) {
+        if (!frame.isEnd()) {
+            frame.awaitDiscarded();
+            NativeMemory.release(frame.getMat());
+        }
+    }
+
+    /**
+     * Decoder stage: reads the frames of the video and passes them to the detector stage.
+     */
+    private void decode() {
+        try {
+            int index = 0;
+            Mat frameMat = framePool.acquire();
+            long startNanos = System.nanoTime();
+            while (videoCapture.read(frameMat)) {
+                if (metrics != null) {
+                    metrics.record(PipelineMetrics.Stage.DECODE, System.nanoTime() - startNanos);
+                }
+                VideoFrame frame = new VideoFrame(index++, frameMat);
+                frame.setTimestampMillis((long) videoCapture.get(Videoio.CAP_PROP_POS_MSEC));
+                decodedFrames.put(frame);
+                // Every frame in flight needs its own Mat
+                frameMat = framePool.acquire();
+                startNanos = System.nanoTime();
+            }
+            framePool.recycle(frameMat);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            System.out.println("\nDecoder stage failed: " + e.getMessage());
+        }
+        endStage(decodedFrames);
+    }
+
+    /**
+     * Detector stage: submits each frame to the detector pool and passes it to the encoder stage
+     * without waiting, so several frames are detected at the same time.
+     */
+    private void detect() {
+        VideoFrame frame = null; // Frame taken from the decoder stage and not yet passed to the encoder stage
+        try {
+            Future<List<Detection>> lastDetections = null;
+            while (!(frame = decodedFrames.take()).isEnd()) {
+                if (tracker != null) {
+                    // In tracking mode only the keyframes are detected
+                    if (tracker.isKeyframe(frame.getIndex())) {
+                        frame.setPendingDetections(detectorPool.submit(frame.getMat(), metrics));
+                    }
+                } else if (motionGate != null && motionGate.isStatic(frame.getMat()) && lastDetections != null) {
+                    // Static scene: reuse the detections of the last detected frame
+                    frame.setPendingDetections(lastDetections);
+                } else {
+                    lastDetections = detectorPool.submit(frame.getMat(), metrics);
+                    frame.setPendingDetections(lastDetections);
+                }
+                detectedFrames.put(frame);
+                frame = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (frame != null) {
+                releaseFrame(frame);
+            }
+            return;
+        } catch (RuntimeException e) {
+            System.out.println("\nDetector stage failed: " + e.getMessage());
+            if (frame != null) {
+                releaseFrame(frame);
+            }
+        }
+        endStage(detectedFrames);
+    }
+
+    /**
+     * Detects a frame on the detector pool and waits for the result.
+     * Used by the tracker when a track loses confidence between keyframes.
+     *
+     * @param image Mat object representing the frame
+     * @return the detected traffic signs
+     */
+    private List<Detection> detectNow(Mat image) {
+        try {
+            return detectorPool.submit(image, metrics).get();
+        } catch (ExecutionException e) {
+            System.out.println("\nDetection failed: " + e.getCause().getMessage());
+            return List.of();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        }
+    }
+
+    /**
+     * Sends the end marker to the next stage, so it stops even if the current stage failed.
+     *
+     * @param queue the queue of the next stage
+     */
+    private static void endStage(BlockingQueue<VideoFrame> queue) {
+        try {
+            queue.put(VideoFrame.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encoder stage: waits for the detections of each frame in order, highlights them,
+     * saves the frames with traffic signs and writes every frame to the result video.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for frames
+     */
+    private void encode() throws InterruptedException {
+        int processedFrames = 0;
+        int percentage = 0;
+
+        VideoFrame frame;
+        while (!(frame = detectedFrames.take()).isEnd()) {
+            Mat frameMat = frame.getMat();
+            List<Detection> detections = tracker != null ? tracker.process(frame, this::detectNow) : frame.awaitDetections();
+            if (detectionLog != null) {
+                try {
+                    detectionLog.write(frame.getIndex(), frame.getTimestampMillis(), detections);
+                } catch (IOException e) {
+                    System.out.println("\nCould not write detection log: " + e.getMessage());
+                    detectionLog = null;
+                }
+            }
+            if (clipWriter != null) {
+                clipWriter.record(frame.getIndex(), detections);
+            }
+            // Frames are only highlighted when they are saved
+            if (videoWriter != null || snapshots != null) {
+                long startNanos = System.nanoTime();
+                TrafficSignDetector.drawTrafficSigns(frameMat, detections, color);
+                if (metrics != null) {
+                    metrics.record(PipelineMetrics.Stage.DRAW, System.nanoTime() - startNanos);
+                }
+            }
+
+            // Queue a snapshot of the frame if traffic signs are detected; it is encoded on the writer thread
+            if (snapshots != null) {
+                snapshots.submit(frame, detections);
+            }
+
+            // Write the frame to the video
+            if (videoWriter != null) {
+                long startNanos = System.nanoTime();
+                if (outputSize != null) {
+                    Imgproc.resize(frameMat, scaledFrame, outputSize, 0, 0, Imgproc.INTER_AREA);
+                    videoWriter.write(scaledFrame);
+                } else {
+                    videoWriter.write(frameMat);
+                }
+                if (metrics != null) {
+                    metrics.record(PipelineMetrics.Stage.ENCODE, System.nanoTime() - startNanos);
+                }
+            }
+            if (metrics != null) {
+                metrics.frameProcessed();
+            }
+            listener.frameProcessed(frame, System.nanoTime() - frame.getCreatedNanos());
+            // The buffer is reused for a later frame of the same size
+            framePool.recycle(frameMat);
+
+            // Update the progress
+            processedFrames++;
+            if (totalFrames > 0) {
+                int newPercentage = (processedFrames * 100) / totalFrames;
+                if (newPercentage > percentage) {
+                    listener.progressChanged(newPercentage);
+                    percentage = newPercentage;
+                }
+            }
+        }
+    }
+}
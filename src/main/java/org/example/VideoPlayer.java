@@ -0,0 +1,426 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * VideoPlayer class is responsible for playing a video at its real frame rate.
+ * A decoder thread reads and scales the frames into a small ring buffer, and a presenter thread shows each
+ * frame when its timestamp is due on one double-buffered component, so the event dispatch thread only paints.
+ * Frames that are already late are dropped instead of slowing the playback down. The player has pause,
+ * seek and speed controls. A video already decoded by the live preview can be played from memory.
+ */
+public class VideoPlayer {
+    private static final int BUFFER_FRAMES = 4; // Decoded frames waiting to be shown
+    private static final long UI_UPDATE_NANOS = 200_000_000L; // Time between two updates of the position slider
+    private static final String[] SPEEDS = {"0.25x", "0.5x", "1x", "1.5x", "2x"}; // Playback speeds
+    private static final PlayerFrame END = new PlayerFrame(null, -1, -1); // Marker of the end of the video
+
+    private final String videoPath; // Path of the video, or null to play the recorded frames
+    private final List<PreviewFrame> recording; // Frames recorded by the live preview, or null to decode the video
+    private final Runnable onFinished; // Called on the event dispatch thread when the playback ends
+    private final FrameCanvas canvas = new FrameCanvas(); // Component showing the frames
+    private final JPanel panel = new JPanel(new BorderLayout()); // Canvas and controls
+    private final JButton pauseButton = new JButton("Pause");
+    private final JSlider positionSlider = new JSlider(0, 1, 0);
+    private final JLabel droppedLabel = new JLabel("Dropped: 0");
+    private final BlockingQueue<PlayerFrame> buffer = new ArrayBlockingQueue<>(BUFFER_FRAMES);
+
+    private final Object clock = new Object(); // Guards the playback clock below
+    private boolean paused = false;
+    private double speed = 1;
+    private long clockStartNanos; // Wall time at which the frame at clockStartMillis was due
+    private long clockStartMillis = -1; // Video time of the clock start, or -1 to restart the clock on the next frame
+    private int generation = 0; // Incremented on every seek, so the frames decoded before it are discarded
+
+    private volatile boolean running = true;
+    private final AtomicBoolean finished = new AtomicBoolean(); // Set when onFinished is called
+    private volatile long seekRequestMillis = -1; // Position requested by the user, or -1
+    private volatile double frameRate = 30; // Frame rate reported by the video
+    private volatile int droppedFrames = 0; // Frames dropped because they were late
+    private boolean updatingSlider = false; // True while the presenter moves the slider, on the event dispatch thread
+
+    /**
+     * A decoded frame waiting to be shown.
+     */
+    private static class PlayerFrame {
+        private final BufferedImage image;
+        private final long timestampMillis;
+        private final int generation;
+
+        private PlayerFrame(BufferedImage image, long timestampMillis, int generation) {
+            this.image = image;
+            this.timestampMillis = timestampMillis;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Creates a player and its controls. Playback starts with start.
+     *
+     * @param videoPath  path of the video
+     * @param onFinished called on the event dispatch thread when the playback ends
+     */
+    public VideoPlayer(String videoPath, Runnable onFinished) {
+        this(videoPath, null, onFinished);
+    }
+
+    /**
+     * Creates a player of frames already decoded and scaled by the live preview. Playback starts with start.
+     *
+     * @param recording  the frames, ordered by their position in the video
+     * @param onFinished called on the event dispatch thread when the playback ends
+     */
+    public VideoPlayer(List<PreviewFrame> recording, Runnable onFinished) {
+        this(null, recording, onFinished);
+    }
+
+    /**
+     * Creates a player and its controls.
+     *
+     * @param videoPath  path of the video, or null to play the recorded frames
+     * @param recording  frames recorded by the live preview, or null to decode the video
+     * @param onFinished called on the event dispatch thread when the playback ends
+     */
+    private VideoPlayer(String videoPath, List<PreviewFrame> recording, Runnable onFinished) {
+        this.videoPath = videoPath;
+        this.recording = recording;
+        this.onFinished = onFinished;
+
+        pauseButton.addActionListener(e -> setPaused(!isPaused()));
+        JComboBox<String> speedBox = new JComboBox<>(SPEEDS);
+        speedBox.setSelectedItem("1x");
+        speedBox.addActionListener(e -> {
+            String selected = (String) speedBox.getSelectedItem();
+            setSpeed(Double.parseDouble(selected.substring(0, selected.length() - 1)));
+        });
+        positionSlider.addChangeListener(e -> {
+            if (!updatingSlider && !positionSlider.getValueIsAdjusting()) {
+                seek(positionSlider.getValue());
+            }
+        });
+
+        JPanel controls = new JPanel();
+        controls.add(pauseButton);
+        controls.add(positionSlider);
+        controls.add(speedBox);
+        controls.add(droppedLabel);
+        panel.add(canvas, BorderLayout.CENTER);
+        panel.add(controls, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Gets the component showing the video and its controls.
+     *
+     * @return the player panel
+     */
+    public JComponent getComponent() {
+        return panel;
+    }
+
+    /**
+     * Starts the decoder and presenter threads.
+     */
+    public void start() {
+        Thread decoder = new Thread(recording != null ? this::replay : this::decode, "player-decoder");
+        Thread presenter = new Thread(this::present, "player-presenter");
+        decoder.setDaemon(true);
+        presenter.setDaemon(true);
+        decoder.start();
+        presenter.start();
+    }
+
+    /**
+     * Stops the playback. The threads end after the current frame.
+     */
+    public void stop() {
+        running = false;
+        synchronized (clock) {
+            clock.notifyAll();
+        }
+    }
+
+    /**
+     * Pauses or resumes the playback.
+     *
+     * @param paused true to pause
+     */
+    public void setPaused(boolean paused) {
+        synchronized (clock) {
+            this.paused = paused;
+            // Resume from the next frame instead of catching up on the paused time
+            clockStartMillis = -1;
+            clock.notifyAll();
+        }
+        SwingUtilities.invokeLater(() -> pauseButton.setText(paused ? "Play" : "Pause"));
+    }
+
+    /**
+     * Checks if the playback is paused.
+     *
+     * @return true if paused
+     */
+    public boolean isPaused() {
+        synchronized (clock) {
+            return paused;
+        }
+    }
+
+    /**
+     * Sets the playback speed.
+     *
+     * @param speed the speed, 1 for the real frame rate
+     */
+    public void setSpeed(double speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+        synchronized (clock) {
+            this.speed = speed;
+            clockStartMillis = -1;
+        }
+    }
+
+    /**
+     * Moves the playback to a position of the video.
+     *
+     * @param millis the position in milliseconds
+     */
+    public void seek(long millis) {
+        seekRequestMillis = Math.max(0, millis);
+    }
+
+    /**
+     * Gets the number of frames dropped because they were late.
+     *
+     * @return the number of dropped frames
+     */
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Decoder thread: reads and scales the frames into the ring buffer and performs the seeks.
+     */
+    private void decode() {
+        VideoCapture videoCapture = new VideoCapture(videoPath);
+        if (!videoCapture.isOpened()) {
+            System.out.println("Could not open video: " + videoPath);
+            stop();
+            return;
+        }
+        double fps = videoCapture.get(Videoio.CAP_PROP_FPS);
+        frameRate = fps > 0 ? fps : 30;
+        int durationMillis = (int) (videoCapture.get(Videoio.CAP_PROP_FRAME_COUNT) * 1000 / frameRate);
+        SwingUtilities.invokeLater(() -> positionSlider.setMaximum(Math.max(1, durationMillis)));
+
+        Mat frameMat = NativeMemory.newMat();
+        // Enough images for the buffered frames, the frame waiting for its time, the frame on screen
+        // and the frame converted while the buffer is full
+        BufferedImageConverter converter = new BufferedImageConverter(BUFFER_FRAMES + 3);
+        int index = 0;
+        try {
+            while (running) {
+                long seek = seekRequestMillis;
+                if (seek >= 0) {
+                    seekRequestMillis = -1;
+                    videoCapture.set(Videoio.CAP_PROP_POS_MSEC, seek);
+                    index = (int) (seek * frameRate / 1000);
+                    restartAfterSeek();
+                }
+                if (!videoCapture.read(frameMat)) {
+                    break;
+                }
+                long timestampMillis = (long) videoCapture.get(Videoio.CAP_PROP_POS_MSEC);
+                if (timestampMillis <= 0 && index > 0) {
+                    // Some backends do not report timestamps
+                    timestampMillis = (long) (index * 1000 / frameRate);
+                }
+                index++;
+
+                enqueue(converter.convertResized(frameMat, ImageProcessor.DISPLAY_WIDTH, ImageProcessor.DISPLAY_HEIGHT),
+                        timestampMillis);
+            }
+            enqueueEnd();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            videoCapture.release();
+            NativeMemory.release(frameMat);
+            converter.release();
+        }
+    }
+
+    /**
+     * Decoder thread of a recorded video: hands the recorded frames to the ring buffer and performs the seeks.
+     */
+    private void replay() {
+        long firstMillis = recording.get(0).getTimestampMillis();
+        long lastMillis = recording.get(recording.size() - 1).getTimestampMillis();
+        if (recording.size() > 1 && lastMillis > firstMillis) {
+            frameRate = (recording.size() - 1) * 1000.0 / (lastMillis - firstMillis);
+        }
+        SwingUtilities.invokeLater(() -> positionSlider.setMaximum((int) Math.max(1, lastMillis)));
+
+        int index = 0;
+        try {
+            while (running && index < recording.size()) {
+                long seek = seekRequestMillis;
+                if (seek >= 0) {
+                    seekRequestMillis = -1;
+                    index = indexAt(seek);
+                    restartAfterSeek();
+                }
+                PreviewFrame recorded = recording.get(index++);
+                enqueue(recorded.getImage(), recorded.getTimestampMillis());
+            }
+            enqueueEnd();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finds the first recorded frame at or after a position.
+     *
+     * @param millis the position in milliseconds
+     * @return the index of the frame, or of the last frame if the position is after the end
+     */
+    private int indexAt(long millis) {
+        int low = 0;
+        int high = recording.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (recording.get(middle).getTimestampMillis() < millis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Discards the buffered frames and restarts the clock after a seek.
+     */
+    private void restartAfterSeek() {
+        synchronized (clock) {
+            generation++;
+            clockStartMillis = -1;
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Puts a frame in the ring buffer, waiting for room but still handling a seek or a stop while paused.
+     *
+     * @param image           the scaled frame
+     * @param timestampMillis position of the frame in the video
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void enqueue(BufferedImage image, long timestampMillis) throws InterruptedException {
+        int frameGeneration;
+        synchronized (clock) {
+            frameGeneration = generation;
+        }
+        PlayerFrame frame = new PlayerFrame(image, timestampMillis, frameGeneration);
+        while (running && seekRequestMillis < 0 && !buffer.offer(frame, 50, TimeUnit.MILLISECONDS)) {
+            // The presenter is paused or behind
+        }
+    }
+
+    /**
+     * Puts the end marker in the ring buffer, so the presenter shows the buffered frames before the end.
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void enqueueEnd() throws InterruptedException {
+        while (running && !buffer.offer(END, 50, TimeUnit.MILLISECONDS)) {
+            // The presenter is paused or behind
+        }
+    }
+
+    /**
+     * Presenter thread: shows every frame when its timestamp is due and drops the frames that are late.
+     */
+    private void present() {
+        long lastUiUpdate = 0;
+        try {
+            while (running) {
+                PlayerFrame frame = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    continue;
+                }
+                if (frame == END) {
+                    break;
+                }
+
+                long dueNanos;
+                long frameNanos;
+                synchronized (clock) {
+                    while (paused && running) {
+                        clock.wait();
+                    }
+                    if (frame.generation != generation) {
+                        // Decoded before a seek
+                        continue;
+                    }
+                    if (clockStartMillis < 0) {
+                        clockStartMillis = frame.timestampMillis;
+                        clockStartNanos = System.nanoTime();
+                    }
+                    dueNanos = clockStartNanos + (long) ((frame.timestampMillis - clockStartMillis) * 1_000_000 / speed);
+                    frameNanos = (long) (1e9 / frameRate / speed);
+                }
+
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos < -frameNanos) {
+                    // More than a frame late: skip it to keep up with the clock
+                    droppedFrames++;
+                    continue;
+                }
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+                canvas.show(frame.image);
+
+                long now = System.nanoTime();
+                if (now - lastUiUpdate > UI_UPDATE_NANOS) {
+                    lastUiUpdate = now;
+                    int position = (int) frame.timestampMillis;
+                    int dropped = droppedFrames;
+                    SwingUtilities.invokeLater(() -> {
+                        updatingSlider = true;
+                        positionSlider.setValue(position);
+                        updatingSlider = false;
+                        droppedLabel.setText("Dropped: " + dropped);
+                    });
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        finish();
+    }
+
+    /**
+     * Notifies the end of the playback on the event dispatch thread.
+     */
+    private void finish() {
+        if (finished.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(onFinished);
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package org.example;
 
-import org.opencv.core.Mat;
 import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * VideoProcessor class is responsible for processing videos.
@@ -13,6 +21,12 @@ import java.awt.image.BufferedImage;
 public class VideoProcessor {
     public static JProgressBar progressBar; //JProgressBar to display the progress of the video processing
     private static JLabel resultLabel; //JLabel to display the result video path
+    private final static JPanel containerPanel = new JPanel(new GridBagLayout()); // JPanel container for labels
+    private final static JPanel labelsPanel = new JPanel(); // JPanel for labels
+    private static JLabel processingLabel; // JLabel for processing message
+    private static JLabel timeLabel; // JLabel for estimated time
+    private static final Pattern CLIP_FILE = Pattern.compile("\"file\":\"((?:[^\"\\\\]|\\\\.)*)\""); // Clip file of a manifest
+    private static final int MAX_LISTED_CLIPS = 5; // Clip files named in the result label
 
     /**
      * Creates a JProgressBar to display the progress of the video processing.
@@ -21,8 +35,9 @@ public class VideoProcessor {
      * @return JProgressBar object
      */
     public static JProgressBar createProgressBar(JFrame frame) {
-        // Remove the image label from the frame
+        // Remove the image label and the result of the previous video from the frame
         ImageProcessor.removeImageLabel(frame);
+        removeResultLabel(frame);
 
         // Set progressBar properties
         progressBar = new JProgressBar(0, 100);
@@ -32,17 +47,200 @@ public class VideoProcessor {
     }
 
     /**
-     * Displays the video image on the video panel.
+     * Adds labels on the interface to inform the user about the processing of the video.
      *
-     * @param videoPanel JPanel to display the video image
-     * @param image      BufferedImage object to be displayed
+     * @param frame JFrame object representing the main frame
+     * @param estimatedTimeText estimated time to process the video
+     * @param preview component showing the live preview, or null
      */
-    private static void displayVideoImage(JPanel videoPanel, BufferedImage image) {
-        JLabel imageLabel = new JLabel(new ImageIcon(image));
-        videoPanel.removeAll();
-        videoPanel.add(imageLabel);
-        videoPanel.revalidate();
-        videoPanel.repaint();
+    public static void addLabelsOnInterface(JFrame frame, String estimatedTimeText, JComponent preview) {
+        SwingUtilities.invokeLater(() -> {
+            // Processing label
+            processingLabel = new JLabel("Processing video... It may take a while.");
+            processingLabel.setFont(new Font("Arial", Font.PLAIN, 20));
+            processingLabel.setHorizontalAlignment(SwingConstants.CENTER);
+
+            // Estimated time label
+            timeLabel = new JLabel(estimatedTimeText);
+            timeLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+
+            // Labels panel
+            labelsPanel.setLayout(new BoxLayout(labelsPanel, BoxLayout.Y_AXIS));
+            labelsPanel.add(processingLabel);
+            labelsPanel.add(timeLabel);
+            if (preview != null) {
+                preview.setAlignmentX(Component.CENTER_ALIGNMENT);
+                labelsPanel.add(preview);
+            }
+            labelsPanel.setAlignmentX(Component.CENTER_ALIGNMENT);
+            labelsPanel.setAlignmentY(Component.CENTER_ALIGNMENT);
+
+            // Container panel
+            containerPanel.add(labelsPanel);
+            frame.add(containerPanel, BorderLayout.CENTER);
+
+            frame.revalidate();
+            frame.repaint();
+        });
+    }
+
+    /**
+     * Detects traffic signs in a video while showing its progress, then plays the result video.
+     * When the VideoOutput mode writes no result video, the clips or the detection log are listed instead.
+     *
+     * @param videoPath path to the video
+     * @param progressBar JProgressBar object representing the progress bar
+     * @param frame JFrame object representing the main frame
+     */
+    public static void processVideo(String videoPath, JProgressBar progressBar, JFrame frame) {
+        // The estimated time is measured once the first frames are processed
+        String estimatedTimeText = "Estimated time: measuring...";
+
+        // Show the annotated frames while the video is processed
+        LivePreview preview = LivePreview.isEnabled() ? new LivePreview(frameRateOf(videoPath)) : null;
+
+        // Add labels on the interface
+        SwingUtilities.invokeLater(() -> addLabelsOnInterface(frame, estimatedTimeText,
+                preview != null ? preview.getComponent() : null));
+
+        // Process the video
+        VideoOutput.Mode outputMode = VideoOutput.mode();
+        String resultVideoPath = TrafficSignDetector.detectTrafficSignsInVideo(videoPath, new ProcessingListener() {
+            @Override
+            public void progressChanged(int percentage) {
+                SwingUtilities.invokeLater(() -> progressBar.setValue(percentage));
+            }
+
+            @Override
+            public void metricsUpdated(PipelineMetrics metrics) {
+                String text = String.format(Locale.ROOT, "Estimated time left: %s (%.1f frames/s)",
+                        PipelineMetrics.formatDuration(metrics.getEtaSeconds()), metrics.getFramesPerSecond());
+                SwingUtilities.invokeLater(() -> {
+                    if (timeLabel != null) {
+                        timeLabel.setText(text);
+                    }
+                });
+            }
+
+            @Override
+            public void frameProcessed(VideoFrame videoFrame, long latencyNanos) {
+                if (preview != null) {
+                    preview.frameProcessed(videoFrame);
+                }
+            }
+        });
+        // Frames decoded by the preview are played from memory instead of decoding the result again
+        List<PreviewFrame> recording = null;
+        if (preview != null) {
+            preview.finish();
+            recording = preview.getRecording();
+        }
+        if (resultVideoPath == null) {
+            return;
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            // Remove labels and progress bar
+            progressBar.setValue(100);
+            labelsPanel.remove(processingLabel);
+            labelsPanel.remove(timeLabel);
+            if (preview != null) {
+                labelsPanel.remove(preview.getComponent());
+            }
+            containerPanel.remove(labelsPanel);
+            frame.remove(containerPanel);
+            frame.revalidate();
+            frame.repaint();
+        });
+
+        if (outputMode == VideoOutput.Mode.CLIPS) {
+            // The result is a clip manifest, not a video
+            String text = describeClips(resultVideoPath);
+            SwingUtilities.invokeLater(() -> showResult(frame, text));
+            return;
+        }
+        if (outputMode == VideoOutput.Mode.NONE) {
+            // The result is the detection log, or the input video itself when no log is written
+            String text = resultVideoPath.equals(videoPath) ? "No video written (video.output=none)"
+                    : "No video written, detections saved at " + resultVideoPath;
+            SwingUtilities.invokeLater(() -> showResult(frame, text));
+            return;
+        }
+
+        // Play the result video
+        List<PreviewFrame> recordedFrames = recording;
+        SwingUtilities.invokeLater(() -> playVideo(frame, resultVideoPath, recordedFrames));
+    }
+
+    /**
+     * Describes the clips listed in a clip manifest.
+     *
+     * @param manifestPath path of the manifest written by ClipWriter
+     * @return the HTML text listing the clip files and the manifest
+     */
+    private static String describeClips(String manifestPath) {
+        List<String> clips = new ArrayList<>();
+        try {
+            Matcher matcher = CLIP_FILE.matcher(Files.readString(Paths.get(manifestPath), StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                clips.add(matcher.group(1));
+            }
+        } catch (IOException e) {
+            System.out.println("\nCould not read clip manifest: " + e.getMessage());
+        }
+        StringBuilder text = new StringBuilder("<html>");
+        text.append(clips.isEmpty() ? "No traffic sign detected, no clip written" : clips.size() + " clips saved: ");
+        for (int i = 0; i < Math.min(clips.size(), MAX_LISTED_CLIPS); i++) {
+            text.append(i > 0 ? ", " : "").append(clips.get(i));
+        }
+        if (clips.size() > MAX_LISTED_CLIPS) {
+            text.append(", ...");
+        }
+        return text.append("<br>Manifest saved at ").append(manifestPath).append("</html>").toString();
+    }
+
+    /**
+     * Shows the result of a video that is not played.
+     *
+     * @param frame JFrame to display the result
+     * @param text  the description of the result
+     */
+    private static void showResult(JFrame frame, String text) {
+        frame.remove(progressBar);
+        removeResultLabel(frame);
+        resultLabel = new JLabel(text);
+        resultLabel.setFont(new Font("Arial", Font.BOLD, 24));
+        resultLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        frame.add(resultLabel, BorderLayout.CENTER);
+        frame.revalidate();
+        frame.repaint();
+    }
+
+    /**
+     * Removes the result label of the previous video, if it is still shown.
+     *
+     * @param frame JFrame displaying the result
+     */
+    private static void removeResultLabel(JFrame frame) {
+        if (resultLabel != null) {
+            frame.remove(resultLabel);
+            resultLabel = null;
+        }
+    }
+
+    /**
+     * Gets the frame rate of a video.
+     *
+     * @param videoPath path to the video
+     * @return the frame rate, or 0 if unknown
+     */
+    private static double frameRateOf(String videoPath) {
+        VideoCapture videoCapture = new VideoCapture(videoPath);
+        try {
+            return videoCapture.isOpened() ? videoCapture.get(Videoio.CAP_PROP_FPS) : 0;
+        } finally {
+            videoCapture.release();
+        }
     }
 
     /**
@@ -52,12 +250,24 @@ public class VideoProcessor {
      * @param videoPath the path of the video to be played
      */
     public static void playVideo(JFrame frame, String videoPath) {
+        playVideo(frame, videoPath, null);
+    }
+
+    /**
+     * Plays the video on the frame, from the frames recorded by the live preview if there are any.
+     *
+     * @param frame     JFrame to display the video
+     * @param videoPath the path of the video to be played
+     * @param recording frames recorded by the live preview, or null to decode the video
+     */
+    public static void playVideo(JFrame frame, String videoPath, List<PreviewFrame> recording) {
         // Remove the progress bar from the frame
         frame.remove(progressBar);
         frame.revalidate();
         frame.repaint();
 
         // Display the result video path
+        removeResultLabel(frame);
         resultLabel = new JLabel("Result video saved at " + videoPath);
         resultLabel.setFont(new Font("Arial", Font.BOLD, 24));
         resultLabel.setHorizontalAlignment(SwingConstants.CENTER);
@@ -65,47 +275,18 @@ public class VideoProcessor {
         frame.revalidate();
         frame.repaint();
 
-        // Create a video panel to display the video
-        JPanel videoPanel = new JPanel();
-        frame.add(videoPanel, BorderLayout.CENTER);
-
-        // Play the video
-        new Thread(() -> {
-            VideoCapture videoCapture = new VideoCapture(videoPath);
-            // Check if the video is opened
-            if (!videoCapture.isOpened()) {
-                System.out.println("Could not open video: " + videoPath);
-                return;
-            }
-
-            // Read the video frames
-            Mat frameMat = new Mat();
-            // Create a timer to display the video frames (120 fps)
-            Timer timer = new Timer(1000 / 120, null);
-
-            // Add an action listener to the timer
-            timer.addActionListener(e -> {
-                if (videoCapture.read(frameMat)) {
-                    // Resize the frameMat to a BufferedImage
-                    BufferedImage image = ImageProcessor.matToResizedBufferedImage(frameMat);
-                    // Display the video image
-                    SwingUtilities.invokeLater(() -> displayVideoImage(videoPanel, image));
-                } else {
-                    // Stop the timer and release the videoCapture
-                    timer.stop();
-                    videoCapture.release();
-
-                    // Remove the video panel and result label from the frame
-                    SwingUtilities.invokeLater(() -> {
-                        frame.remove(videoPanel);
-                        frame.remove(resultLabel);
-                        frame.revalidate();
-                        frame.repaint();
-                    });
-                }
-            });
-            // Start the timer
-            timer.start();
-        }).start();
+        // Play the video at its frame rate, then remove the player and the result label
+        VideoPlayer[] player = new VideoPlayer[1];
+        JLabel shownLabel = resultLabel;
+        Runnable onFinished = () -> {
+            frame.remove(player[0].getComponent());
+            frame.remove(shownLabel);
+            frame.revalidate();
+            frame.repaint();
+        };
+        player[0] = recording != null ? new VideoPlayer(recording, onFinished) : new VideoPlayer(videoPath, onFinished);
+        frame.add(player[0].getComponent(), BorderLayout.CENTER);
+        frame.revalidate();
+        player[0].start();
     }
 }
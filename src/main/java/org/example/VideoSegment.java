@@ -0,0 +1,162 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * VideoSegment class is responsible for describing a range of frames of a video that is processed on its own.
+ * Segments can be saved to and loaded from properties files, so they can be shared through a work queue directory.
+ */
+public class VideoSegment {
+    private final String videoPath; // Path of the source video
+    private final int index; // Position of the segment in the video
+    private final int count; // Number of segments of the video
+    private final int startFrame; // First frame of the segment
+    private final int endFrame; // Frame after the last frame of the segment
+    private final String segmentPath; // Path of the processed segment video
+    private final String resultPath; // Path of the final result video
+
+    /**
+     * Creates a segment.
+     *
+     * @param videoPath   path of the source video
+     * @param index       position of the segment in the video
+     * @param count       number of segments of the video
+     * @param startFrame  first frame of the segment
+     * @param endFrame    frame after the last frame of the segment
+     * @param segmentPath path of the processed segment video
+     * @param resultPath  path of the final result video
+     */
+    public VideoSegment(String videoPath, int index, int count, int startFrame, int endFrame, String segmentPath, String resultPath) {
+        this.videoPath = videoPath;
+        this.index = index;
+        this.count = count;
+        this.startFrame = startFrame;
+        this.endFrame = endFrame;
+        this.segmentPath = segmentPath;
+        this.resultPath = resultPath;
+    }
+
+    /**
+     * Gets the path of the source video.
+     *
+     * @return the video path
+     */
+    public String getVideoPath() {
+        return videoPath;
+    }
+
+    /**
+     * Gets the position of the segment in the video.
+     *
+     * @return the segment index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the number of segments of the video.
+     *
+     * @return the number of segments
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the first frame of the segment.
+     *
+     * @return the first frame
+     */
+    public int getStartFrame() {
+        return startFrame;
+    }
+
+    /**
+     * Gets the frame after the last frame of the segment.
+     *
+     * @return the end frame (exclusive)
+     */
+    public int getEndFrame() {
+        return endFrame;
+    }
+
+    /**
+     * Gets the path of the processed segment video.
+     *
+     * @return the segment path
+     */
+    public String getSegmentPath() {
+        return segmentPath;
+    }
+
+    /**
+     * Gets the path of the final result video.
+     *
+     * @return the result path
+     */
+    public String getResultPath() {
+        return resultPath;
+    }
+
+    /**
+     * Gets the number of frames in the segment.
+     *
+     * @return the number of frames
+     */
+    public int getFrameCount() {
+        return endFrame - startFrame;
+    }
+
+    /**
+     * Saves the segment to a properties file.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void store(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("videoPath", videoPath);
+        properties.setProperty("index", String.valueOf(index));
+        properties.setProperty("count", String.valueOf(count));
+        properties.setProperty("startFrame", String.valueOf(startFrame));
+        properties.setProperty("endFrame", String.valueOf(endFrame));
+        properties.setProperty("segmentPath", segmentPath);
+        properties.setProperty("resultPath", resultPath);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Video segment");
+        }
+    }
+
+    /**
+     * Loads a segment from a properties file.
+     *
+     * @param file the file to read
+     * @return the segment
+     * @throws IOException if the file cannot be read
+     */
+    public static VideoSegment load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        try {
+            return new VideoSegment(
+                    properties.getProperty("videoPath"),
+                    Integer.parseInt(properties.getProperty("index")),
+                    Integer.parseInt(properties.getProperty("count")),
+                    Integer.parseInt(properties.getProperty("startFrame")),
+                    Integer.parseInt(properties.getProperty("endFrame")),
+                    properties.getProperty("segmentPath"),
+                    properties.getProperty("resultPath"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid segment file: " + file, e);
+        }
+    }
+}